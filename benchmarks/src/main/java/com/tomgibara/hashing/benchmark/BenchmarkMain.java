@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for each of a number of thread counts, with the GC
+ * profiler enabled so that allocation rates are reported alongside
+ * throughput. The thread counts are taken from the <code>threads</code>
+ * system property (default <code>1,4</code>); all other arguments are passed
+ * to JMH, eg. to select benchmarks or fix parameters with <code>-p</code>.
+ *
+ * @author Tom Gibara
+ *
+ */
+
+public class BenchmarkMain {
+
+	public static void main(String... args) throws RunnerException, CommandLineOptionException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		for (String threads : System.getProperty("threads", "1,4").split(",")) {
+			ChainedOptionsBuilder options = new OptionsBuilder()
+					.parent(cmd)
+					.addProfiler(GCProfiler.class)
+					.threads(Integer.parseInt(threads.trim()));
+			new Runner(options.build()).run();
+		}
+	}
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.hash.HashFunction;
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.hashing.Hashing;
+
+// compares 32 bit murmur hashing with Guava's implementation over identical keys
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GuavaBaselineBenchmark {
+
+	private static final int KEY_COUNT = 1024;
+
+	@Param
+	public KeyType keyType;
+
+	private Hasher<Object> hasher;
+	private HashFunction guava;
+	private Object[] keys;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		hasher = Hashing.murmur3Int().hasher(keyType.serializer());
+		guava = com.google.common.hash.Hashing.murmur3_32();
+		keys = keyType.newKeys(KEY_COUNT);
+	}
+
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		int index;
+
+		Object next(Object[] keys) {
+			return keys[index++ & (KEY_COUNT - 1)];
+		}
+
+	}
+
+	@Benchmark
+	public int hashing(Cursor cursor) {
+		return hasher.intHashValue(cursor.next(keys));
+	}
+
+	@Benchmark
+	public int guava(Cursor cursor) {
+		Object key = cursor.next(keys);
+		com.google.common.hash.Hasher h = guava.newHasher();
+		switch (keyType.form) {
+		case STRING:
+			String str = (String) key;
+			// does the same work as WriteStream.writeChars, a length prefix then the chars,
+			// though Guava writes little-endian and WriteStream big-endian, so the bytes differ
+			h.putInt(str.length());
+			h.putString(str);
+			break;
+		case BYTES:
+			h.putBytes((byte[]) key);
+			break;
+		case POINT:
+			KeyType.Point p = (KeyType.Point) key;
+			h.putInt(p.x);
+			h.putInt(p.y);
+			break;
+		}
+		return h.hash().asInt();
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tomgibara.hashing.Hash;
+import com.tomgibara.hashing.HashSize;
+import com.tomgibara.hashing.Hasher;
+import com.tomgibara.hashing.Hashing;
+
+// measures every hash through each of the ways in which a hasher can be derived from it
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HasherBenchmark {
+
+	private static final int KEY_COUNT = 1024;
+
+	public enum HashType {
+
+		MURMUR3_INT { Hash hash() { return Hashing.murmur3Int(); } },
+		MURMUR3_LONG128 { Hash hash() { return Hashing.murmur3Long128(); } },
+		XXHASH64 { Hash hash() { return Hashing.xxHash64(); } },
+		XXH3 { Hash hash() { return Hashing.xxh3Long(); } },
+		SIPHASH24 { Hash hash() { return Hashing.sipHash24(0L, 0L); } },
+		MD5 { Hash hash() { return Hashing.MD5().asHash(); } },
+		SHA_256 { Hash hash() { return Hashing.SHA_256().asHash(); } },
+		PRNG { Hash hash() { return Hashing.prng(HashSize.LONG_SIZE); } };
+
+		abstract Hash hash();
+	}
+
+	public enum HasherType {
+
+		STANDARD { <T> Hasher<T> derive(Hasher<T> hasher) { return hasher; } },
+		SIZED { <T> Hasher<T> derive(Hasher<T> hasher) { return hasher.sized(HashSize.fromInt(1000)); } },
+		DISTINCT { <T> Hasher<T> derive(Hasher<T> hasher) { return hasher.distinct(4, HashSize.fromInt(1000)); } },
+		INTS { <T> Hasher<T> derive(Hasher<T> hasher) { return hasher.ints(); } },
+		LONGS { <T> Hasher<T> derive(Hasher<T> hasher) { return hasher.longs(); } };
+
+		abstract <T> Hasher<T> derive(Hasher<T> hasher);
+	}
+
+	@Param
+	public HashType hash;
+
+	@Param
+	public HasherType hasher;
+
+	@Param
+	public KeyType keyType;
+
+	private Hasher<Object> subject;
+	private Object[] keys;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		subject = hasher.derive(hash.hash().hasher(keyType.serializer()));
+		keys = keyType.newKeys(KEY_COUNT);
+	}
+
+	// a per-thread cursor, so that threads do not contend on the key index
+	@State(Scope.Thread)
+	public static class Cursor {
+
+		int index;
+
+		Object next(Object[] keys) {
+			return keys[index++ & (KEY_COUNT - 1)];
+		}
+
+	}
+
+	@Benchmark
+	public int intHashValue(Cursor cursor) {
+		return subject.intHashValue(cursor.next(keys));
+	}
+
+	@Benchmark
+	public long longHashValue(Cursor cursor) {
+		return subject.longHashValue(cursor.next(keys));
+	}
+
+	@Benchmark
+	public int hashCodeInts(Cursor cursor) {
+		// includes the cost of creating the hash code, but reads only its first value
+		return subject.hash(cursor.next(keys)).intValue();
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing.benchmark;
+
+import java.util.Random;
+
+import com.tomgibara.streams.StreamSerializer;
+
+// the types of key that are hashed by the benchmarks, with their sizes
+public enum KeyType {
+
+	STRING_8(Form.STRING, 8),
+	STRING_64(Form.STRING, 64),
+	STRING_1024(Form.STRING, 1024),
+	BYTES_8(Form.BYTES, 8),
+	BYTES_64(Form.BYTES, 64),
+	BYTES_1024(Form.BYTES, 1024),
+	POINT(Form.POINT, 8);
+
+	// the ways in which keys are constructed and serialized
+	enum Form {
+
+		// strings of size chars
+		STRING {
+			@Override
+			Object newKey(Random r, int size) {
+				char[] chars = new char[size];
+				for (int i = 0; i < chars.length; i++) chars[i] = (char) ('a' + r.nextInt(26));
+				return new String(chars);
+			}
+
+			@Override
+			StreamSerializer<Object> serializer() {
+				return (k, s) -> s.writeChars((String) k);
+			}
+		},
+
+		// byte arrays of size bytes
+		BYTES {
+			@Override
+			Object newKey(Random r, int size) {
+				byte[] bytes = new byte[size];
+				r.nextBytes(bytes);
+				return bytes;
+			}
+
+			@Override
+			StreamSerializer<Object> serializer() {
+				return (k, s) -> s.writeBytes((byte[]) k);
+			}
+		},
+
+		// small objects with two int fields, always serialized as 8 bytes
+		POINT {
+			@Override
+			Object newKey(Random r, int size) {
+				return new Point(r.nextInt(), r.nextInt());
+			}
+
+			@Override
+			StreamSerializer<Object> serializer() {
+				return (k, s) -> { Point p = (Point) k; s.writeInt(p.x); s.writeInt(p.y); };
+			}
+		};
+
+		abstract Object newKey(Random r, int size);
+
+		abstract StreamSerializer<Object> serializer();
+
+	}
+
+	static final class Point {
+
+		final int x;
+		final int y;
+
+		Point(int x, int y) {
+			this.x = x;
+			this.y = y;
+		}
+
+	}
+
+	final Form form;
+	final int size;
+
+	private KeyType(Form form, int size) {
+		this.form = form;
+		this.size = size;
+	}
+
+	StreamSerializer<Object> serializer() {
+		return form.serializer();
+	}
+
+	Object[] newKeys(int count) {
+		Random r = new Random(0L);
+		Object[] keys = new Object[count];
+		for (int i = 0; i < count; i++) keys[i] = form.newKey(r, size);
+		return keys;
+	}
+
+}
@@ -104,6 +104,12 @@ abstract class AbstractHashCode implements HashCode {
 		return new BigInteger(1, bs);
 	}
 
+	// treats the long as unsigned
+	static BigInteger bigFromLong(long v) {
+		BigInteger big = BigInteger.valueOf(v);
+		return v < 0L ? HashSize.BIG_ULONG.add(big) : big;
+	}
+
 	final HashSize size;
 
 	AbstractHashCode(HashSize size) {
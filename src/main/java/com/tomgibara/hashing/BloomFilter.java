@@ -0,0 +1,315 @@
+/*
+ * Copyright 2015 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A Bloom filter records the membership of objects in a set with a
+ * configurable probability of false positives, but never of false negatives.
+ * Bits are indexed by values derived from a {@link Hasher}, so any hasher may
+ * be used; for filters over very many objects the hasher should produce long
+ * sized values, since the filter's indices are derived from a single long hash
+ * value per object by enhanced double hashing.
+ *
+ * <p>
+ * Filters are safe for concurrent use without locking: bits are stored in an
+ * array of longs that is updated atomically. The number of bits is not limited
+ * to the range of an int.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of objects recorded in the filter
+ */
+
+public final class BloomFilter<T> {
+
+	private static final double LN2 = Math.log(2.0);
+
+	/**
+	 * Creates a filter that is sized to provide the specified false positive
+	 * rate when it contains the expected number of objects.
+	 *
+	 * @param hasher
+	 *            hashes the objects recorded in the filter
+	 * @param expectedCount
+	 *            the number of objects that the filter is expected to record
+	 * @param falsePositiveRate
+	 *            the desired probability of false positives, strictly between
+	 *            zero and one
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return an empty filter
+	 */
+
+	public static <T> BloomFilter<T> withRate(Hasher<T> hasher, long expectedCount, double falsePositiveRate) {
+		if (expectedCount < 1L) throw new IllegalArgumentException("non-positive expectedCount");
+		if (!(falsePositiveRate > 0.0 && falsePositiveRate < 1.0)) throw new IllegalArgumentException("invalid falsePositiveRate");
+		double bits = Math.ceil(-expectedCount * Math.log(falsePositiveRate) / (LN2 * LN2));
+		long bitCount = Math.max(64L, (long) bits + 63L & ~63L);
+		int hashCount = (int) Math.max(1L, Math.round((double) bitCount / expectedCount * LN2));
+		return withSize(hasher, bitCount, hashCount);
+	}
+
+	/**
+	 * Creates a filter with the specified number of bits and hashes.
+	 *
+	 * @param hasher
+	 *            hashes the objects recorded in the filter
+	 * @param bitCount
+	 *            the number of bits in the filter, at most 2^37
+	 * @param hashCount
+	 *            the number of bits set for each object
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return an empty filter
+	 */
+
+	public static <T> BloomFilter<T> withSize(Hasher<T> hasher, long bitCount, int hashCount) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (bitCount < 1L) throw new IllegalArgumentException("non-positive bitCount");
+		if (bitCount > (long) Integer.MAX_VALUE << 6) throw new IllegalArgumentException("bitCount too large");
+		if (hashCount < 1) throw new IllegalArgumentException("non-positive hashCount");
+		return new BloomFilter<>(hasher, bitCount, hashCount);
+	}
+
+	private final Hasher<T> hasher;
+	private final long bitCount;
+	private final int hashCount;
+	private final AtomicLongArray words;
+
+	private BloomFilter(Hasher<T> hasher, long bitCount, int hashCount) {
+		this.hasher = hasher;
+		this.bitCount = bitCount;
+		this.hashCount = hashCount;
+		words = new AtomicLongArray((int) ((bitCount + 63) >>> 6));
+	}
+
+	/**
+	 * The hasher used to derive the bits of each object.
+	 *
+	 * @return the filter's hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The number of bits in the filter.
+	 *
+	 * @return the bit count
+	 */
+
+	public long getBitCount() {
+		return bitCount;
+	}
+
+	/**
+	 * The number of bits set for each object.
+	 *
+	 * @return the hash count
+	 */
+
+	public int getHashCount() {
+		return hashCount;
+	}
+
+	/**
+	 * Records an object in the filter.
+	 *
+	 * @param value
+	 *            the object to record
+	 * @return true if the filter was modified, false if the object was already
+	 *         (possibly falsely) reported as contained
+	 */
+
+	public boolean add(T value) {
+		long h = Indices.mix(hasher.longHashValue(value));
+		long step = Indices.step(h);
+		boolean modified = false;
+		for (int i = 0; i < hashCount; i++) {
+			long index = Indices.reduce(h, bitCount);
+			int w = (int) (index >>> 6);
+			long mask = 1L << index;
+			long word = words.get(w);
+			// avoid contending writes where the bit is already set
+			while ((word & mask) == 0L) {
+				if (words.compareAndSet(w, word, word | mask)) {
+					modified = true;
+					break;
+				}
+				word = words.get(w);
+			}
+			h += step;
+			step += i;
+		}
+		return modified;
+	}
+
+	/**
+	 * Whether the object may have been recorded in the filter.
+	 *
+	 * @param value
+	 *            the object to test
+	 * @return false if the object has definitely not been recorded in the
+	 *         filter, true otherwise
+	 */
+
+	public boolean mightContain(T value) {
+		long h = Indices.mix(hasher.longHashValue(value));
+		long step = Indices.step(h);
+		for (int i = 0; i < hashCount; i++) {
+			long index = Indices.reduce(h, bitCount);
+			if ((words.get((int) (index >>> 6)) & 1L << index) == 0L) return false;
+			h += step;
+			step += i;
+		}
+		return true;
+	}
+
+	/**
+	 * The number of bits that are set in the filter.
+	 *
+	 * @return the number of set bits
+	 */
+
+	public long getSetBitCount() {
+		long count = 0L;
+		for (int i = 0; i < words.length(); i++) {
+			count += Long.bitCount(words.get(i));
+		}
+		return count;
+	}
+
+	/**
+	 * Estimates the probability that {@link #mightContain(Object)} returns
+	 * true for an object that has not been recorded, based on the proportion
+	 * of bits that are currently set.
+	 *
+	 * @return the estimated false positive rate
+	 */
+
+	public double getFalsePositiveRate() {
+		return Math.pow((double) getSetBitCount() / bitCount, hashCount);
+	}
+
+	/**
+	 * Estimates the number of distinct objects recorded in the filter.
+	 *
+	 * @return an estimate of the number of objects in the filter
+	 */
+
+	public double getEstimatedCount() {
+		long set = getSetBitCount();
+		if (set == bitCount) return Double.POSITIVE_INFINITY;
+		return -(double) bitCount / hashCount * Math.log1p(-(double) set / bitCount);
+	}
+
+	/**
+	 * Whether another filter has the same hasher, bit count and hash count as
+	 * this filter, so that the two may be merged.
+	 *
+	 * @param that
+	 *            another filter
+	 * @return true if the filters are compatible
+	 */
+
+	public boolean isCompatible(BloomFilter<?> that) {
+		if (that == null) throw new IllegalArgumentException("null that");
+		return this.bitCount == that.bitCount && this.hashCount == that.hashCount && this.hasher.equals(that.hasher);
+	}
+
+	/**
+	 * Adds all of the objects recorded in a compatible filter to this filter.
+	 * The supplied filter may be concurrently modified, in which case the
+	 * modifications may or may not be reflected in this filter.
+	 *
+	 * @param that
+	 *            a compatible filter
+	 * @throws IllegalArgumentException
+	 *             if the filter is not compatible
+	 */
+
+	public void unionWith(BloomFilter<? extends T> that) {
+		checkCompatible(that);
+		for (int i = 0; i < words.length(); i++) {
+			long bits = that.words.get(i);
+			if (bits != 0L) words.accumulateAndGet(i, bits, (a, b) -> a | b);
+		}
+	}
+
+	/**
+	 * Clears any bits of this filter that are not set in a compatible filter.
+	 * The resulting filter reports a superset of the objects recorded in both
+	 * filters. The supplied filter may be concurrently modified, in which case
+	 * the modifications may or may not be reflected in this filter.
+	 *
+	 * @param that
+	 *            a compatible filter
+	 * @throws IllegalArgumentException
+	 *             if the filter is not compatible
+	 */
+
+	public void intersectWith(BloomFilter<? extends T> that) {
+		checkCompatible(that);
+		for (int i = 0; i < words.length(); i++) {
+			long bits = that.words.get(i);
+			if (bits != -1L) words.accumulateAndGet(i, bits, (a, b) -> a & b);
+		}
+	}
+
+	/**
+	 * Removes all objects from the filter.
+	 */
+
+	public void clear() {
+		for (int i = 0; i < words.length(); i++) {
+			words.set(i, 0L);
+		}
+	}
+
+	/**
+	 * Creates a copy of the filter.
+	 *
+	 * @return a filter with the same bits set as this filter
+	 */
+
+	public BloomFilter<T> copy() {
+		BloomFilter<T> copy = new BloomFilter<>(hasher, bitCount, hashCount);
+		for (int i = 0; i < words.length(); i++) {
+			copy.words.set(i, words.get(i));
+		}
+		return copy;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "Bloom filter of " + bitCount + " bits with " + hashCount + " hashes from " + hasher;
+	}
+
+	// private helper methods
+
+	private void checkCompatible(BloomFilter<?> that) {
+		if (!isCompatible(that)) throw new IllegalArgumentException("incompatible filter");
+	}
+
+}
@@ -0,0 +1,452 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tomgibara.streams.ReadStream;
+import com.tomgibara.streams.StreamException;
+import com.tomgibara.streams.WriteStream;
+
+/**
+ * <p>
+ * A Count-Min sketch estimates the frequencies of objects in a stream using a
+ * fixed amount of memory. Estimates are never less than the true frequency
+ * and, with a configurable probability, exceed it by no more than a
+ * configurable fraction of the total count.
+ *
+ * <p>
+ * The sketch consists of a number of rows of counters; each object increments
+ * one counter per row, the column being selected by successive values from
+ * the {@link Hasher#ints()} hasher derived from the supplied hasher. Sketches
+ * may optionally apply conservative updates, which only increase those
+ * counters that are necessary to maintain the estimate; this substantially
+ * reduces the overestimation of infrequent objects.
+ *
+ * <p>
+ * Counters are either 64 bit longs, or 32 bit ints that saturate at
+ * {@link Integer#MAX_VALUE} and which halve the memory required.
+ *
+ * <p>
+ * Sketches are safe for concurrent use without external synchronization.
+ * Standard updates are lock-free; conservative updates of the same object are
+ * serialized by striped locks. Sketches with the same dimensions and hasher
+ * may be merged, and may be written to, and read from, streams so that
+ * sketches accumulated on different nodes can be combined.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of objects counted by the sketch
+ */
+
+public final class CountMinSketch<T> {
+
+	// the number of locks over which conservative updates are striped
+	private static final int STRIPES = 64;
+
+	/**
+	 * Creates a sketch which, with a probability of at least
+	 * <code>1 - delta</code>, overestimates the frequency of an object by no
+	 * more than <code>epsilon</code> times the total count.
+	 *
+	 * @param hasher
+	 *            hashes the objects counted by the sketch
+	 * @param epsilon
+	 *            the permitted error as a fraction of the total count,
+	 *            strictly between zero and one
+	 * @param delta
+	 *            the probability of exceeding the permitted error, strictly
+	 *            between zero and one
+	 * @param counterBits
+	 *            the size of each counter, either 32 (saturating) or 64
+	 * @param conservative
+	 *            whether conservative updates should be applied
+	 * @param <T>
+	 *            the type of objects counted by the sketch
+	 * @return an empty sketch
+	 */
+
+	public static <T> CountMinSketch<T> withAccuracy(Hasher<T> hasher, double epsilon, double delta, int counterBits, boolean conservative) {
+		if (!(epsilon > 0.0 && epsilon < 1.0)) throw new IllegalArgumentException("invalid epsilon");
+		if (!(delta > 0.0 && delta < 1.0)) throw new IllegalArgumentException("invalid delta");
+		double width = Math.ceil(Math.E / epsilon);
+		if (width > Integer.MAX_VALUE) throw new IllegalArgumentException("epsilon too small");
+		int depth = (int) Math.ceil(Math.log(1.0 / delta));
+		return withSize(hasher, (int) width, Math.max(1, depth), counterBits, conservative);
+	}
+
+	/**
+	 * Creates a sketch with the specified number of rows and columns.
+	 *
+	 * @param hasher
+	 *            hashes the objects counted by the sketch
+	 * @param width
+	 *            the number of counters in each row
+	 * @param depth
+	 *            the number of rows
+	 * @param counterBits
+	 *            the size of each counter, either 32 (saturating) or 64
+	 * @param conservative
+	 *            whether conservative updates should be applied
+	 * @param <T>
+	 *            the type of objects counted by the sketch
+	 * @return an empty sketch
+	 */
+
+	public static <T> CountMinSketch<T> withSize(Hasher<T> hasher, int width, int depth, int counterBits, boolean conservative) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (width < 1) throw new IllegalArgumentException("non-positive width");
+		if (depth < 1) throw new IllegalArgumentException("non-positive depth");
+		if ((long) width * depth > Integer.MAX_VALUE) throw new IllegalArgumentException("too many counters");
+		if (counterBits != 32 && counterBits != 64) throw new IllegalArgumentException("invalid counterBits");
+		return new CountMinSketch<>(hasher, width, depth, counterBits, conservative);
+	}
+
+	/**
+	 * Reads a sketch that was previously written to a stream with
+	 * {@link #writeTo(WriteStream)}.
+	 *
+	 * @param hasher
+	 *            the hasher with which the sketch was created
+	 * @param stream
+	 *            the stream from which the sketch is read
+	 * @param <T>
+	 *            the type of objects counted by the sketch
+	 * @return the sketch read from the stream
+	 * @throws StreamException
+	 *             if the sketch could not be read from the stream
+	 */
+
+	public static <T> CountMinSketch<T> readFrom(Hasher<T> hasher, ReadStream stream) throws StreamException {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (stream == null) throw new IllegalArgumentException("null stream");
+		int width = stream.readInt();
+		int depth = stream.readInt();
+		int counterBits = stream.readInt();
+		boolean conservative = stream.readBoolean();
+		CountMinSketch<T> sketch;
+		try {
+			sketch = withSize(hasher, width, depth, counterBits, conservative);
+		} catch (IllegalArgumentException e) {
+			throw new StreamException("invalid sketch", e);
+		}
+		sketch.total.add(stream.readLong());
+		int length = width * depth;
+		if (counterBits == 64) {
+			for (int i = 0; i < length; i++) sketch.longs.set(i, stream.readLong());
+		} else {
+			for (int i = 0; i < length; i++) sketch.ints.set(i, stream.readInt());
+		}
+		return sketch;
+	}
+
+	private final Hasher<T> hasher;
+	// the int sized hasher from which the ints() hasher derives its values
+	private final Hasher<T> intHasher;
+	private final int width;
+	private final int depth;
+	private final int counterBits;
+	private final boolean conservative;
+	// the counters, in row major order; only one is non-null
+	private final AtomicLongArray longs;
+	private final AtomicIntegerArray ints;
+	private final LongAdder total = new LongAdder();
+	private final Object[] locks;
+
+	private CountMinSketch(Hasher<T> hasher, int width, int depth, int counterBits, boolean conservative) {
+		this.hasher = hasher;
+		intHasher = hasher.sized(HashSize.INT_SIZE);
+		this.width = width;
+		this.depth = depth;
+		this.counterBits = counterBits;
+		this.conservative = conservative;
+		int length = width * depth;
+		longs = counterBits == 64 ? new AtomicLongArray(length) : null;
+		ints = counterBits == 32 ? new AtomicIntegerArray(length) : null;
+		if (conservative) {
+			locks = new Object[STRIPES];
+			for (int i = 0; i < STRIPES; i++) locks[i] = new Object();
+		} else {
+			locks = null;
+		}
+	}
+
+	/**
+	 * The hasher used to derive the counters of each object.
+	 *
+	 * @return the sketch's hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The number of counters in each row of the sketch.
+	 *
+	 * @return the width of the sketch
+	 */
+
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * The number of rows in the sketch.
+	 *
+	 * @return the depth of the sketch
+	 */
+
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * The number of bits in each counter.
+	 *
+	 * @return 32 for saturating int counters, 64 for long counters
+	 */
+
+	public int getCounterBits() {
+		return counterBits;
+	}
+
+	/**
+	 * Whether the sketch applies conservative updates.
+	 *
+	 * @return true if updates are conservative
+	 */
+
+	public boolean isConservative() {
+		return conservative;
+	}
+
+	/**
+	 * The sum of all counts added to the sketch.
+	 *
+	 * @return the total count
+	 */
+
+	public long getTotalCount() {
+		return total.sum();
+	}
+
+	/**
+	 * Increments the count of an object by one.
+	 *
+	 * @param value
+	 *            the object to count
+	 * @return the estimated count of the object after the increment
+	 */
+
+	public long add(T value) {
+		return add(value, 1L);
+	}
+
+	/**
+	 * Increments the count of an object.
+	 *
+	 * @param value
+	 *            the object to count
+	 * @param count
+	 *            the non-negative amount by which the count is increased
+	 * @return the estimated count of the object after the increment
+	 */
+
+	public long add(T value, long count) {
+		if (count < 0L) throw new IllegalArgumentException("negative count");
+		int hash = intHasher.intHashValue(value);
+		int h = IntsHasher.spread(hash);
+		int probe = IntsHasher.probe(hash);
+		total.add(count);
+		if (!conservative) {
+			long estimate = Long.MAX_VALUE;
+			for (int r = 0; r < depth; r++) {
+				estimate = Math.min(estimate, increment(index(h, probe, r), count));
+			}
+			return estimate;
+		}
+		// updates of the same object must not interleave
+		synchronized (locks[index(h, probe, 0) & (STRIPES - 1)]) {
+			long estimate = Long.MAX_VALUE;
+			for (int r = 0; r < depth; r++) {
+				estimate = Math.min(estimate, get(index(h, probe, r)));
+			}
+			long target = saturate(estimate + count);
+			for (int r = 0; r < depth; r++) {
+				raise(index(h, probe, r), target);
+			}
+			return target;
+		}
+	}
+
+	/**
+	 * Estimates the count of an object. The estimate is never less than the
+	 * total amount by which the object's count has been increased.
+	 *
+	 * @param value
+	 *            the object whose count is to be estimated
+	 * @return the estimated count
+	 */
+
+	public long estimateCount(T value) {
+		int hash = intHasher.intHashValue(value);
+		int h = IntsHasher.spread(hash);
+		int probe = IntsHasher.probe(hash);
+		long estimate = Long.MAX_VALUE;
+		for (int r = 0; r < depth; r++) {
+			estimate = Math.min(estimate, get(index(h, probe, r)));
+		}
+		return estimate;
+	}
+
+	/**
+	 * Whether another sketch has the same dimensions, counters and hasher as
+	 * this sketch, so that the two may be merged.
+	 *
+	 * @param that
+	 *            another sketch
+	 * @return true if the sketches are compatible
+	 */
+
+	public boolean isCompatible(CountMinSketch<?> that) {
+		if (that == null) throw new IllegalArgumentException("null that");
+		return this.width == that.width && this.depth == that.depth && this.counterBits == that.counterBits && this.hasher.equals(that.hasher);
+	}
+
+	/**
+	 * Adds the counts recorded in a compatible sketch to this sketch. The
+	 * supplied sketch may be concurrently modified, in which case the
+	 * modifications may or may not be reflected in this sketch.
+	 *
+	 * @param that
+	 *            a compatible sketch
+	 * @throws IllegalArgumentException
+	 *             if the sketch is not compatible
+	 */
+
+	public void mergeWith(CountMinSketch<? extends T> that) {
+		if (!isCompatible(that)) throw new IllegalArgumentException("incompatible sketch");
+		int length = width * depth;
+		if (counterBits == 64) {
+			for (int i = 0; i < length; i++) {
+				long count = that.longs.get(i);
+				if (count != 0L) longs.addAndGet(i, count);
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				int count = that.ints.get(i);
+				if (count != 0) increment(i, count);
+			}
+		}
+		total.add(that.total.sum());
+	}
+
+	/**
+	 * Resets all counts to zero.
+	 */
+
+	public void clear() {
+		int length = width * depth;
+		for (int i = 0; i < length; i++) {
+			if (counterBits == 64) {
+				longs.set(i, 0L);
+			} else {
+				ints.set(i, 0);
+			}
+		}
+		total.reset();
+	}
+
+	/**
+	 * Writes the state of the sketch to a stream. The hasher is not written
+	 * to the stream.
+	 *
+	 * @param stream
+	 *            the stream to which the sketch is written
+	 * @throws StreamException
+	 *             if the sketch could not be written to the stream
+	 * @see #readFrom(Hasher, ReadStream)
+	 */
+
+	public void writeTo(WriteStream stream) throws StreamException {
+		if (stream == null) throw new IllegalArgumentException("null stream");
+		stream.writeInt(width);
+		stream.writeInt(depth);
+		stream.writeInt(counterBits);
+		stream.writeBoolean(conservative);
+		stream.writeLong(total.sum());
+		int length = width * depth;
+		if (counterBits == 64) {
+			for (int i = 0; i < length; i++) stream.writeLong(longs.get(i));
+		} else {
+			for (int i = 0; i < length; i++) stream.writeInt(ints.get(i));
+		}
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "Count-Min sketch of " + depth + " rows of " + width + " " + counterBits + " bit counters from " + hasher;
+	}
+
+	// private helper methods
+
+	// the counter of a row, selected by the same value the ints() hasher would supply for the row
+	private int index(int h, int probe, int row) {
+		return row * width + Indices.reduce(h ^ row * probe, width);
+	}
+
+	private long saturate(long count) {
+		if (count < 0L) return Long.MAX_VALUE;
+		return counterBits == 32 && count > Integer.MAX_VALUE ? Integer.MAX_VALUE : count;
+	}
+
+	private long get(int index) {
+		return counterBits == 64 ? longs.get(index) : ints.get(index);
+	}
+
+	// returns the new value of the counter
+	private long increment(int index, long count) {
+		if (counterBits == 64) return longs.addAndGet(index, count);
+		while (true) {
+			int current = ints.get(index);
+			int next = (int) Math.min(Integer.MAX_VALUE, current + count);
+			if (next == current || ints.compareAndSet(index, current, next)) return next;
+		}
+	}
+
+	// raises the counter to at least the target value
+	private void raise(int index, long target) {
+		if (counterBits == 64) {
+			long current;
+			do {
+				current = longs.get(index);
+			} while (current < target && !longs.compareAndSet(index, current, target));
+		} else {
+			int current;
+			do {
+				current = ints.get(index);
+			} while (current < target && !ints.compareAndSet(index, current, (int) target));
+		}
+	}
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+/**
+ * <p>
+ * A cuckoo filter records the approximate membership of objects in a set and,
+ * unlike a {@link BloomFilter}, supports the removal of objects. Each object is
+ * reduced to a short fingerprint of 8, 12 or 16 bits which is stored in one of
+ * two candidate buckets of four slots; the second bucket is derived from the
+ * first and the fingerprint alone (partial-key cuckoo hashing) so that
+ * fingerprints can be relocated without access to the original objects.
+ *
+ * <p>
+ * Buckets are packed into an array of longs, each bucket spanning at most two
+ * adjacent longs, so testing an object examines just two small regions of
+ * memory. The false positive rate is approximately 8 / 2^f at full load, where
+ * f is the number of fingerprint bits.
+ *
+ * <p>
+ * Only objects that have been added to the filter may be removed from it;
+ * removing other objects may remove the fingerprint of an object that shares
+ * it and so introduce false negatives. An object may be added more than once,
+ * in which case it must be removed the same number of times, but no more than
+ * eight copies of a fingerprint can be accommodated.
+ *
+ * <p>
+ * Filters are not safe for concurrent use: access to them must be externally
+ * synchronized if they are modified by multiple threads.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of objects recorded in the filter
+ */
+
+public final class CuckooFilter<T> {
+
+	// the number of fingerprints stored in a bucket
+	private static final int SLOTS = 4;
+	// the number of relocations attempted before the filter is considered full
+	private static final int MAX_KICKS = 500;
+	// the proportion of slots that can be reliably occupied
+	private static final double MAX_LOAD = 0.95;
+	private static final int MAX_BUCKETS = 1 << 30;
+
+	/**
+	 * Creates a filter that is sized to accommodate the expected number of
+	 * objects.
+	 *
+	 * @param hasher
+	 *            hashes the objects recorded in the filter
+	 * @param expectedCount
+	 *            the number of objects that the filter is expected to record
+	 * @param fingerprintBits
+	 *            the size of each fingerprint, one of 8, 12 or 16
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return an empty filter
+	 */
+
+	public static <T> CuckooFilter<T> withCapacity(Hasher<T> hasher, long expectedCount, int fingerprintBits) {
+		if (expectedCount < 1L) throw new IllegalArgumentException("non-positive expectedCount");
+		double buckets = Math.ceil(expectedCount / (SLOTS * MAX_LOAD));
+		if (buckets > MAX_BUCKETS) throw new IllegalArgumentException("expectedCount too large");
+		int bucketCount = Math.max(1, Integer.highestOneBit((int) buckets - 1) << 1);
+		return withSize(hasher, bucketCount, fingerprintBits);
+	}
+
+	/**
+	 * Creates a filter with the specified number of buckets.
+	 *
+	 * @param hasher
+	 *            hashes the objects recorded in the filter
+	 * @param bucketCount
+	 *            the number of buckets in the filter, a power of two no
+	 *            greater than 2^30
+	 * @param fingerprintBits
+	 *            the size of each fingerprint, one of 8, 12 or 16
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return an empty filter
+	 */
+
+	public static <T> CuckooFilter<T> withSize(Hasher<T> hasher, int bucketCount, int fingerprintBits) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (bucketCount < 1) throw new IllegalArgumentException("non-positive bucketCount");
+		if (Integer.bitCount(bucketCount) != 1) throw new IllegalArgumentException("bucketCount not a power of two");
+		if (bucketCount > MAX_BUCKETS) throw new IllegalArgumentException("bucketCount too large");
+		if (fingerprintBits != 8 && fingerprintBits != 12 && fingerprintBits != 16) throw new IllegalArgumentException("invalid fingerprintBits");
+		return new CuckooFilter<>(hasher, bucketCount, fingerprintBits);
+	}
+
+	private final Hasher<T> hasher;
+	private final int bucketCount;
+	private final int fingerprintBits;
+	// the number of bits occupied by a bucket, at most 64
+	private final int bucketBits;
+	private final long fingerprintMask;
+	private final long bucketMask;
+	// the lowest and highest bit of every slot in a bucket
+	private final long lows;
+	private final long highs;
+	private final long[] words;
+	private long count = 0L;
+	// a fingerprint that could not be relocated, making the filter full
+	private long victim = 0L;
+	private int victimIndex;
+	// drives the choice of fingerprints to relocate
+	private long random = 0L;
+
+	private CuckooFilter(Hasher<T> hasher, int bucketCount, int fingerprintBits) {
+		this.hasher = hasher;
+		this.bucketCount = bucketCount;
+		this.fingerprintBits = fingerprintBits;
+		bucketBits = fingerprintBits * SLOTS;
+		fingerprintMask = (1L << fingerprintBits) - 1L;
+		bucketMask = bucketBits == 64 ? -1L : (1L << bucketBits) - 1L;
+		long lows = 0L;
+		for (int s = 0; s < SLOTS; s++) lows |= 1L << (s * fingerprintBits);
+		this.lows = lows;
+		highs = lows << (fingerprintBits - 1);
+		words = new long[(int) (((long) bucketCount * bucketBits + 63) >>> 6)];
+	}
+
+	/**
+	 * The hasher used to derive the fingerprint and buckets of each object.
+	 *
+	 * @return the filter's hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The number of buckets in the filter, each of which holds four
+	 * fingerprints.
+	 *
+	 * @return the bucket count
+	 */
+
+	public int getBucketCount() {
+		return bucketCount;
+	}
+
+	/**
+	 * The number of bits in each fingerprint.
+	 *
+	 * @return the fingerprint size in bits
+	 */
+
+	public int getFingerprintBits() {
+		return fingerprintBits;
+	}
+
+	/**
+	 * The number of fingerprints that the filter can hold.
+	 *
+	 * @return the number of slots over all buckets
+	 */
+
+	public long getCapacity() {
+		return (long) bucketCount * SLOTS;
+	}
+
+	/**
+	 * The number of fingerprints held by the filter.
+	 *
+	 * @return the number of objects added and not removed
+	 */
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * The proportion of the filter's slots that are occupied.
+	 *
+	 * @return the load factor, between zero and one
+	 */
+
+	public double getLoadFactor() {
+		return (double) count / getCapacity();
+	}
+
+	/**
+	 * Whether the filter is unable to accept further objects. A filter that
+	 * is full may accept objects again after objects are removed.
+	 *
+	 * @return true if {@link #add(Object)} will fail
+	 */
+
+	public boolean isFull() {
+		return victim != 0L;
+	}
+
+	/**
+	 * Estimates the probability that {@link #mightContain(Object)} returns
+	 * true for an object that has not been recorded, based on the current
+	 * load of the filter.
+	 *
+	 * @return the estimated false positive rate
+	 */
+
+	public double getFalsePositiveRate() {
+		// the object is compared with the fingerprints in two buckets
+		return -Math.expm1(2.0 * SLOTS * getLoadFactor() * Math.log1p(-1.0 / fingerprintMask));
+	}
+
+	/**
+	 * Records an object in the filter.
+	 *
+	 * @param value
+	 *            the object to record
+	 * @return true if the object was recorded, false if the filter is full
+	 */
+
+	public boolean add(T value) {
+		if (victim != 0L) return false;
+		long h = hash(value);
+		long f = fingerprint(h);
+		int i1 = index(h);
+		int i2 = alternate(i1, f);
+		if (insert(i1, f) || insert(i2, f)) {
+			count++;
+			return true;
+		}
+		// relocate existing fingerprints to make room
+		int i = (nextRandom() & 1) == 0 ? i1 : i2;
+		for (int n = 0; n < MAX_KICKS; n++) {
+			int shift = (nextRandom() & SLOTS - 1) * fingerprintBits;
+			long bucket = bucket(i);
+			long evicted = bucket >>> shift & fingerprintMask;
+			setBucket(i, bucket & ~(fingerprintMask << shift) | f << shift);
+			f = evicted;
+			i = alternate(i, f);
+			if (insert(i, f)) {
+				count++;
+				return true;
+			}
+		}
+		// retain the homeless fingerprint so that no object is lost
+		victim = f;
+		victimIndex = i;
+		count++;
+		return true;
+	}
+
+	/**
+	 * Whether the object may have been recorded in the filter.
+	 *
+	 * @param value
+	 *            the object to test
+	 * @return false if the object has definitely not been recorded in the
+	 *         filter, true otherwise
+	 */
+
+	public boolean mightContain(T value) {
+		long h = hash(value);
+		long f = fingerprint(h);
+		int i1 = index(h);
+		int i2 = alternate(i1, f);
+		return contains(i1, f) || contains(i2, f) || victim == f && (victimIndex == i1 || victimIndex == i2);
+	}
+
+	/**
+	 * Removes an object that was previously recorded in the filter.
+	 *
+	 * @param value
+	 *            the object to remove
+	 * @return true if a matching fingerprint was removed, false if the object
+	 *         was definitely not recorded in the filter
+	 */
+
+	public boolean remove(T value) {
+		long h = hash(value);
+		long f = fingerprint(h);
+		int i1 = index(h);
+		int i2 = alternate(i1, f);
+		if (delete(i1, f) || delete(i2, f)) {
+			count--;
+			// there may now be room for the victim
+			if (victim != 0L && (insert(victimIndex, victim) || insert(alternate(victimIndex, victim), victim))) {
+				victim = 0L;
+			}
+			return true;
+		}
+		if (victim == f && (victimIndex == i1 || victimIndex == i2)) {
+			victim = 0L;
+			count--;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all objects from the filter.
+	 */
+
+	public void clear() {
+		for (int i = 0; i < words.length; i++) {
+			words[i] = 0L;
+		}
+		count = 0L;
+		victim = 0L;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "Cuckoo filter of " + bucketCount + " buckets with " + fingerprintBits + " bit fingerprints from " + hasher;
+	}
+
+	// private helper methods
+
+	private long hash(T value) {
+		return Indices.mix(hasher.longHashValue(value));
+	}
+
+	// the fingerprint is taken from the high bits, the index from the low bits
+	private long fingerprint(long h) {
+		long f = h >>> (64 - fingerprintBits);
+		// zero denotes an empty slot
+		return f == 0L ? 1L : f;
+	}
+
+	private int index(long h) {
+		return (int) h & (bucketCount - 1);
+	}
+
+	// an involution: the alternate of the alternate index is the original
+	private int alternate(int i, long f) {
+		return (i ^ (int) Indices.mix(f)) & (bucketCount - 1);
+	}
+
+	private long bucket(int i) {
+		long p = (long) i * bucketBits;
+		int w = (int) (p >>> 6);
+		int off = (int) p & 63;
+		long bits = words[w] >>> off;
+		if (off + bucketBits > 64) bits |= words[w + 1] << (64 - off);
+		return bits & bucketMask;
+	}
+
+	private void setBucket(int i, long bucket) {
+		long p = (long) i * bucketBits;
+		int w = (int) (p >>> 6);
+		int off = (int) p & 63;
+		words[w] = words[w] & ~(bucketMask << off) | bucket << off;
+		if (off + bucketBits > 64) {
+			int over = off + bucketBits - 64;
+			words[w + 1] = words[w + 1] & -(1L << over) | bucket >>> (64 - off);
+		}
+	}
+
+	private boolean contains(int i, long f) {
+		// tests all slots at once for a zero difference
+		long x = bucket(i) ^ f * lows;
+		return ((x - lows) & ~x & highs) != 0L;
+	}
+
+	private boolean insert(int i, long f) {
+		long bucket = bucket(i);
+		for (int s = 0; s < SLOTS; s++) {
+			int shift = s * fingerprintBits;
+			if ((bucket >>> shift & fingerprintMask) == 0L) {
+				setBucket(i, bucket | f << shift);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean delete(int i, long f) {
+		long bucket = bucket(i);
+		for (int s = 0; s < SLOTS; s++) {
+			int shift = s * fingerprintBits;
+			if ((bucket >>> shift & fingerprintMask) == f) {
+				setBucket(i, bucket & ~(fingerprintMask << shift));
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int nextRandom() {
+		random = random * 6364136223846793005L + 1442695040888963407L;
+		return (int) (random >>> 32);
+	}
+
+}
@@ -0,0 +1,489 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>
+ * A map that stores its entries with bucketized cuckoo hashing. Every key may
+ * occupy any of the four slots in either of two distinct buckets, so a lookup
+ * examines at most eight slots, regardless of how full the map is. The
+ * buckets are chosen, as by {@link Hasher#distinct(int, HashSize)}, from a
+ * single hash value of the key; that value is retained alongside the key so
+ * that slots can be rejected without comparing keys, and so that entries can
+ * be relocated and rehashed without rehashing their keys.
+ *
+ * <p>
+ * When both buckets of a new key are full, a breadth-first search finds the
+ * shortest sequence of relocations that frees a slot for it. If no such
+ * sequence is found, the map is rehashed with a new seed and, should repeated
+ * seeds fail, with more buckets. Slots are held in parallel arrays of hashes,
+ * keys and values, and loads of up to 97% can be sustained.
+ *
+ * <p>
+ * Null keys are not supported, but null values are. Maps are not safe for
+ * concurrent use: access to them must be externally synchronized if they are
+ * modified by multiple threads.
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of keys
+ * @param <V>
+ *            the type of values
+ */
+
+public final class CuckooHashMap<K, V> extends AbstractMap<K, V> {
+
+	// the number of entries stored in a bucket
+	private static final int SLOTS = 4;
+	// the number of buckets examined when searching for relocations
+	private static final int MAX_SEARCH = 1024;
+	// the number of seeds tried before the number of buckets is increased
+	private static final int MAX_RESEEDS = 3;
+	private static final int MIN_BUCKETS = 2;
+	private static final int MAX_BUCKETS = 1 << 28;
+	private static final double DEFAULT_LOAD_FACTOR = 0.95;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Creates an empty map with a default capacity and load factor.
+	 *
+	 * @param hasher
+	 *            hashes the keys
+	 * @param <K>
+	 *            the type of keys
+	 * @param <V>
+	 *            the type of values
+	 * @return an empty map
+	 */
+
+	public static <K, V> CuckooHashMap<K, V> withHasher(Hasher<? super K> hasher) {
+		return withCapacity(hasher, DEFAULT_CAPACITY, DEFAULT_LOAD_FACTOR);
+	}
+
+	/**
+	 * Creates an empty map that can accommodate the expected number of
+	 * entries without growing.
+	 *
+	 * @param hasher
+	 *            hashes the keys
+	 * @param expectedSize
+	 *            the number of entries that the map is expected to hold
+	 * @param loadFactor
+	 *            the proportion of slots that may be occupied before the map
+	 *            grows, greater than zero and less than one
+	 * @param <K>
+	 *            the type of keys
+	 * @param <V>
+	 *            the type of values
+	 * @return an empty map
+	 */
+
+	public static <K, V> CuckooHashMap<K, V> withCapacity(Hasher<? super K> hasher, int expectedSize, double loadFactor) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (expectedSize < 0) throw new IllegalArgumentException("negative expectedSize");
+		if (!(loadFactor > 0.0 && loadFactor < 1.0)) throw new IllegalArgumentException("invalid loadFactor");
+		double buckets = Math.ceil(expectedSize / (SLOTS * loadFactor));
+		if (buckets > MAX_BUCKETS) throw new IllegalArgumentException("expectedSize too large");
+		return new CuckooHashMap<>(hasher, Math.max(MIN_BUCKETS, (int) buckets), loadFactor);
+	}
+
+	private final Hasher<? super K> hasher;
+	private final double loadFactor;
+	private int bucketCount;
+	private long seed = 0L;
+	// per slot, the key hash, the key (null if vacant) and the value
+	private long[] hashes;
+	private Object[] keys;
+	private Object[] values;
+	private int size = 0;
+	private int threshold;
+	// counts structural changes to fail iterators fast
+	private int modCount = 0;
+	// breadth-first search state, per bucket examined
+	private final int[] searchBuckets = new int[MAX_SEARCH];
+	private final int[] searchParents = new int[MAX_SEARCH];
+	private final int[] searchSlots = new int[MAX_SEARCH];
+	private Set<Map.Entry<K, V>> entrySet = null;
+
+	private CuckooHashMap(Hasher<? super K> hasher, int bucketCount, double loadFactor) {
+		this.hasher = hasher;
+		this.loadFactor = loadFactor;
+		allocate(bucketCount);
+	}
+
+	/**
+	 * The hasher used to hash keys.
+	 *
+	 * @return the key hasher
+	 */
+
+	public Hasher<? super K> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The proportion of slots that may be occupied before the map grows.
+	 *
+	 * @return the load factor
+	 */
+
+	public double getLoadFactor() {
+		return loadFactor;
+	}
+
+	/**
+	 * The number of entries that the map can hold without growing.
+	 *
+	 * @return the capacity of the map
+	 */
+
+	public int getCapacity() {
+		return threshold;
+	}
+
+	// map methods
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slotOf(key) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int slot = slotOf(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		long hash = hasher.longHashValue(key);
+		int slot = find(key, hash);
+		if (slot >= 0) {
+			V previous = (V) values[slot];
+			values[slot] = value;
+			return previous;
+		}
+		if (size >= threshold) grow();
+		for (int attempt = 0; !insert(hash, key, value); attempt++) restructure(attempt);
+		size++;
+		modCount++;
+		return null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V remove(Object key) {
+		int slot = slotOf(key);
+		if (slot < 0) return null;
+		V previous = (V) values[slot];
+		vacate(slot);
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(keys, null);
+		Arrays.fill(values, null);
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return entrySet == null ? entrySet = new EntrySet() : entrySet;
+	}
+
+	// private helper methods
+
+	private void allocate(int bucketCount) {
+		this.bucketCount = bucketCount;
+		int slotCount = bucketCount * SLOTS;
+		hashes = new long[slotCount];
+		keys = new Object[slotCount];
+		values = new Object[slotCount];
+		threshold = (int) Math.min(slotCount * loadFactor, slotCount - 1);
+	}
+
+	// combines a key hash with the seed, from which both of its buckets are derived
+	private long mix(long hash) {
+		return Indices.mix(hash ^ seed);
+	}
+
+	// the first of two distinct buckets for a mixed hash
+	private int firstBucket(long mixed) {
+		return Indices.reduce((int) (mixed >>> 32), bucketCount);
+	}
+
+	// the second of two distinct buckets for a mixed hash
+	private int secondBucket(long mixed) {
+		int first = firstBucket(mixed);
+		int second = Indices.reduce((int) mixed, bucketCount - 1);
+		return second < first ? second : second + 1;
+	}
+
+	// the bucket other than the given bucket into which a key hash may be placed
+	private int otherBucket(long hash, int bucket) {
+		long mixed = mix(hash);
+		int first = firstBucket(mixed);
+		return first == bucket ? secondBucket(mixed) : first;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int slotOf(Object key) {
+		if (key == null) return -1;
+		long hash;
+		try {
+			hash = hasher.longHashValue((K) key);
+		} catch (ClassCastException e) {
+			return -1;
+		}
+		return find(key, hash);
+	}
+
+	private int find(Object key, long hash) {
+		long mixed = mix(hash);
+		int slot = findInBucket(key, hash, firstBucket(mixed));
+		return slot >= 0 ? slot : findInBucket(key, hash, secondBucket(mixed));
+	}
+
+	private int findInBucket(Object key, long hash, int bucket) {
+		int start = bucket * SLOTS;
+		for (int slot = start; slot < start + SLOTS; slot++) {
+			if (hashes[slot] == hash && key.equals(keys[slot])) return slot;
+		}
+		return -1;
+	}
+
+	private int vacantSlot(int bucket) {
+		int start = bucket * SLOTS;
+		for (int slot = start; slot < start + SLOTS; slot++) {
+			if (keys[slot] == null) return slot;
+		}
+		return -1;
+	}
+
+	private void vacate(int slot) {
+		keys[slot] = null;
+		values[slot] = null;
+		size--;
+		modCount++;
+	}
+
+	// places a new entry, relocating others along the shortest path to a vacant slot, or returns false
+	private boolean insert(long hash, Object key, Object value) {
+		long mixed = mix(hash);
+		int first = firstBucket(mixed);
+		int second = secondBucket(mixed);
+		int slot = vacantSlot(first);
+		if (slot < 0) slot = vacantSlot(second);
+		if (slot < 0) {
+			slot = relocate(first, second);
+			if (slot < 0) return false;
+		}
+		hashes[slot] = hash;
+		keys[slot] = key;
+		values[slot] = value;
+		return true;
+	}
+
+	// frees a slot in one of the two buckets, returning it, or -1 if no path was found
+	private int relocate(int first, int second) {
+		searchBuckets[0] = first;
+		searchParents[0] = -1;
+		searchBuckets[1] = second;
+		searchParents[1] = -1;
+		int count = 2;
+		for (int node = 0; node < count; node++) {
+			int bucket = searchBuckets[node];
+			int vacant = vacantSlot(bucket);
+			if (vacant >= 0) {
+				// shift entries along the path, starting from the vacant slot
+				while (searchParents[node] >= 0) {
+					int from = searchBuckets[searchParents[node]] * SLOTS + searchSlots[node];
+					hashes[vacant] = hashes[from];
+					keys[vacant] = keys[from];
+					values[vacant] = values[from];
+					vacant = from;
+					node = searchParents[node];
+				}
+				return vacant;
+			}
+			for (int s = 0; s < SLOTS && count < MAX_SEARCH; s++) {
+				int other = otherBucket(hashes[bucket * SLOTS + s], bucket);
+				// a path must not revisit a bucket
+				if (onPath(other, node)) continue;
+				searchBuckets[count] = other;
+				searchParents[count] = node;
+				searchSlots[count] = s;
+				count++;
+			}
+		}
+		return -1;
+	}
+
+	private boolean onPath(int bucket, int node) {
+		for (; node >= 0; node = searchParents[node]) {
+			if (searchBuckets[node] == bucket) return true;
+		}
+		return false;
+	}
+
+	private void grow() {
+		if (bucketCount == MAX_BUCKETS) throw new IllegalStateException("map full");
+		if (!reseed(Math.min(bucketCount * 2, MAX_BUCKETS))) throw new IllegalStateException("too many keys with equal hashes");
+	}
+
+	// called when an entry cannot be placed; tries new seeds, then more buckets
+	private void restructure(int attempt) {
+		if (attempt < MAX_RESEEDS && reseed(bucketCount)) return;
+		// keys that share a hash cannot be separated by seeds or growth
+		if (size < bucketCount * SLOTS / 4) throw new IllegalStateException("too many keys with equal hashes");
+		grow();
+	}
+
+	private boolean reseed(int newBucketCount) {
+		long newSeed = seed;
+		for (int i = 0; i < MAX_RESEEDS; i++) {
+			// the current seed is only worth retrying with a different number of buckets
+			if (i > 0 || newBucketCount == bucketCount) newSeed += 0x9e3779b97f4a7c15L;
+			if (rehash(newBucketCount, newSeed)) return true;
+		}
+		return false;
+	}
+
+	// rebuilds the table, leaving it unchanged if the entries cannot all be placed
+	private boolean rehash(int newBucketCount, long newSeed) {
+		int oldBucketCount = bucketCount;
+		long oldSeed = seed;
+		long[] oldHashes = hashes;
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int oldThreshold = threshold;
+		seed = newSeed;
+		allocate(newBucketCount);
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldKeys[slot] == null) continue;
+			if (!insert(oldHashes[slot], oldKeys[slot], oldValues[slot])) {
+				bucketCount = oldBucketCount;
+				seed = oldSeed;
+				hashes = oldHashes;
+				keys = oldKeys;
+				values = oldValues;
+				threshold = oldThreshold;
+				return false;
+			}
+		}
+		modCount++;
+		return true;
+	}
+
+	// inner classes
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			CuckooHashMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new Iterator<Map.Entry<K, V>>() {
+
+				private final Object[] keys = CuckooHashMap.this.keys;
+				private int expectedModCount = modCount;
+				private int slot = advance(0);
+				private int last = -1;
+
+				@Override
+				public boolean hasNext() {
+					return slot < keys.length;
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public Map.Entry<K, V> next() {
+					if (modCount != expectedModCount) throw new ConcurrentModificationException();
+					if (slot == keys.length) throw new NoSuchElementException();
+					last = slot;
+					slot = advance(slot + 1);
+					return new Entry(last, (K) keys[last]);
+				}
+
+				@Override
+				public void remove() {
+					if (last < 0) throw new IllegalStateException();
+					if (modCount != expectedModCount) throw new ConcurrentModificationException();
+					vacate(last);
+					expectedModCount = modCount;
+					last = -1;
+				}
+
+				private int advance(int slot) {
+					while (slot < keys.length && keys[slot] == null) slot++;
+					return slot;
+				}
+			};
+		}
+
+	}
+
+	private final class Entry extends SimpleEntry<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int slot;
+
+		@SuppressWarnings("unchecked")
+		Entry(int slot, K key) {
+			super(key, (V) values[slot]);
+			this.slot = slot;
+		}
+
+		@Override
+		public V setValue(V value) {
+			// writes through while the entry remains in its slot
+			if (keys[slot] == getKey()) values[slot] = value;
+			return super.setValue(value);
+		}
+
+	}
+
+}
@@ -17,6 +17,7 @@
 package com.tomgibara.hashing;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 
 import com.tomgibara.streams.WriteStream;
@@ -46,6 +47,21 @@ final class DigestHash implements Hash {
 		return new DigestStream(digestSource.newDigest());
 	}
 
+	@Override
+	public WriteStream resetStream(WriteStream stream) {
+		((DigestStream) stream).getDigest().reset();
+		return stream;
+	}
+
+	@Override
+	public void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		MappedWindows.checkBuffer(stream, buffer, position, limit);
+		// a duplicate shares content, but leaves the position of the buffer unchanged
+		ByteBuffer view = buffer.duplicate();
+		view.limit(limit).position(position);
+		((DigestStream) stream).getDigest().update(view);
+	}
+
 	@Override
 	public HashCode hash(WriteStream stream) {
 		return new BigHashCode(size, bigHashValue(stream));
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>
+ * An immutable map over a fixed set of keys that is laid out with perfect
+ * hashing. Keys and values are stored in flat parallel arrays, and each key
+ * occupies a slot that is computed from its hash and a small integer, a
+ * pilot, recorded for the bucket into which the key hashes. The pilots are
+ * found when the map is constructed by searching, as in PTHash, for values
+ * that place every key of a bucket in a vacant slot.
+ *
+ * <p>
+ * A lookup therefore hashes the key once, reads one pilot, and compares
+ * the key with the single key that may occupy its slot; there are no chains
+ * or probe sequences to follow. This makes the map well suited to small
+ * static tables that are read frequently.
+ *
+ * <p>
+ * Keys are distinguished by their hash values, so the hasher must produce at
+ * least 64 bits, and a map cannot be constructed over distinct keys with
+ * equal hash values. Null keys are not
+ * supported, but null values are. The map is safe for concurrent use.
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of keys
+ * @param <V>
+ *            the type of values
+ */
+
+public final class FrozenMap<K, V> extends AbstractMap<K, V> {
+
+	// the proportion of slots occupied by keys
+	private static final double LOAD_FACTOR = 0.98;
+	// the average number of keys per bucket is approximately log2(n) divided by this
+	private static final double BUCKET_DENSITY = 4.0;
+	// the number of pilots tried for a bucket before construction is abandoned
+	private static final int MAX_PILOT = 1 << 24;
+
+	/**
+	 * Creates a map that contains the same entries as the supplied map.
+	 *
+	 * @param hasher
+	 *            hashes the keys, producing at least 64 bits
+	 * @param map
+	 *            the entries of the map
+	 * @param <K>
+	 *            the type of keys
+	 * @param <V>
+	 *            the type of values
+	 * @return an immutable map
+	 * @throws IllegalArgumentException
+	 *             if the hasher produces fewer than 64 bits, or the map
+	 *             contains a null key or distinct keys with equal hash values
+	 */
+
+	public static <K, V> FrozenMap<K, V> withEntries(Hasher<? super K> hasher, Map<? extends K, ? extends V> map) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (hasher.getSize().getBits() < 64) throw new IllegalArgumentException("hasher produces fewer than 64 bits");
+		if (map == null) throw new IllegalArgumentException("null map");
+		int n = map.size();
+		Object[] keys = new Object[n];
+		Object[] values = new Object[n];
+		long[] hashes = new long[n];
+		int i = 0;
+		for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+			K key = entry.getKey();
+			if (key == null) throw new IllegalArgumentException("null key");
+			keys[i] = key;
+			values[i] = entry.getValue();
+			hashes[i] = Indices.mix(hasher.longHashValue(key));
+			i++;
+		}
+		long[] sorted = hashes.clone();
+		Arrays.sort(sorted);
+		for (int j = 1; j < n; j++) {
+			if (sorted[j] == sorted[j - 1]) throw new IllegalArgumentException("keys with equal hashes");
+		}
+		return new FrozenMap<>(hasher, keys, values, hashes);
+	}
+
+	// the bucket of a hash, taken from its high bits
+	private static int bucket(long hash, int bucketCount) {
+		return Indices.reduce((int) (hash >>> 32), bucketCount);
+	}
+
+	// the slot of a hash, given the pilot of its bucket; the hash is already mixed, so a multiply suffices
+	private static int slot(long hash, int pilot, int slotCount) {
+		return Indices.reduce((int) ((hash ^ pilot * 0x9e3779b97f4a7c15L) * 0xc2b2ae3d27d4eb4fL >>> 32), slotCount);
+	}
+
+	private final Hasher<? super K> hasher;
+	private final int size;
+	private final int[] pilots;
+	private final Object[] keys;
+	private final Object[] values;
+	private Set<Map.Entry<K, V>> entrySet = null;
+
+	private FrozenMap(Hasher<? super K> hasher, Object[] keys, Object[] values, long[] hashes) {
+		this.hasher = hasher;
+		int n = keys.length;
+		size = n;
+		int slotCount = Math.max(1, (int) Math.ceil(n / LOAD_FACTOR));
+		int bucketCount = Math.max(1, (int) Math.ceil(n * BUCKET_DENSITY / Math.max(1, 31 - Integer.numberOfLeadingZeros(n))));
+		pilots = new int[bucketCount];
+		this.keys = new Object[slotCount];
+		this.values = new Object[slotCount];
+
+		// group the keys by bucket
+		int[] starts = new int[bucketCount + 1];
+		int[] buckets = new int[n];
+		for (int i = 0; i < n; i++) {
+			buckets[i] = bucket(hashes[i], bucketCount);
+			starts[buckets[i] + 1]++;
+		}
+		for (int b = 0; b < bucketCount; b++) starts[b + 1] += starts[b];
+		int[] members = new int[n];
+		int[] ends = Arrays.copyOf(starts, bucketCount);
+		for (int i = 0; i < n; i++) members[ends[buckets[i]]++] = i;
+
+		// place the largest buckets first, while vacant slots are plentiful
+		Integer[] order = new Integer[bucketCount];
+		for (int b = 0; b < bucketCount; b++) order[b] = b;
+		Arrays.sort(order, (a, b) -> (starts[b + 1] - starts[b]) - (starts[a + 1] - starts[a]));
+		boolean[] occupied = new boolean[slotCount];
+		int[] slots = new int[n];
+		for (int b : order) {
+			int start = starts[b];
+			int end = starts[b + 1];
+			if (start == end) break;
+			pilots[b] = place(hashes, members, start, end, occupied, slots);
+			for (int j = start; j < end; j++) {
+				int i = members[j];
+				this.keys[slots[j - start]] = keys[i];
+				this.values[slots[j - start]] = values[i];
+			}
+		}
+	}
+
+	/**
+	 * The hasher used to hash keys.
+	 *
+	 * @return the key hasher
+	 */
+
+	public Hasher<? super K> getHasher() {
+		return hasher;
+	}
+
+	// map methods
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slotOf(key) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		int slot = slotOf(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return entrySet == null ? entrySet = new EntrySet() : entrySet;
+	}
+
+	// private helper methods
+
+	// finds a pilot that places every key of a bucket into a distinct vacant slot
+	private int place(long[] hashes, int[] members, int start, int end, boolean[] occupied, int[] slots) {
+		int slotCount = occupied.length;
+		for (int pilot = 0; pilot < MAX_PILOT; pilot++) {
+			int count = 0;
+			for (int j = start; j < end; j++) {
+				int slot = slot(hashes[members[j]], pilot, slotCount);
+				if (occupied[slot]) break;
+				occupied[slot] = true;
+				slots[count++] = slot;
+			}
+			if (count == end - start) return pilot;
+			// release the slots claimed by this attempt
+			for (int k = 0; k < count; k++) occupied[slots[k]] = false;
+		}
+		throw new IllegalStateException("no pilot found");
+	}
+
+	@SuppressWarnings("unchecked")
+	private int slotOf(Object key) {
+		if (key == null || size == 0) return -1;
+		long hash;
+		try {
+			hash = Indices.mix(hasher.longHashValue((K) key));
+		} catch (ClassCastException e) {
+			return -1;
+		}
+		int slot = slot(hash, pilots[bucket(hash, pilots.length)], keys.length);
+		return key.equals(keys[slot]) ? slot : -1;
+	}
+
+	// inner classes
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new Iterator<Map.Entry<K, V>>() {
+
+				private int slot = advance(0);
+
+				@Override
+				public boolean hasNext() {
+					return slot < keys.length;
+				}
+
+				@Override
+				@SuppressWarnings("unchecked")
+				public Map.Entry<K, V> next() {
+					if (slot == keys.length) throw new NoSuchElementException();
+					Map.Entry<K, V> entry = new SimpleImmutableEntry<>((K) keys[slot], (V) values[slot]);
+					slot = advance(slot + 1);
+					return entry;
+				}
+
+				private int advance(int slot) {
+					while (slot < keys.length && keys[slot] == null) slot++;
+					return slot;
+				}
+			};
+		}
+
+	}
+
+}
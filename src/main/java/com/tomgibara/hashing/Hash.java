@@ -16,6 +16,12 @@
  */
 package com.tomgibara.hashing;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
 import com.tomgibara.streams.StreamSerializer;
 import com.tomgibara.streams.WriteStream;
 
@@ -46,6 +52,86 @@ public interface Hash extends Hashing<WriteStream> {
 
 	WriteStream newStream();
 
+	/**
+	 * <p>
+	 * Returns a stream, in the same state as one newly created by
+	 * {@link #newStream()}, that may be the supplied stream reset for reuse.
+	 * The supplied stream must have been created by this hash and must not be
+	 * used by the caller after this method is called.
+	 *
+	 * <p>
+	 * The default implementation simply returns a new stream. Hashes that
+	 * implement this method to reuse streams must ensure that any
+	 * {@link HashCode} returned from {@link #hash(Object)} does not depend on
+	 * the stream from which it was derived.
+	 *
+	 * @param stream
+	 *            a stream previously created by this hash
+	 * @return a stream for accumulating object data
+	 */
+
+	default WriteStream resetStream(WriteStream stream) {
+		return newStream();
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer, those between its position and
+	 * its limit, to a stream created by this hash. The position of the buffer
+	 * is not changed.
+	 *
+	 * @param stream
+	 *            a stream created by this hash
+	 * @param buffer
+	 *            a heap or direct buffer
+	 * @see #writeBuffer(WriteStream, ByteBuffer, int, int)
+	 */
+
+	default void writeBuffer(WriteStream stream, ByteBuffer buffer) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		writeBuffer(stream, buffer, buffer.position(), buffer.limit());
+	}
+
+	/**
+	 * <p>
+	 * Writes the bytes of a buffer between the specified position (inclusive)
+	 * and limit (exclusive) to a stream created by this hash. Neither the
+	 * position nor the limit of the buffer is changed, and the byte order of
+	 * the buffer is immaterial: the bytes are written exactly as if they had
+	 * been supplied to {@link WriteStream#writeBytes(byte[], int, int)}.
+	 *
+	 * <p>
+	 * The default implementation writes the backing array of heap buffers
+	 * directly and copies the contents of direct buffers in chunks. Hashes may
+	 * override this method to read directly from any buffer; the Murmur3,
+	 * xxHash, XXH3 and SipHash implementations provided by {@link Hashing} do
+	 * so.
+	 *
+	 * @param stream
+	 *            a stream created by this hash
+	 * @param buffer
+	 *            a heap or direct buffer
+	 * @param position
+	 *            the index of the first byte to write
+	 * @param limit
+	 *            the index following the last byte to write
+	 */
+
+	default void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		MappedWindows.checkBuffer(stream, buffer, position, limit);
+		if (buffer.hasArray()) {
+			stream.writeBytes(buffer.array(), buffer.arrayOffset() + position, limit - position);
+			return;
+		}
+		ByteBuffer view = buffer.duplicate();
+		view.limit(limit).position(position);
+		byte[] chunk = new byte[Math.min(limit - position, 4096)];
+		while (view.hasRemaining()) {
+			int length = Math.min(view.remaining(), chunk.length);
+			view.get(chunk, 0, length);
+			stream.writeBytes(chunk, 0, length);
+		}
+	}
+
 	/**
 	 * Derives a {@link Hasher} by combining this hash with a
 	 * <code>StreamSerializer</code>: a new stream will be created by the hash,
@@ -63,12 +149,130 @@ public interface Hash extends Hashing<WriteStream> {
 		return new StandardHasher<T>(this, serializer);
 	}
 
+	/**
+	 * <p>
+	 * Writes a range of a file channel to a stream created by this hash. The
+	 * range is memory-mapped in large windows, each of which is supplied to
+	 * {@link #writeBuffer(WriteStream, ByteBuffer, int, int)} and then
+	 * released. Hashes that read direct buffers in place therefore never copy
+	 * the contents of the file onto the heap; others copy them in small chunks.
+	 * The position of the channel is not changed.
+	 *
+	 * <p>
+	 * Mappings are released as soon as each window has been written, where
+	 * the Java runtime permits it; otherwise they are released when garbage
+	 * collected. Implementations of <code>writeBuffer</code> must not retain
+	 * the buffers supplied to them.
+	 *
+	 * @param stream
+	 *            a stream created by this hash
+	 * @param channel
+	 *            a channel open for reading
+	 * @param position
+	 *            the position in the channel at which to start writing
+	 * @param size
+	 *            the number of bytes to write
+	 * @throws IOException
+	 *             if the channel could not be mapped
+	 */
+
+	default void writeChannel(WriteStream stream, FileChannel channel, long position, long size) throws IOException {
+		if (stream == null) throw new IllegalArgumentException("null stream");
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		if (position < 0L) throw new IllegalArgumentException("negative position");
+		if (size < 0L) throw new IllegalArgumentException("negative size");
+		if (position + size > channel.size()) throw new IllegalArgumentException("range exceeds channel size");
+		MappedWindows.write(this, stream, channel, position, size);
+	}
+
+	/**
+	 * Writes the entire contents of a file to a stream created by this hash.
+	 * The file is memory-mapped as per
+	 * {@link #writeChannel(WriteStream, FileChannel, long, long)}.
+	 *
+	 * @param stream
+	 *            a stream created by this hash
+	 * @param path
+	 *            the path of a readable file
+	 * @throws IOException
+	 *             if the file could not be opened or mapped
+	 */
+
+	default void writeFile(WriteStream stream, Path path) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			writeChannel(stream, channel, 0L, channel.size());
+		}
+	}
+
+	/**
+	 * Computes the hash of a range of a file channel. The range is
+	 * memory-mapped as per
+	 * {@link #writeChannel(WriteStream, FileChannel, long, long)}.
+	 *
+	 * @param channel
+	 *            a channel open for reading
+	 * @param position
+	 *            the position in the channel at which the range starts
+	 * @param size
+	 *            the number of bytes in the range
+	 * @return the hash of the range
+	 * @throws IOException
+	 *             if the channel could not be mapped
+	 */
+
+	default HashCode hashChannel(FileChannel channel, long position, long size) throws IOException {
+		WriteStream stream = newStream();
+		writeChannel(stream, channel, position, size);
+		return hash(stream);
+	}
+
+	/**
+	 * Computes the hash of the entire contents of a file.
+	 *
+	 * @param path
+	 *            the path of a readable file
+	 * @return the hash of the file's contents
+	 * @throws IOException
+	 *             if the file could not be opened or mapped
+	 * @see #writeFile(WriteStream, Path)
+	 */
+
+	default HashCode hashFile(Path path) throws IOException {
+		WriteStream stream = newStream();
+		writeFile(stream, path);
+		return hash(stream);
+	}
+
+	/**
+	 * <p>
+	 * Derives a hash whose values are changed by the supplied seed. This can be
+	 * useful when creating data structures that need to be resiliant to
+	 * orchestrated collision attacks.
+	 *
+	 * <p>
+	 * Implementations should apply the seed natively, typically by
+	 * incorporating it into the initial state of the hash function. The
+	 * default implementation prefixes every stream with the seed. Note that
+	 * resistance to collision attacks ultimately depends on the hash function
+	 * and its seeding: a keyed function such as SipHash should be preferred
+	 * where inputs are untrusted.
+	 *
+	 * @param seed
+	 *            transforms the computed hash values.
+	 * @return a hash that incorporates the seed
+	 * @see Hashing#sipHash24(long, long)
+	 */
+
+	default Hash seeded(long seed) {
+		return new SeededHash(this, seed);
+	}
+
 	/**
 	 * Derives a {@link Hasher} by combining this hash with a
 	 * <code>StreamSerializer</code>. The supplied seed changes the hash values
-	 * that will be created by the derived hasher based on this hash. This can
-	 * be useful when creating data structures that need to be resiliant to
-	 * orchestrated collision attacks.
+	 * that will be created by the derived hasher based on this hash. This is
+	 * equivalent to <code>seeded(seed).hasher(serializer)</code>.
 	 *
 	 * @param serializer
 	 *            serializes objects of the specified type
@@ -77,10 +281,11 @@ public interface Hash extends Hashing<WriteStream> {
 	 * @param <T>
 	 *            the type of objects serialized
 	 * @return a new hasher that uses this hash to compute the hash values
+	 * @see #seeded(long)
 	 */
 
 	default <T> Hasher<T> seeded(StreamSerializer<T> serializer, long seed) {
 		if (serializer == null) throw new IllegalArgumentException("null serializer");
-		return new SeededHasher<T>(this, serializer, seed);
+		return seeded(seed).hasher(serializer);
 	}
 }
@@ -17,6 +17,7 @@
 package com.tomgibara.hashing;
 
 import java.security.MessageDigest;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Generates digests from which hashes may be derived.
@@ -47,4 +48,37 @@ public interface HashDigest {
 		return new DigestHash(this);
 	}
 
+	/**
+	 * Derives a tree hash from the digest. Inputs are split into leaves of the
+	 * specified size which are hashed in parallel on the common
+	 * <code>ForkJoinPool</code>.
+	 *
+	 * @param leafSize
+	 *            the number of bytes in each leaf
+	 * @return a {@link TreeHash} that uses the digests generated by this
+	 *         source to hash leaves and interior nodes.
+	 */
+
+	default TreeHash asTreeHash(int leafSize) {
+		return asTreeHash(leafSize, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Derives a tree hash from the digest. Inputs are split into leaves of the
+	 * specified size which are hashed in parallel on the supplied pool.
+	 *
+	 * @param leafSize
+	 *            the number of bytes in each leaf
+	 * @param pool
+	 *            the pool on which leaves and interior nodes are hashed
+	 * @return a {@link TreeHash} that uses the digests generated by this
+	 *         source to hash leaves and interior nodes.
+	 */
+
+	default TreeHash asTreeHash(int leafSize, ForkJoinPool pool) {
+		if (leafSize < 1) throw new IllegalArgumentException("non-positive leafSize");
+		if (pool == null) throw new IllegalArgumentException("null pool");
+		return new TreeHash(this, leafSize, pool);
+	}
+
 }
\ No newline at end of file
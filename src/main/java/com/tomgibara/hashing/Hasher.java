@@ -55,6 +55,31 @@ public interface Hasher<T> extends Hashing<T> {
 		return new SizedBigHasher<>(this, newSize);
 	}
 
+	/**
+	 * Derives a hasher that assigns objects to one of a number of buckets
+	 * using jump consistent hashing. Unlike a hasher obtained by
+	 * {@link #sized(HashSize)}, which reassigns almost every object when the
+	 * number of buckets changes, increasing the number of buckets from n to
+	 * n + 1 moves only the objects that are assigned to the new bucket,
+	 * approximately 1/(n+1) of them. Assignment takes time logarithmic in the
+	 * number of buckets and requires no storage.
+	 *
+	 * <p>
+	 * Buckets are derived from the long hash value of this hasher, which
+	 * should therefore be well distributed; 64 bit hashers are recommended.
+	 * Buckets can only be added or removed at the end of the range.
+	 *
+	 * @param buckets
+	 *            the number of buckets
+	 * @return a hasher that produces bucket indices in the range
+	 *         [0,buckets)
+	 */
+
+	default Hasher<T> jumpSized(int buckets) {
+		if (buckets < 1) throw new IllegalArgumentException("non-positive buckets");
+		return new JumpSizedHasher<>(this, buckets);
+	}
+
 	/**
 	 * Derives a hasher that produces a fixed quantity of distinct hash codes
 	 * within a specified range. To ensure that all value combinations are
@@ -0,0 +1,507 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * <p>
+ * A map that hashes its keys with a {@link Hasher} and compares them with a
+ * supplied equality, instead of relying on the <code>hashCode()</code> and
+ * <code>equals()</code> methods of the keys. This allows keys to be hashed
+ * with seeded or identity hashes without wrapping them.
+ *
+ * <p>
+ * Entries are stored by open addressing with linear probing in flat arrays
+ * of hashes, keys and values. Insertions follow the Robin Hood discipline,
+ * displacing entries that are closer to their preferred slots, which keeps
+ * probe sequences short and uniform; removals shift the following entries
+ * back rather than leaving tombstones. The 32 bit hash of every key is
+ * retained, so keys are only compared when their hashes match, unsuccessful
+ * lookups end as soon as an entry is found that would have displaced the key,
+ * and the map can grow without rehashing its keys.
+ *
+ * <p>
+ * Since the map does not use the <code>equals()</code> method of its keys, it
+ * may violate the general contract of {@link Map} when compared to maps that
+ * do, in the same way as {@link java.util.IdentityHashMap}. Null keys are not
+ * supported, but null values are. Maps are not safe for concurrent use:
+ * access to them must be externally synchronized if they are modified by
+ * multiple threads.
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of keys
+ * @param <V>
+ *            the type of values
+ * @see HasherSet
+ */
+
+public final class HasherMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int MIN_CAPACITY = 8;
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Creates an empty map that compares keys with their
+	 * <code>equals()</code> method.
+	 *
+	 * @param hasher
+	 *            hashes the keys, consistently with their equality
+	 * @param <K>
+	 *            the type of keys
+	 * @param <V>
+	 *            the type of values
+	 * @return an empty map
+	 */
+
+	public static <K, V> HasherMap<K, V> withHasher(Hasher<? super K> hasher) {
+		return withCapacity(hasher, Objects::equals, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty map that compares keys with the supplied equality. For
+	 * example, an identity map is obtained by combining
+	 * {@link Hashing#identityHasher()} with <code>(a, b) -&gt; a == b</code>.
+	 *
+	 * @param hasher
+	 *            hashes the keys, consistently with the equality
+	 * @param equality
+	 *            determines whether two keys are equal
+	 * @param <K>
+	 *            the type of keys
+	 * @param <V>
+	 *            the type of values
+	 * @return an empty map
+	 */
+
+	public static <K, V> HasherMap<K, V> withHasher(Hasher<? super K> hasher, BiPredicate<? super K, ? super K> equality) {
+		return withCapacity(hasher, equality, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty map that can accommodate the expected number of
+	 * entries without growing.
+	 *
+	 * @param hasher
+	 *            hashes the keys, consistently with the equality
+	 * @param equality
+	 *            determines whether two keys are equal
+	 * @param expectedSize
+	 *            the number of entries that the map is expected to hold
+	 * @param <K>
+	 *            the type of keys
+	 * @param <V>
+	 *            the type of values
+	 * @return an empty map
+	 */
+
+	public static <K, V> HasherMap<K, V> withCapacity(Hasher<? super K> hasher, BiPredicate<? super K, ? super K> equality, int expectedSize) {
+		checkArguments(hasher, equality, expectedSize);
+		return new HasherMap<>(hasher, equality, capacity(expectedSize), true);
+	}
+
+	static void checkArguments(Hasher<?> hasher, BiPredicate<?, ?> equality, int expectedSize) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (equality == null) throw new IllegalArgumentException("null equality");
+		if (expectedSize < 0) throw new IllegalArgumentException("negative expectedSize");
+		if (expectedSize > threshold(MAX_CAPACITY)) throw new IllegalArgumentException("expectedSize too large");
+	}
+
+	// the smallest power of two capacity that accommodates the size
+	static int capacity(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (threshold(capacity) < expectedSize) capacity <<= 1;
+		return capacity;
+	}
+
+	// the number of entries that a capacity accommodates, a load of 3/4
+	private static int threshold(int capacity) {
+		return capacity - (capacity >>> 2);
+	}
+
+	private final Hasher<? super K> hasher;
+	private final BiPredicate<? super K, ? super K> equality;
+	private final boolean hasValues;
+	// per slot, the key hash (zero if vacant), the key and the value
+	private int[] hashes;
+	private Object[] keys;
+	private Object[] values;
+	private int mask;
+	private int size = 0;
+	private int threshold;
+	// counts structural changes to fail iterators fast
+	private int modCount = 0;
+	private Set<Map.Entry<K, V>> entrySet = null;
+	private Set<K> keySet = null;
+
+	// sets do not store values
+	HasherMap(Hasher<? super K> hasher, BiPredicate<? super K, ? super K> equality, int capacity, boolean hasValues) {
+		this.hasher = hasher;
+		this.equality = equality;
+		this.hasValues = hasValues;
+		allocate(capacity);
+	}
+
+	/**
+	 * The hasher used to hash keys.
+	 *
+	 * @return the key hasher
+	 */
+
+	public Hasher<? super K> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The equality used to compare keys.
+	 *
+	 * @return the key equality
+	 */
+
+	public BiPredicate<? super K, ? super K> getEquality() {
+		return equality;
+	}
+
+	// map methods
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return slotOf(key) >= 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		int slot = slotOf(key);
+		return slot < 0 ? null : value(slot);
+	}
+
+	@Override
+	public V put(K key, V value) {
+		int hash = hash(key);
+		int slot = find(key, hash);
+		if (slot >= 0) {
+			V previous = value(slot);
+			values[slot] = value;
+			return previous;
+		}
+		insert(hash, key, value);
+		return null;
+	}
+
+	@Override
+	public V remove(Object key) {
+		int slot = slotOf(key);
+		if (slot < 0) return null;
+		V previous = value(slot);
+		removeAt(slot);
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(hashes, 0);
+		Arrays.fill(keys, null);
+		if (hasValues) Arrays.fill(values, null);
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return keySet == null ? keySet = new KeySet() : keySet;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return entrySet == null ? entrySet = new EntrySet() : entrySet;
+	}
+
+	// package scoped methods
+
+	// adds a key without a value, returning false if it was already present
+	boolean add(K key) {
+		int hash = hash(key);
+		if (find(key, hash) >= 0) return false;
+		insert(hash, key, null);
+		return true;
+	}
+
+	// private helper methods
+
+	private void allocate(int capacity) {
+		hashes = new int[capacity];
+		keys = new Object[capacity];
+		values = hasValues ? new Object[capacity] : null;
+		mask = capacity - 1;
+		threshold = threshold(capacity);
+	}
+
+	// a well distributed, non-zero, hash of a key
+	private int hash(K key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		int hash = (int) Indices.mix(hasher.longHashValue(key));
+		return hash == 0 ? 1 : hash;
+	}
+
+	// how far the entry in a slot lies from its preferred slot
+	private int distance(int hash, int slot) {
+		return (slot - hash) & mask;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int slotOf(Object key) {
+		if (key == null) return -1;
+		int hash;
+		try {
+			hash = hash((K) key);
+		} catch (ClassCastException e) {
+			return -1;
+		}
+		return find((K) key, hash);
+	}
+
+	@SuppressWarnings("unchecked")
+	private int find(K key, int hash) {
+		for (int slot = hash & mask, d = 0; ; slot = (slot + 1) & mask, d++) {
+			int h = hashes[slot];
+			// the key would have displaced any entry nearer its preferred slot
+			if (h == 0 || distance(h, slot) < d) return -1;
+			if (h == hash && equality.test(key, (K) keys[slot])) return slot;
+		}
+	}
+
+	private void insert(int hash, Object key, Object value) {
+		if (size >= threshold) grow();
+		place(hash, key, value);
+		size++;
+		modCount++;
+	}
+
+	// places an entry known to be absent, displacing entries nearer their preferred slots
+	private void place(int hash, Object key, Object value) {
+		for (int slot = hash & mask, d = 0; ; slot = (slot + 1) & mask, d++) {
+			int h = hashes[slot];
+			if (h == 0) {
+				hashes[slot] = hash;
+				keys[slot] = key;
+				if (hasValues) values[slot] = value;
+				return;
+			}
+			int e = distance(h, slot);
+			if (e < d) {
+				Object k = keys[slot];
+				hashes[slot] = hash;
+				keys[slot] = key;
+				hash = h;
+				key = k;
+				if (hasValues) {
+					Object v = values[slot];
+					values[slot] = value;
+					value = v;
+				}
+				d = e;
+			}
+		}
+	}
+
+	// removes the entry in a slot, shifting back the entries that follow it
+	private void removeAt(int slot) {
+		for (int next = (slot + 1) & mask; ; slot = next, next = (next + 1) & mask) {
+			int h = hashes[next];
+			if (h == 0 || distance(h, next) == 0) break;
+			hashes[slot] = h;
+			keys[slot] = keys[next];
+			if (hasValues) values[slot] = values[next];
+		}
+		hashes[slot] = 0;
+		keys[slot] = null;
+		if (hasValues) values[slot] = null;
+		size--;
+		modCount++;
+	}
+
+	private void grow() {
+		if (hashes.length == MAX_CAPACITY) throw new IllegalStateException("map full");
+		int[] oldHashes = hashes;
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(oldHashes.length << 1);
+		// the retained hashes avoid hashing keys again
+		for (int slot = 0; slot < oldHashes.length; slot++) {
+			int h = oldHashes[slot];
+			if (h != 0) place(h, oldKeys[slot], hasValues ? oldValues[slot] : null);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private K key(int slot) {
+		return (K) keys[slot];
+	}
+
+	@SuppressWarnings("unchecked")
+	private V value(int slot) {
+		return hasValues ? (V) values[slot] : null;
+	}
+
+	// inner classes
+
+	// visits slots in descending order from a vacant slot, so that removals shift only visited entries
+	private abstract class SlotIterator<E> implements Iterator<E> {
+
+		private int expectedModCount = modCount;
+		private final int end;
+		private int slot;
+		private int last = -1;
+
+		SlotIterator() {
+			int vacant = 0;
+			while (hashes[vacant] != 0) vacant++;
+			end = vacant;
+			slot = advance((vacant - 1) & mask);
+		}
+
+		@Override
+		public boolean hasNext() {
+			return slot != end;
+		}
+
+		@Override
+		public E next() {
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			if (slot == end) throw new NoSuchElementException();
+			last = slot;
+			slot = advance((slot - 1) & mask);
+			return element(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last < 0) throw new IllegalStateException();
+			if (modCount != expectedModCount) throw new ConcurrentModificationException();
+			removeAt(last);
+			expectedModCount = modCount;
+			last = -1;
+		}
+
+		abstract E element(int slot);
+
+		private int advance(int slot) {
+			while (slot != end && hashes[slot] == 0) slot = (slot - 1) & mask;
+			return slot;
+		}
+
+	}
+
+	private final class KeySet extends AbstractSet<K> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			int slot = slotOf(o);
+			if (slot < 0) return false;
+			removeAt(slot);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			HasherMap.this.clear();
+		}
+
+		@Override
+		public Iterator<K> iterator() {
+			return new SlotIterator<K>() {
+				@Override
+				K element(int slot) {
+					return key(slot);
+				}
+			};
+		}
+
+	}
+
+	private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void clear() {
+			HasherMap.this.clear();
+		}
+
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			return new SlotIterator<Map.Entry<K, V>>() {
+				@Override
+				Map.Entry<K, V> element(int slot) {
+					return new Entry(slot);
+				}
+			};
+		}
+
+	}
+
+	private final class Entry extends SimpleEntry<K, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int slot;
+
+		Entry(int slot) {
+			super(key(slot), value(slot));
+			this.slot = slot;
+		}
+
+		@Override
+		public V setValue(V value) {
+			// writes through while the entry remains in its slot
+			if (keys[slot] == getKey()) values[slot] = value;
+			return super.setValue(value);
+		}
+
+	}
+
+}
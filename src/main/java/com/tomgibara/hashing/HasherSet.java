@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+/**
+ * <p>
+ * A set that hashes its elements with a {@link Hasher} and compares them with
+ * a supplied equality. The set is backed by a {@link HasherMap} that stores
+ * no values, and shares its performance characteristics.
+ *
+ * <p>
+ * Since the set does not use the <code>equals()</code> method of its
+ * elements, it may violate the general contract of {@link Set} when compared
+ * to sets that do. Null elements are not supported. Sets are not safe for
+ * concurrent use: access to them must be externally synchronized if they are
+ * modified by multiple threads.
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of elements
+ * @see HasherMap
+ */
+
+public final class HasherSet<E> extends AbstractSet<E> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	/**
+	 * Creates an empty set that compares elements with their
+	 * <code>equals()</code> method.
+	 *
+	 * @param hasher
+	 *            hashes the elements, consistently with their equality
+	 * @param <E>
+	 *            the type of elements
+	 * @return an empty set
+	 */
+
+	public static <E> HasherSet<E> withHasher(Hasher<? super E> hasher) {
+		return withCapacity(hasher, Objects::equals, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty set that compares elements with the supplied equality.
+	 *
+	 * @param hasher
+	 *            hashes the elements, consistently with the equality
+	 * @param equality
+	 *            determines whether two elements are equal
+	 * @param <E>
+	 *            the type of elements
+	 * @return an empty set
+	 */
+
+	public static <E> HasherSet<E> withHasher(Hasher<? super E> hasher, BiPredicate<? super E, ? super E> equality) {
+		return withCapacity(hasher, equality, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty set that can accommodate the expected number of
+	 * elements without growing.
+	 *
+	 * @param hasher
+	 *            hashes the elements, consistently with the equality
+	 * @param equality
+	 *            determines whether two elements are equal
+	 * @param expectedSize
+	 *            the number of elements that the set is expected to hold
+	 * @param <E>
+	 *            the type of elements
+	 * @return an empty set
+	 */
+
+	public static <E> HasherSet<E> withCapacity(Hasher<? super E> hasher, BiPredicate<? super E, ? super E> equality, int expectedSize) {
+		HasherMap.checkArguments(hasher, equality, expectedSize);
+		return new HasherSet<>(new HasherMap<>(hasher, equality, HasherMap.capacity(expectedSize), false));
+	}
+
+	private final HasherMap<E, ?> map;
+
+	private HasherSet(HasherMap<E, ?> map) {
+		this.map = map;
+	}
+
+	/**
+	 * The hasher used to hash elements.
+	 *
+	 * @return the element hasher
+	 */
+
+	public Hasher<? super E> getHasher() {
+		return map.getHasher();
+	}
+
+	/**
+	 * The equality used to compare elements.
+	 *
+	 * @return the element equality
+	 */
+
+	public BiPredicate<? super E, ? super E> getEquality() {
+		return map.getEquality();
+	}
+
+	// set methods
+
+	@Override
+	public int size() {
+		return map.size();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return map.containsKey(o);
+	}
+
+	@Override
+	public boolean add(E e) {
+		return map.add(e);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		return map.keySet().remove(o);
+	}
+
+	@Override
+	public void clear() {
+		map.clear();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		return map.keySet().iterator();
+	}
+
+}
@@ -198,6 +198,191 @@ public interface Hashing<T> {
 		return Murmur3IntHash.instance(seed);
 	}
 
+	/**
+	 * A hasher which applies the 128-bit x64 variant of the Murmur3 hash
+	 * function to streams. The 128 bit hash value is maintained as two longs;
+	 * the long hash value is the first of these, and successive calls to
+	 * {@link HashCode#longValue()} alternate between the low and high 64 bits.
+	 *
+	 * @return a hasher based on the Murmur3 128-bit hash function
+	 */
+
+	static Hash murmur3Long128() {
+		return Murmur3Long128Hash.instance();
+	}
+
+	/**
+	 * A hasher which applies the 128-bit x64 variant of the Murmur3 hash
+	 * function, using the initial seed state, to streams.
+	 *
+	 * @param seed a value which initializes the hash function
+	 * @return a hasher based on the Murmur3 128-bit hash function
+	 * @see #murmur3Long128()
+	 */
+
+	static Hash murmur3Long128(int seed) {
+		return Murmur3Long128Hash.instance(seed);
+	}
+
+	/**
+	 * A hasher which applies the 64-bit xxHash function to streams.
+	 *
+	 * @return a hasher based on the xxHash 64-bit hash function
+	 */
+
+	static Hash xxHash64() {
+		return XxHash64Hash.instance();
+	}
+
+	/**
+	 * A hasher which applies the 64-bit xxHash function, using the supplied
+	 * seed, to streams.
+	 *
+	 * @param seed a value which initializes the hash function
+	 * @return a hasher based on the xxHash 64-bit hash function
+	 */
+
+	static Hash xxHash64(long seed) {
+		return XxHash64Hash.instance(seed);
+	}
+
+	/**
+	 * A hasher which applies the 64-bit XXH3 hash function to streams. This
+	 * function is particularly fast for short inputs.
+	 *
+	 * @return a hasher based on the XXH3 64-bit hash function
+	 */
+
+	static Hash xxh3Long() {
+		return Xxh3Hash.instance(false);
+	}
+
+	/**
+	 * A hasher which applies the 64-bit XXH3 hash function, using the supplied
+	 * seed, to streams.
+	 *
+	 * @param seed a value which initializes the hash function
+	 * @return a hasher based on the XXH3 64-bit hash function
+	 */
+
+	static Hash xxh3Long(long seed) {
+		return Xxh3Hash.instance(false, seed);
+	}
+
+	/**
+	 * A hasher which applies the 64-bit XXH3 hash function, using the supplied
+	 * secret, to streams.
+	 *
+	 * @param secret
+	 *            at least 136 bytes of high entropy data
+	 * @return a hasher based on the XXH3 64-bit hash function
+	 */
+
+	static Hash xxh3Long(byte[] secret) {
+		return Xxh3Hash.instance(false, secret);
+	}
+
+	/**
+	 * A hasher which applies the 128-bit XXH3 hash function to streams. The
+	 * long hash value is the low 64 bits of the hash, and successive calls to
+	 * {@link HashCode#longValue()} alternate between the low and high 64 bits.
+	 *
+	 * @return a hasher based on the XXH3 128-bit hash function
+	 */
+
+	static Hash xxh3Long128() {
+		return Xxh3Hash.instance(true);
+	}
+
+	/**
+	 * A hasher which applies the 128-bit XXH3 hash function, using the
+	 * supplied seed, to streams.
+	 *
+	 * @param seed a value which initializes the hash function
+	 * @return a hasher based on the XXH3 128-bit hash function
+	 * @see #xxh3Long128()
+	 */
+
+	static Hash xxh3Long128(long seed) {
+		return Xxh3Hash.instance(true, seed);
+	}
+
+	/**
+	 * A hasher which applies the 128-bit XXH3 hash function, using the
+	 * supplied secret, to streams.
+	 *
+	 * @param secret
+	 *            at least 136 bytes of high entropy data
+	 * @return a hasher based on the XXH3 128-bit hash function
+	 * @see #xxh3Long128()
+	 */
+
+	static Hash xxh3Long128(byte[] secret) {
+		return Xxh3Hash.instance(true, secret);
+	}
+
+	/**
+	 * A keyed hash which applies SipHash-2-4 to streams. Provided the key is
+	 * secret and randomly chosen, the values of this hash are resistant to
+	 * orchestrated collision attacks.
+	 *
+	 * @param k0
+	 *            the first 64 bits of the key (bytes 0-7, little-endian)
+	 * @param k1
+	 *            the last 64 bits of the key (bytes 8-15, little-endian)
+	 * @return a hasher based on SipHash-2-4
+	 */
+
+	static Hash sipHash24(long k0, long k1) {
+		return new SipHash(2, 4, k0, k1);
+	}
+
+	/**
+	 * A keyed hash which applies SipHash-2-4 to streams.
+	 *
+	 * @param key
+	 *            a 128 bit key
+	 * @return a hasher based on SipHash-2-4
+	 * @see #sipHash24(long, long)
+	 */
+
+	static Hash sipHash24(byte[] key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (key.length != 16) throw new IllegalArgumentException("key not 16 bytes");
+		return new SipHash(2, 4, SipHash.readLong(key, 0), SipHash.readLong(key, 8));
+	}
+
+	/**
+	 * A keyed hash which applies SipHash-1-3 to streams. This variant is
+	 * faster than SipHash-2-4 with a smaller security margin, but is still
+	 * considered adequate for protecting hash tables.
+	 *
+	 * @param k0
+	 *            the first 64 bits of the key (bytes 0-7, little-endian)
+	 * @param k1
+	 *            the last 64 bits of the key (bytes 8-15, little-endian)
+	 * @return a hasher based on SipHash-1-3
+	 */
+
+	static Hash sipHash13(long k0, long k1) {
+		return new SipHash(1, 3, k0, k1);
+	}
+
+	/**
+	 * A keyed hash which applies SipHash-1-3 to streams.
+	 *
+	 * @param key
+	 *            a 128 bit key
+	 * @return a hasher based on SipHash-1-3
+	 * @see #sipHash13(long, long)
+	 */
+
+	static Hash sipHash13(byte[] key) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		if (key.length != 16) throw new IllegalArgumentException("key not 16 bytes");
+		return new SipHash(1, 3, SipHash.readLong(key, 0), SipHash.readLong(key, 8));
+	}
+
 	/**
 	 * A hash function based on Java's standard random number generator.
 	 *
@@ -0,0 +1,526 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.tomgibara.streams.ReadStream;
+import com.tomgibara.streams.StreamException;
+import com.tomgibara.streams.WriteStream;
+
+/**
+ * <p>
+ * Estimates the number of distinct objects observed using a small, fixed,
+ * amount of memory. The estimator follows HyperLogLog++: it requires 64 bit
+ * hash values, and while few objects have been observed it records them in a
+ * sparse representation of higher precision, switching to 6 bit registers
+ * only when they would occupy less memory. Estimates from the registers are
+ * bias corrected over the full range of cardinalities using the improved
+ * estimator of Otmar Ertl.
+ *
+ * <p>
+ * The precision p, between 4 and 18, determines the number of registers,
+ * 2^p, and so the standard error of estimates, approximately
+ * <code>1.04 / sqrt(2^p)</code>.
+ *
+ * <p>
+ * Estimators are safe for concurrent use without locking, including
+ * concurrent merges. Estimators with the same precision and hasher may be
+ * merged, and may be written to, and read from, streams in a compact form so
+ * that estimators accumulated on different nodes can be combined.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of objects counted by the estimator
+ */
+
+public final class HyperLogLog<T> {
+
+	private static final int MIN_PRECISION = 4;
+	private static final int MAX_PRECISION = 18;
+	// the precision of the sparse representation
+	private static final int SPARSE_PRECISION = 25;
+	// registers are packed so that none straddles a long
+	private static final int REGISTERS_PER_WORD = 10;
+	private static final int SPARSE_CAPACITY_SHIFT = 3;
+	private static final int MIN_SPARSE_CAPACITY = 16;
+
+	private static final double ALPHA_INF = 0.5 / Math.log(2.0);
+
+	/**
+	 * Creates an estimator with the specified precision.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param precision
+	 *            the base 2 logarithm of the number of registers, between 4
+	 *            and 18
+	 * @param <T>
+	 *            the type of objects counted by the estimator
+	 * @return an empty estimator
+	 */
+
+	public static <T> HyperLogLog<T> withPrecision(Hasher<T> hasher, int precision) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (hasher.getSize().getBits() < 64) throw new IllegalArgumentException("hasher produces fewer than 64 bits");
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) throw new IllegalArgumentException("invalid precision");
+		return new HyperLogLog<>(hasher, precision);
+	}
+
+	/**
+	 * Reads an estimator that was previously written to a stream with
+	 * {@link #writeTo(WriteStream)}.
+	 *
+	 * @param hasher
+	 *            the hasher with which the estimator was created
+	 * @param stream
+	 *            the stream from which the estimator is read
+	 * @param <T>
+	 *            the type of objects counted by the estimator
+	 * @return the estimator read from the stream
+	 * @throws StreamException
+	 *             if the estimator could not be read from the stream
+	 */
+
+	public static <T> HyperLogLog<T> readFrom(Hasher<T> hasher, ReadStream stream) throws StreamException {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (stream == null) throw new IllegalArgumentException("null stream");
+		int precision = stream.readByte();
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) throw new StreamException("invalid precision");
+		HyperLogLog<T> hll = withPrecision(hasher, precision);
+		if (stream.readBoolean()) {
+			int count = stream.readInt();
+			if (count < 0) throw new StreamException("invalid entry count");
+			int entry = 0;
+			for (int i = 0; i < count; i++) {
+				entry += readVarInt(stream);
+				hll.update(entry);
+			}
+		} else {
+			Dense dense = hll.dense();
+			long acc = 0L;
+			int bits = 0;
+			for (int r = 0; r < hll.registerCount; r++) {
+				while (bits < 6) {
+					acc |= (stream.readByte() & 0xffL) << bits;
+					bits += 8;
+				}
+				dense.raise(r, (int) acc & 63);
+				acc >>>= 6;
+				bits -= 6;
+			}
+		}
+		return hll;
+	}
+
+	// see Ertl, New cardinality estimation algorithms for HyperLogLog sketches
+
+	private static double sigma(double x) {
+		if (x == 1.0) return Double.POSITIVE_INFINITY;
+		double y = 1.0;
+		double z = x;
+		double prev;
+		do {
+			x *= x;
+			prev = z;
+			z += x * y;
+			y += y;
+		} while (z != prev);
+		return z;
+	}
+
+	private static double tau(double x) {
+		if (x == 0.0 || x == 1.0) return 0.0;
+		double y = 1.0;
+		double z = 1.0 - x;
+		double prev;
+		do {
+			x = Math.sqrt(x);
+			prev = z;
+			y *= 0.5;
+			z -= (1.0 - x) * (1.0 - x) * y;
+		} while (z != prev);
+		return z / 3.0;
+	}
+
+	private static void writeVarInt(WriteStream stream, int value) {
+		while ((value & ~0x7f) != 0) {
+			stream.writeByte((byte) (value & 0x7f | 0x80));
+			value >>>= 7;
+		}
+		stream.writeByte((byte) value);
+	}
+
+	private static int readVarInt(ReadStream stream) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			byte b = stream.readByte();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) return value;
+		}
+		throw new StreamException("invalid varint");
+	}
+
+	// the entry combines the sparse index with the rank of the remaining bits
+	private static int entry(long hash) {
+		int index = (int) (hash >>> (64 - SPARSE_PRECISION));
+		int rank = Long.numberOfLeadingZeros(hash << SPARSE_PRECISION | 1L << (SPARSE_PRECISION - 1)) + 1;
+		return index << 6 | rank;
+	}
+
+	private final Hasher<T> hasher;
+	private final int precision;
+	private final int registerCount;
+	// either a Sparse or a Dense representation
+	private final AtomicReference<Object> state;
+
+	private HyperLogLog(Hasher<T> hasher, int precision) {
+		this.hasher = hasher;
+		this.precision = precision;
+		registerCount = 1 << precision;
+		state = new AtomicReference<>(initialState());
+	}
+
+	/**
+	 * The hasher used to hash observed objects.
+	 *
+	 * @return the estimator's hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The base 2 logarithm of the number of registers.
+	 *
+	 * @return the precision of the estimator
+	 */
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * The approximate relative standard error of the estimator once it is
+	 * no longer sparse.
+	 *
+	 * @return the standard error as a fraction of the estimate
+	 */
+
+	public double getStandardError() {
+		return 1.04 / Math.sqrt(registerCount);
+	}
+
+	/**
+	 * Whether the estimator is still using its sparse representation.
+	 *
+	 * @return true if the estimator is sparse
+	 */
+
+	public boolean isSparse() {
+		return state.get() instanceof Sparse;
+	}
+
+	/**
+	 * Records the observation of an object.
+	 *
+	 * @param value
+	 *            the object observed
+	 * @return true if the estimator was modified
+	 */
+
+	public boolean add(T value) {
+		return update(entry(hasher.longHashValue(value)));
+	}
+
+	/**
+	 * Estimates the number of distinct objects observed.
+	 *
+	 * @return the estimated cardinality
+	 */
+
+	public double getEstimatedCount() {
+		Object s = state.get();
+		if (s instanceof Sparse) {
+			// linear counting at the sparse precision
+			double m = 1 << SPARSE_PRECISION;
+			return -m * Math.log1p(-((Sparse) s).size.get() / m);
+		}
+		Dense dense = (Dense) s;
+		int q = 64 - precision;
+		int[] counts = new int[q + 2];
+		for (int r = 0; r < registerCount; r++) {
+			counts[dense.get(r)]++;
+		}
+		double m = registerCount;
+		double z = m * tau(1.0 - counts[q + 1] / m);
+		for (int k = q; k >= 1; k--) {
+			z = 0.5 * (z + counts[k]);
+		}
+		z += m * sigma(counts[0] / m);
+		return ALPHA_INF * m * m / z;
+	}
+
+	/**
+	 * Whether another estimator has the same precision and hasher as this
+	 * estimator, so that the two may be merged.
+	 *
+	 * @param that
+	 *            another estimator
+	 * @return true if the estimators are compatible
+	 */
+
+	public boolean isCompatible(HyperLogLog<?> that) {
+		if (that == null) throw new IllegalArgumentException("null that");
+		return this.precision == that.precision && this.hasher.equals(that.hasher);
+	}
+
+	/**
+	 * Adds all of the observations recorded by a compatible estimator to this
+	 * estimator. The supplied estimator may be concurrently modified, in which
+	 * case the modifications may or may not be reflected in this estimator.
+	 *
+	 * @param that
+	 *            a compatible estimator
+	 * @throws IllegalArgumentException
+	 *             if the estimator is not compatible
+	 */
+
+	public void mergeWith(HyperLogLog<? extends T> that) {
+		if (!isCompatible(that)) throw new IllegalArgumentException("incompatible estimator");
+		Object s = that.state.get();
+		if (s instanceof Sparse) {
+			AtomicIntegerArray table = ((Sparse) s).table;
+			for (int i = 0; i < table.length(); i++) {
+				int entry = table.get(i);
+				if (entry != 0) update(entry);
+			}
+		} else {
+			AtomicLongArray words = ((Dense) s).words;
+			Dense dense = dense();
+			for (int i = 0; i < words.length(); i++) {
+				long word = words.get(i);
+				if (word != 0L) dense.merge(i, word);
+			}
+		}
+	}
+
+	/**
+	 * Discards all observations.
+	 */
+
+	public void clear() {
+		state.set(initialState());
+	}
+
+	/**
+	 * Writes the state of the estimator to a stream. Sparse estimators are
+	 * written as delta encoded entries, others as packed 6 bit registers. The
+	 * hasher is not written to the stream.
+	 *
+	 * @param stream
+	 *            the stream to which the estimator is written
+	 * @throws StreamException
+	 *             if the estimator could not be written to the stream
+	 * @see #readFrom(Hasher, ReadStream)
+	 */
+
+	public void writeTo(WriteStream stream) throws StreamException {
+		if (stream == null) throw new IllegalArgumentException("null stream");
+		stream.writeByte((byte) precision);
+		Object s = state.get();
+		boolean sparse = s instanceof Sparse;
+		stream.writeBoolean(sparse);
+		if (sparse) {
+			int[] entries = ((Sparse) s).entries();
+			stream.writeInt(entries.length);
+			int previous = 0;
+			for (int entry : entries) {
+				writeVarInt(stream, entry - previous);
+				previous = entry;
+			}
+		} else {
+			Dense dense = (Dense) s;
+			long acc = 0L;
+			int bits = 0;
+			for (int r = 0; r < registerCount; r++) {
+				acc |= (long) dense.get(r) << bits;
+				bits += 6;
+				while (bits >= 8) {
+					stream.writeByte((byte) acc);
+					acc >>>= 8;
+					bits -= 8;
+				}
+			}
+		}
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "HyperLogLog with precision " + precision + " from " + hasher;
+	}
+
+	// private helper methods
+
+	private Object initialState() {
+		int capacity = registerCount >> SPARSE_CAPACITY_SHIFT;
+		// a sparse table must be smaller than the registers to be worthwhile
+		return capacity < MIN_SPARSE_CAPACITY ? new Dense(precision) : new Sparse(capacity);
+	}
+
+	private boolean update(int entry) {
+		Object s = state.get();
+		if (s instanceof Sparse) {
+			Sparse sparse = (Sparse) s;
+			int result = sparse.sealed ? -1 : sparse.insert(entry);
+			// an entry inserted before sealing is sure to be converted
+			if (!sparse.sealed && result >= 0) return result == 1;
+			return dense().update(entry) || result == 1;
+		}
+		return ((Dense) s).update(entry);
+	}
+
+	private Dense dense() {
+		Object s = state.get();
+		return s instanceof Dense ? (Dense) s : densify((Sparse) s);
+	}
+
+	// any thread may convert a sparse representation, only one succeeds
+	private Dense densify(Sparse sparse) {
+		sparse.sealed = true;
+		Dense dense = new Dense(precision);
+		AtomicIntegerArray table = sparse.table;
+		for (int i = 0; i < table.length(); i++) {
+			int entry = table.get(i);
+			if (entry != 0) dense.update(entry);
+		}
+		if (state.compareAndSet(sparse, dense)) return dense;
+		Object s = state.get();
+		// the estimator may have been concurrently cleared
+		return s instanceof Dense ? (Dense) s : dense;
+	}
+
+	// inner classes
+
+	// a lock-free open addressed set of entries keyed by sparse index
+	private static final class Sparse {
+
+		final AtomicIntegerArray table;
+		final AtomicInteger size = new AtomicInteger();
+		final int threshold;
+		volatile boolean sealed = false;
+
+		Sparse(int capacity) {
+			table = new AtomicIntegerArray(capacity);
+			threshold = capacity - (capacity >> 2);
+		}
+
+		// returns 1 if modified, 0 if unmodified, -1 if modified or not but the table is full
+		int insert(int entry) {
+			int index = entry >>> 6;
+			int mask = table.length() - 1;
+			for (int i = 0, slot = index & mask; i <= mask; i++, slot = (slot + 1) & mask) {
+				int current = table.get(slot);
+				while (current == 0) {
+					if (table.compareAndSet(slot, 0, entry)) {
+						return size.incrementAndGet() > threshold ? -1 : 1;
+					}
+					current = table.get(slot);
+				}
+				if (current >>> 6 != index) continue;
+				while ((current & 63) < (entry & 63)) {
+					if (table.compareAndSet(slot, current, entry)) return 1;
+					current = table.get(slot);
+				}
+				return 0;
+			}
+			return -1;
+		}
+
+		int[] entries() {
+			int[] entries = new int[table.length()];
+			int count = 0;
+			for (int i = 0; i < entries.length; i++) {
+				int entry = table.get(i);
+				if (entry != 0) entries[count++] = entry;
+			}
+			entries = Arrays.copyOf(entries, count);
+			Arrays.sort(entries);
+			return entries;
+		}
+
+	}
+
+	// 6 bit registers packed ten to a long
+	private static final class Dense {
+
+		final int precision;
+		final AtomicLongArray words;
+
+		Dense(int precision) {
+			this.precision = precision;
+			words = new AtomicLongArray(((1 << precision) + REGISTERS_PER_WORD - 1) / REGISTERS_PER_WORD);
+		}
+
+		int get(int register) {
+			return (int) (words.get(register / REGISTERS_PER_WORD) >>> (register % REGISTERS_PER_WORD * 6)) & 63;
+		}
+
+		boolean update(int entry) {
+			// recover the register and its rank from the higher precision entry
+			int index = entry >>> 6;
+			int shift = SPARSE_PRECISION - precision;
+			int low = index & ((1 << shift) - 1);
+			int rank = low == 0 ? shift + (entry & 63) : Integer.numberOfLeadingZeros(low) - (32 - shift) + 1;
+			return raise(index >>> shift, rank);
+		}
+
+		boolean raise(int register, int rank) {
+			int w = register / REGISTERS_PER_WORD;
+			int shift = register % REGISTERS_PER_WORD * 6;
+			long word = words.get(w);
+			while ((word >>> shift & 63) < rank) {
+				if (words.compareAndSet(w, word, word & ~(63L << shift) | (long) rank << shift)) return true;
+				word = words.get(w);
+			}
+			return false;
+		}
+
+		void merge(int w, long that) {
+			long word = words.get(w);
+			while (true) {
+				long merged = word;
+				for (int shift = 0; shift < REGISTERS_PER_WORD * 6; shift += 6) {
+					long rank = that >>> shift & 63;
+					if (rank > (merged >>> shift & 63)) merged = merged & ~(63L << shift) | rank << shift;
+				}
+				if (merged == word || words.compareAndSet(w, word, merged)) return;
+				word = words.get(w);
+			}
+		}
+
+	}
+
+}
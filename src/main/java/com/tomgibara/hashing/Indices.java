@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+// maps hash values onto the indices of hash based data structures
+final class Indices {
+
+	// maps a uniformly distributed long onto [0, n) without division (Lemire)
+	static long reduce(long hash, long n) {
+		return Xxh3Hash.multiplyHigh(hash, n);
+	}
+
+	// maps a uniformly distributed int onto [0, n) without division
+	static int reduce(int hash, int n) {
+		return (int) ((hash & 0xffffffffL) * n >>> 32);
+	}
+
+	// spreads a hash value over all 64 bits, since hashers may produce fewer
+	static long mix(long hash) {
+		return Murmur3Long128Hash.fmix(hash);
+	}
+
+	// derives an independent, odd valued, step from a hash value for double hashing
+	static long step(long hash) {
+		return Murmur3Long128Hash.fmix(hash ^ 0x9e3779b97f4a7c15L) | 1L;
+	}
+
+	// assigns a key to one of n buckets, moving only 1/n of keys when n grows (Lamping & Veach)
+	static int jump(long key, int n) {
+		long b = -1L;
+		long j = 0L;
+		while (j < n) {
+			b = j;
+			key = key * 2862933555777941757L + 1L;
+			j = (long) ((b + 1L) * (double) (1L << 31) / (double) ((key >>> 33) + 1L));
+		}
+		return (int) b;
+	}
+
+	private Indices() { }
+
+}
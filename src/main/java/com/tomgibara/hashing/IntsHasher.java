@@ -34,7 +34,7 @@ import java.math.BigInteger;
 
 final class IntsHasher<T> implements Hasher<T> {
 
-	private static int spread(int hashCode) {
+	static int spread(int hashCode) {
 		// Spread bits using variant of single-word Wang/Jenkins hash
 		hashCode += (hashCode <<  15) ^ 0xffffcd7d;
 		hashCode ^= (hashCode >>> 10);
@@ -44,6 +44,11 @@ final class IntsHasher<T> implements Hasher<T> {
 		return hashCode ^ (hashCode >>> 16);
 	}
 
+	// the step between successive values derived from a hash code
+	static int probe(int hashCode) {
+		return hashCode == Integer.MIN_VALUE ? 1 : 1 + Math.abs(hashCode);
+	}
+
 	private final Hasher<T> hasher;
 
 	IntsHasher(Hasher<T> hasher) {
@@ -74,7 +79,7 @@ final class IntsHasher<T> implements Hasher<T> {
 
 		MultiHashCode(HashSize size, int hashCode) {
 			super(size);
-			probe = hashCode == Integer.MIN_VALUE ? 1 : 1 + Math.abs(hashCode);
+			probe = probe(hashCode);
 			h = spread(hashCode);
 		}
 
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+// assigns hash values to buckets with jump consistent hashing
+final class JumpSizedHasher<T> extends SizedHasher<T> {
+
+	private final int buckets;
+
+	JumpSizedHasher(Hashing<T> hashing, int buckets) {
+		super(hashing, HashSize.fromInt(buckets));
+		this.buckets = buckets;
+	}
+
+	@Override
+	public int intHashValue(T value) {
+		return Indices.jump(hashing.longHashValue(value), buckets);
+	}
+
+	@Override
+	public long longHashValue(T value) {
+		return intHashValue(value);
+	}
+
+	@Override
+	int sizedIntValue(HashCode code) {
+		return Indices.jump(code.longValue(), buckets);
+	}
+
+	@Override
+	long sizedLongValue(HashCode code) {
+		return sizedIntValue(code);
+	}
+
+	@Override
+	BigInteger sizedBigValue(HashCode code) {
+		return BigInteger.valueOf(sizedIntValue(code));
+	}
+
+	@Override
+	byte[] sizedBytesValue(HashCode code) {
+		byte[] bytes = AbstractHashCode.intToBytes(sizedIntValue(code));
+		return Arrays.copyOfRange(bytes, 4 - newSize.getBytes(), 4);
+	}
+
+	@Override
+	public String toString() {
+		return hashing + " jump sized to " + newSize;
+	}
+
+}
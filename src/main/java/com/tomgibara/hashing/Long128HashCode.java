@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+
+// a 128 bit hash value held natively as two longs; the value is hi * 2^64 + lo
+// successive calls to longValue() alternate between the lo and hi halves
+final class Long128HashCode extends AbstractHashCode {
+
+	static final HashSize SIZE = HashSize.fromBitLength(128);
+
+	static BigInteger bigFromLongs(long hi, long lo) {
+		return bigFromBytes(bytesFromLongs(hi, lo));
+	}
+
+	static byte[] bytesFromLongs(long hi, long lo) {
+		return new byte[] {
+			(byte) (hi >> 56),
+			(byte) (hi >> 48),
+			(byte) (hi >> 40),
+			(byte) (hi >> 32),
+			(byte) (hi >> 24),
+			(byte) (hi >> 16),
+			(byte) (hi >>  8),
+			(byte) (hi      ),
+			(byte) (lo >> 56),
+			(byte) (lo >> 48),
+			(byte) (lo >> 40),
+			(byte) (lo >> 32),
+			(byte) (lo >> 24),
+			(byte) (lo >> 16),
+			(byte) (lo >>  8),
+			(byte) (lo      )
+		};
+	}
+
+	private final long hi;
+	private final long lo;
+	private boolean high = false;
+
+	Long128HashCode(long hi, long lo) {
+		super(SIZE);
+		this.hi = hi;
+		this.lo = lo;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return true;
+	}
+
+	@Override
+	public int intValue() {
+		return (int) lo;
+	}
+
+	@Override
+	public long longValue() {
+		long value = high ? hi : lo;
+		high = !high;
+		return value;
+	}
+
+	@Override
+	public BigInteger bigValue() {
+		return bigFromLongs(hi, lo);
+	}
+
+	@Override
+	public byte[] bytesValue() {
+		return bytesFromLongs(hi, lo);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (obj instanceof Long128HashCode) {
+			Long128HashCode that = (Long128HashCode) obj;
+			return this.lo == that.lo && this.hi == that.hi;
+		}
+		return super.equals(obj);
+	}
+
+	@Override
+	public String toString() {
+		return bigValue().toString();
+	}
+
+}
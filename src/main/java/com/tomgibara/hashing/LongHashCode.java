@@ -50,7 +50,7 @@ final class LongHashCode extends AbstractHashCode {
 
 	@Override
 	public BigInteger bigValue() {
-		return BigInteger.valueOf(longValue);
+		return bigFromLong(longValue);
 	}
 
 	@Override
@@ -48,7 +48,7 @@ final class LongsHashCode extends AbstractHashCode {
 
 	@Override
 	public BigInteger bigValue() {
-		return HashSize.BIG_ULONG.add(BigInteger.valueOf(longValue()));
+		return bigFromLong(longValue());
 	}
 
 	@Override
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A Maglev lookup table that assigns hashed keys to backends. Each backend
+ * derives a permutation of the table's entries from an offset and a skip
+ * obtained by hashing the backend, and the backends take turns to claim their
+ * next preferred entry that remains unclaimed. The result assigns each backend
+ * an almost equal share of the entries, while changes to the backends alter
+ * few of the entries assigned to the other backends.
+ *
+ * <p>
+ * Lookups are a single read from an <code>int[]</code>. The size of the table
+ * must be a prime, and should be substantially larger than the number of
+ * backends (65537 is a common choice for up to a few hundred backends).
+ * Tables are immutable and safe for concurrent use; changes to the backends
+ * are made by deriving a new table with {@link #rebuild(List)}, which reuses
+ * the permutations of backends that are retained.
+ *
+ * @author Tom Gibara
+ *
+ * @param <B>
+ *            the type of backends
+ * @see RendezvousHash
+ */
+
+public final class MaglevTable<B> {
+
+	/**
+	 * Builds a table that assigns keys to the supplied backends.
+	 *
+	 * @param hasher
+	 *            hashes backends to derive their permutations
+	 * @param backends
+	 *            the distinct backends, no more than the table size
+	 * @param size
+	 *            the number of entries in the table, a prime no greater than
+	 *            2^30
+	 * @param <B>
+	 *            the type of backends
+	 * @return a populated table
+	 */
+
+	public static <B> MaglevTable<B> withBackends(Hasher<? super B> hasher, List<? extends B> backends, HashSize size) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (size == null) throw new IllegalArgumentException("null size");
+		if (!size.isIntSized()) throw new IllegalArgumentException("size not int sized");
+		int m = size.asInt();
+		// larger sizes would overflow positions when populating the table
+		if (m > 1 << 30) throw new IllegalArgumentException("size too large");
+		if (m < 2 || !BigInteger.valueOf(m).isProbablePrime(64)) throw new IllegalArgumentException("size not prime");
+		return new MaglevTable<>(hasher, size, backends, Collections.emptyMap());
+	}
+
+	private final Hasher<? super B> hasher;
+	private final HashSize size;
+	private final List<B> backends;
+	// the offset and skip of each backend, packed into a long
+	private final long[] permutations;
+	private final int[] table;
+
+	private MaglevTable(Hasher<? super B> hasher, HashSize size, List<? extends B> backends, Map<B, Long> previous) {
+		if (backends == null) throw new IllegalArgumentException("null backends");
+		if (backends.isEmpty()) throw new IllegalArgumentException("no backends");
+		int m = size.asInt();
+		int n = backends.size();
+		if (n > m) throw new IllegalArgumentException("more backends than entries");
+		this.hasher = hasher;
+		this.size = size;
+		this.backends = Collections.unmodifiableList(new ArrayList<>(backends));
+		permutations = new long[n];
+		Map<B, Integer> indices = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			B backend = this.backends.get(i);
+			if (indices.put(backend, i) != null) throw new IllegalArgumentException("duplicate backend");
+			Long permutation = previous.get(backend);
+			permutations[i] = permutation == null ? permutation(hasher.longHashValue(backend), m) : permutation;
+		}
+		table = populate(permutations, m);
+	}
+
+	/**
+	 * The hasher used to derive the permutations of backends.
+	 *
+	 * @return the backend hasher
+	 */
+
+	public Hasher<? super B> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The number of entries in the table.
+	 *
+	 * @return the table size
+	 */
+
+	public HashSize getSize() {
+		return size;
+	}
+
+	/**
+	 * The backends to which keys are assigned, in the order supplied.
+	 *
+	 * @return an unmodifiable list of backends
+	 */
+
+	public List<B> getBackends() {
+		return backends;
+	}
+
+	/**
+	 * The backend assigned to a hashed key.
+	 *
+	 * @param keyHash
+	 *            a well distributed hash of a key
+	 * @return the index of the backend in {@link #getBackends()}
+	 */
+
+	public int lookup(long keyHash) {
+		return table[Indices.reduce((int) (keyHash ^ keyHash >>> 32), table.length)];
+	}
+
+	/**
+	 * The backend assigned to a hashed key.
+	 *
+	 * @param keyHash
+	 *            a well distributed hash of a key
+	 * @return the backend
+	 */
+
+	public B select(long keyHash) {
+		return backends.get(lookup(keyHash));
+	}
+
+	/**
+	 * Builds a table of the same size over a different list of backends. The
+	 * permutations of backends common to both tables are reused, and few
+	 * entries assigned to retained backends change.
+	 *
+	 * @param backends
+	 *            the distinct backends of the new table
+	 * @return a populated table
+	 */
+
+	public MaglevTable<B> rebuild(List<? extends B> backends) {
+		Map<B, Long> previous = new HashMap<>();
+		for (int i = 0; i < permutations.length; i++) previous.put(this.backends.get(i), permutations[i]);
+		return new MaglevTable<>(hasher, size, backends, previous);
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "Maglev table of " + table.length + " entries over " + backends.size() + " backends from " + hasher;
+	}
+
+	// private helper methods
+
+	// derives an offset in [0,m) and a skip in [1,m) from a backend hash
+	private static long permutation(long hash, int m) {
+		long offset = Indices.reduce(Indices.mix(hash), m);
+		long skip = Indices.reduce(Indices.step(hash), m - 1) + 1;
+		return offset << 32 | skip;
+	}
+
+	private static int[] populate(long[] permutations, int m) {
+		int n = permutations.length;
+		// the next preferred entry of each backend
+		int[] positions = new int[n];
+		int[] skips = new int[n];
+		for (int i = 0; i < n; i++) {
+			positions[i] = (int) (permutations[i] >>> 32);
+			skips[i] = (int) permutations[i];
+		}
+		int[] table = new int[m];
+		Arrays.fill(table, -1);
+		int filled = 0;
+		while (true) {
+			for (int i = 0; i < n; i++) {
+				int position = positions[i];
+				int skip = skips[i];
+				while (table[position] >= 0) {
+					position += skip;
+					if (position >= m) position -= m;
+				}
+				table[position] = i;
+				position += skip;
+				if (position >= m) position -= m;
+				positions[i] = position;
+				if (++filled == m) return table;
+			}
+		}
+	}
+
+}
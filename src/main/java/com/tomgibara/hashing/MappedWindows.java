@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.tomgibara.streams.WriteStream;
+
+// writes buffers to hashes, and file regions by mapping them into memory one window at a time
+final class MappedWindows {
+
+	// large enough to amortize the cost of mapping, small enough to map on 32 bit VMs
+	static final int WINDOW_SIZE = 1 << 26;
+
+	// releases a mapping, returning false if it must be left to the garbage collector
+	private interface Unmapper {
+
+		boolean unmap(ByteBuffer buffer);
+
+	}
+
+	private static final Unmapper unmapper = unmapper();
+
+	private static Unmapper unmapper() {
+		// Java 9 and later
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field field = unsafeClass.getDeclaredField("theUnsafe");
+			field.setAccessible(true);
+			Object unsafe = field.get(null);
+			return buffer -> {
+				try {
+					invokeCleaner.invoke(unsafe, buffer);
+					return true;
+				} catch (ReflectiveOperationException e) {
+					return false;
+				}
+			};
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			/* fall through */
+		}
+		// Java 8
+		try {
+			Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			return buffer -> {
+				try {
+					Object cleaner = cleanerMethod.invoke(buffer);
+					if (cleaner == null) return false;
+					cleanMethod.invoke(cleaner);
+					return true;
+				} catch (ReflectiveOperationException e) {
+					return false;
+				}
+			};
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			/* fall through */
+		}
+		return buffer -> false;
+	}
+
+	// validates the arguments to Hash.writeBuffer
+	static void checkBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		if (stream == null) throw new IllegalArgumentException("null stream");
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		if (position < 0) throw new IllegalArgumentException("negative position");
+		if (limit < position) throw new IllegalArgumentException("limit less than position");
+		if (limit > buffer.limit()) throw new IllegalArgumentException("limit exceeds buffer limit");
+	}
+
+	static boolean unmap(ByteBuffer buffer) {
+		return unmapper.unmap(buffer);
+	}
+
+	static void write(Hash hash, WriteStream stream, FileChannel channel, long position, long size) throws IOException {
+		write(hash, stream, channel, position, size, WINDOW_SIZE);
+	}
+
+	static void write(Hash hash, WriteStream stream, FileChannel channel, long position, long size, int windowSize) throws IOException {
+		final long limit = position + size;
+		for (long p = position; p < limit; p += windowSize) {
+			int length = (int) Math.min(windowSize, limit - p);
+			MappedByteBuffer window = channel.map(MapMode.READ_ONLY, p, length);
+			try {
+				hash.writeBuffer(stream, window, 0, length);
+			} finally {
+				// the window is not referenced beyond this point
+				unmap(window);
+			}
+		}
+	}
+
+	private MappedWindows() { }
+
+}
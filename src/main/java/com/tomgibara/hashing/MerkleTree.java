@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * <p>
+ * The result of hashing an input with a {@link TreeHash}. In addition to the
+ * root hash, the tree records the hash of every leaf so that ranges of the
+ * input can subsequently be verified independently of one another. A tree
+ * may also be reconstructed from leaf hashes supplied by another party with
+ * {@link TreeHash#fromLeaves(long, java.util.List)}, and authenticated
+ * against a trusted root with {@link #verifyRoot(HashCode)}.
+ *
+ * <p>
+ * Instances are immutable and safe for concurrent use.
+ *
+ * @author Tom Gibara
+ * @see TreeHash
+ */
+
+public final class MerkleTree {
+
+	private final TreeHash treeHash;
+	private final long length;
+	private final byte[][] leaves;
+	private final byte[] root;
+
+	MerkleTree(TreeHash treeHash, long length, byte[][] leaves, byte[] root) {
+		this.treeHash = treeHash;
+		this.length = length;
+		this.leaves = leaves;
+		this.root = root;
+	}
+
+	/**
+	 * The number of bytes that were hashed.
+	 *
+	 * @return the length of the input
+	 */
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * The number of leaves in the tree. An empty input has no leaves.
+	 *
+	 * @return the number of leaves
+	 */
+
+	public int getLeafCount() {
+		return leaves.length;
+	}
+
+	/**
+	 * The hash at the root of the tree.
+	 *
+	 * @return the root hash
+	 */
+
+	public HashCode getRoot() {
+		return new BigHashCode(treeHash.getSize(), AbstractHashCode.bigFromBytes(root));
+	}
+
+	/**
+	 * The hash of a single leaf, as digested with its domain separating
+	 * prefix.
+	 *
+	 * @param index
+	 *            the index of the leaf
+	 * @return the leaf hash
+	 */
+
+	public HashCode getLeaf(int index) {
+		checkIndex(index);
+		return new BigHashCode(treeHash.getSize(), AbstractHashCode.bigFromBytes(leaves[index]));
+	}
+
+	/**
+	 * Verifies that the supplied data matches the input over a range of
+	 * leaves. The remaining bytes of the buffer must span whole leaves
+	 * starting at the specified index; only the last leaf of the tree may be
+	 * shorter than the leaf size. The buffer's position is not changed.
+	 *
+	 * @param index
+	 *            the index of the first leaf in the range
+	 * @param data
+	 *            the data of the leaves
+	 * @return true if and only if the data hashes to the recorded leaves
+	 */
+
+	public boolean verify(int index, ByteBuffer data) {
+		checkIndex(index);
+		if (data == null) throw new IllegalArgumentException("null data");
+		int leafSize = treeHash.getLeafSize();
+		long start = (long) index * leafSize;
+		long end = start + data.remaining();
+		if (end > length) return false;
+		// the range must end on a leaf boundary, or at the end of the input
+		if (end != length && (end - start) % leafSize != 0) return false;
+		if (end == start) return false;
+		MessageDigest digest = treeHash.newDigest();
+		int position = data.position();
+		for (int i = index; (long) i * leafSize < end; i++) {
+			int from = (int) ((long) i * leafSize - start) + position;
+			int to = Math.min(from + leafSize, data.limit());
+			if (!MessageDigest.isEqual(leaves[i], TreeHash.leafDigest(digest, data, from, to))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Verifies that the leaf hashes recorded in this tree combine to produce
+	 * the supplied root. The root of a tree is always computed from its
+	 * leaves, so this authenticates leaf hashes that were obtained from an
+	 * untrusted source and supplied to
+	 * {@link TreeHash#fromLeaves(long, java.util.List)}.
+	 *
+	 * @param root
+	 *            the trusted root hash
+	 * @return true if and only if the leaves produce the supplied root
+	 */
+
+	public boolean verifyRoot(HashCode root) {
+		if (root == null) throw new IllegalArgumentException("null root");
+		return root.size().equals(treeHash.getSize()) && MessageDigest.isEqual(this.root, root.bytesValue());
+	}
+
+	// object methods
+
+	@Override
+	public int hashCode() {
+		return getRoot().hashCode();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof MerkleTree)) return false;
+		MerkleTree that = (MerkleTree) obj;
+		return this.length == that.length && MessageDigest.isEqual(this.root, that.root);
+	}
+
+	@Override
+	public String toString() {
+		return getRoot().toString();
+	}
+
+	// private helper methods
+
+	private void checkIndex(int index) {
+		if (index < 0) throw new IllegalArgumentException("negative index");
+		if (index >= leaves.length) throw new IllegalArgumentException("index too large");
+	}
+
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Computes MinHash signatures of sets, from which the Jaccard similarity of
+ * two sets can be estimated. Signatures are computed with one-permutation
+ * hashing: each element is hashed once, the hash value selecting one of the
+ * signature's bins and the minimum value in each bin being retained. Bins
+ * that receive no elements are filled by optimal densification, borrowing the
+ * value of another bin chosen by a hash of the empty bin's index, so that the
+ * cost of adding an element is constant, regardless of the signature size.
+ *
+ * <p>
+ * Signatures hold 32 bit values, but may be compressed to fewer bits per value
+ * (b-bit minwise hashing) for compact storage; similarity estimates from
+ * compressed signatures are corrected for accidental matches.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of set elements
+ * @see MinHashIndex
+ */
+
+public final class MinHash<T> {
+
+	// the value of a bin that has received no elements
+	private static final long EMPTY = -1L;
+
+	/**
+	 * Creates a MinHash that produces signatures of the specified size.
+	 *
+	 * @param hasher
+	 *            hashes the elements of sets
+	 * @param size
+	 *            the number of values in each signature
+	 * @param <T>
+	 *            the type of set elements
+	 * @return a MinHash
+	 */
+
+	public static <T> MinHash<T> withSize(Hasher<T> hasher, int size) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (size < 1) throw new IllegalArgumentException("non-positive size");
+		return new MinHash<>(hasher, size);
+	}
+
+	private final Hasher<T> hasher;
+	private final int size;
+
+	private MinHash(Hasher<T> hasher, int size) {
+		this.hasher = hasher;
+		this.size = size;
+	}
+
+	/**
+	 * The hasher used to hash set elements.
+	 *
+	 * @return the hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The number of values in each signature.
+	 *
+	 * @return the signature size
+	 */
+
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Creates a builder that accumulates the elements of a set into a
+	 * signature. Builders are not safe for concurrent use.
+	 *
+	 * @return a new builder
+	 */
+
+	public Builder newBuilder() {
+		return new Builder();
+	}
+
+	/**
+	 * Computes the signature of a set of elements. Duplicate elements do not
+	 * affect the signature.
+	 *
+	 * @param elements
+	 *            the elements of the set
+	 * @return the signature of the set
+	 */
+
+	public Signature signature(Iterable<? extends T> elements) {
+		return newBuilder().addAll(elements).build();
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "MinHash of " + size + " values from " + hasher;
+	}
+
+	// inner classes
+
+	/**
+	 * Accumulates set elements into a signature.
+	 */
+
+	public final class Builder {
+
+		// unsigned 32 bit minima, or EMPTY
+		private final long[] mins = new long[size];
+
+		private Builder() {
+			Arrays.fill(mins, EMPTY);
+		}
+
+		/**
+		 * Adds an element to the set.
+		 *
+		 * @param element
+		 *            a set element
+		 * @return the builder
+		 */
+
+		public Builder add(T element) {
+			long h = Indices.mix(hasher.longHashValue(element));
+			// the bin is chosen by the high bits, the value taken from the low bits
+			int bin = (int) Indices.reduce(h, size);
+			long value = h & 0xffffffffL;
+			if (mins[bin] == EMPTY || value < mins[bin]) mins[bin] = value;
+			return this;
+		}
+
+		/**
+		 * Adds multiple elements to the set.
+		 *
+		 * @param elements
+		 *            set elements
+		 * @return the builder
+		 */
+
+		public Builder addAll(Iterable<? extends T> elements) {
+			if (elements == null) throw new IllegalArgumentException("null elements");
+			for (T element : elements) add(element);
+			return this;
+		}
+
+		/**
+		 * Removes all elements from the set.
+		 *
+		 * @return the builder
+		 */
+
+		public Builder clear() {
+			Arrays.fill(mins, EMPTY);
+			return this;
+		}
+
+		/**
+		 * The signature of the elements added to the builder.
+		 *
+		 * @return a signature
+		 */
+
+		public Signature build() {
+			long[] words = new long[(size + 1) >> 1];
+			boolean empty = true;
+			for (long min : mins) {
+				if (min != EMPTY) {
+					empty = false;
+					break;
+				}
+			}
+			for (int i = 0; i < size; i++) {
+				long value = mins[i];
+				if (value == EMPTY) value = empty ? 0xffffffffL : densify(i);
+				words[i >> 1] |= value << ((i & 1) << 5);
+			}
+			return new Signature(size, 32, words);
+		}
+
+		// see Shrivastava, Optimal Densification for Fast and Accurate Minwise Hashing
+		private long densify(int bin) {
+			for (long attempt = 0L; ; attempt++) {
+				int donor = (int) Indices.reduce(Indices.mix((long) bin << 32 | attempt), size);
+				if (mins[donor] != EMPTY) return mins[donor];
+			}
+		}
+
+	}
+
+	/**
+	 * The MinHash signature of a set. Signatures are immutable.
+	 */
+
+	public static final class Signature {
+
+		private final int size;
+		private final int bits;
+		// values are packed into longs, none straddling a long
+		private final long[] words;
+
+		Signature(int size, int bits, long[] words) {
+			this.size = size;
+			this.bits = bits;
+			this.words = words;
+		}
+
+		/**
+		 * The number of values in the signature.
+		 *
+		 * @return the signature size
+		 */
+
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * The number of bits in each value of the signature.
+		 *
+		 * @return 32 for an uncompressed signature, fewer for a compressed
+		 *         signature
+		 */
+
+		public int getBits() {
+			return bits;
+		}
+
+		/**
+		 * A value of the signature.
+		 *
+		 * @param index
+		 *            the index of the value
+		 * @return the signature value, containing as many bits as the
+		 *         signature
+		 */
+
+		public int getValue(int index) {
+			if (index < 0 || index >= size) throw new IllegalArgumentException("invalid index");
+			int perWord = 64 / bits;
+			long mask = (1L << bits) - 1L;
+			return (int) (words[index / perWord] >>> (index % perWord * bits) & mask);
+		}
+
+		/**
+		 * Compresses the signature by retaining only the lowest bits of each
+		 * value.
+		 *
+		 * @param bits
+		 *            the number of bits retained from each value: 1, 2, 4, 8,
+		 *            16 or 32, but no more than the bits of this signature
+		 * @return a compressed signature
+		 */
+
+		public Signature compress(int bits) {
+			if (bits < 1 || bits > this.bits || Integer.bitCount(bits) != 1) throw new IllegalArgumentException("invalid bits");
+			if (bits == this.bits) return this;
+			int perWord = 64 / bits;
+			long[] words = new long[(size + perWord - 1) / perWord];
+			long mask = (1L << bits) - 1L;
+			for (int i = 0; i < size; i++) {
+				words[i / perWord] |= (getValue(i) & mask) << (i % perWord * bits);
+			}
+			return new Signature(size, bits, words);
+		}
+
+		/**
+		 * Estimates the Jaccard similarity of the sets from which this and
+		 * another signature were computed. The signatures must have been
+		 * computed by MinHashes with the same hasher and size, and compressed
+		 * to the same number of bits.
+		 *
+		 * @param that
+		 *            another signature
+		 * @return the estimated similarity, between zero and one
+		 */
+
+		public double estimateSimilarity(Signature that) {
+			if (that == null) throw new IllegalArgumentException("null that");
+			if (this.size != that.size) throw new IllegalArgumentException("mismatched size");
+			if (this.bits != that.bits) throw new IllegalArgumentException("mismatched bits");
+			int matches = 0;
+			for (int i = 0; i < size; i++) {
+				if (this.getValue(i) == that.getValue(i)) matches++;
+			}
+			double p = (double) matches / size;
+			// correct for values that match by chance
+			double c = Math.scalb(1.0, -bits);
+			return Math.max(0.0, (p - c) / (1.0 - c));
+		}
+
+		// object methods
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(words) + 31 * bits;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) return true;
+			if (!(obj instanceof Signature)) return false;
+			Signature that = (Signature) obj;
+			return this.size == that.size && this.bits == that.bits && Arrays.equals(this.words, that.words);
+		}
+
+		@Override
+		public String toString() {
+			return "MinHash signature of " + size + " " + bits + " bit values";
+		}
+
+	}
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import com.tomgibara.hashing.MinHash.Signature;
+
+/**
+ * <p>
+ * A locality sensitive hashing index over MinHash signatures that identifies
+ * candidate pairs of similar sets. Each signature is divided into bands of
+ * consecutive values, and two signatures are candidates if all values agree
+ * in at least one band. The probability that sets of Jaccard similarity s
+ * become candidates is <code>1 - (1 - s^r)^b</code> for b bands of r rows,
+ * an S-shaped curve that rises most steeply near the threshold
+ * <code>(1/b)^(1/r)</code>.
+ *
+ * <p>
+ * Candidates may be dissimilar, and similar pairs may be missed, with
+ * probabilities governed by the choice of bands and rows; candidates should
+ * generally be verified, for example with
+ * {@link Signature#estimateSimilarity(Signature)}.
+ *
+ * <p>
+ * Indices are not safe for concurrent modification.
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of keys that identify the indexed sets
+ * @see MinHash
+ */
+
+public final class MinHashIndex<K> {
+
+	// the number of steps over which candidate probabilities are integrated
+	private static final int STEPS = 200;
+
+	/**
+	 * Creates an index with bands and rows chosen to minimize the combined
+	 * probability of false candidates and missed pairs about a similarity
+	 * threshold.
+	 *
+	 * @param signatureSize
+	 *            the size of the signatures to be indexed
+	 * @param threshold
+	 *            the Jaccard similarity above which pairs should be
+	 *            candidates, strictly between zero and one
+	 * @param <K>
+	 *            the type of keys that identify the indexed sets
+	 * @return an empty index
+	 */
+
+	public static <K> MinHashIndex<K> withThreshold(int signatureSize, double threshold) {
+		if (signatureSize < 1) throw new IllegalArgumentException("non-positive signatureSize");
+		if (!(threshold > 0.0 && threshold < 1.0)) throw new IllegalArgumentException("invalid threshold");
+		int bestRows = 1;
+		double bestError = Double.POSITIVE_INFINITY;
+		for (int rows = 1; rows <= signatureSize; rows++) {
+			int bands = signatureSize / rows;
+			double error = 0.0;
+			for (int i = 0; i < STEPS; i++) {
+				double s = (i + 0.5) / STEPS;
+				double p = probability(s, bands, rows);
+				error += s < threshold ? p : 1.0 - p;
+			}
+			if (error < bestError) {
+				bestError = error;
+				bestRows = rows;
+			}
+		}
+		return new MinHashIndex<>(signatureSize / bestRows, bestRows);
+	}
+
+	/**
+	 * Creates an index with the specified number of bands and rows. The
+	 * signatures indexed must contain at least <code>bands * rows</code>
+	 * values.
+	 *
+	 * @param bands
+	 *            the number of bands
+	 * @param rows
+	 *            the number of signature values in each band
+	 * @param <K>
+	 *            the type of keys that identify the indexed sets
+	 * @return an empty index
+	 */
+
+	public static <K> MinHashIndex<K> withBands(int bands, int rows) {
+		if (bands < 1) throw new IllegalArgumentException("non-positive bands");
+		if (rows < 1) throw new IllegalArgumentException("non-positive rows");
+		if ((long) bands * rows > Integer.MAX_VALUE) throw new IllegalArgumentException("too many rows");
+		return new MinHashIndex<>(bands, rows);
+	}
+
+	private static double probability(double s, int bands, int rows) {
+		return 1.0 - Math.pow(1.0 - Math.pow(s, rows), bands);
+	}
+
+	private final int bands;
+	private final int rows;
+	// the band hashes of each indexed key
+	private final Map<K, long[]> keys = new HashMap<>();
+	// for each band, the keys indexed by band hash
+	private final List<Map<Long, List<K>>> buckets;
+
+	private MinHashIndex(int bands, int rows) {
+		this.bands = bands;
+		this.rows = rows;
+		buckets = new ArrayList<>(bands);
+		for (int i = 0; i < bands; i++) buckets.add(new HashMap<>());
+	}
+
+	/**
+	 * The number of bands into which signatures are divided.
+	 *
+	 * @return the number of bands
+	 */
+
+	public int getBands() {
+		return bands;
+	}
+
+	/**
+	 * The number of signature values in each band.
+	 *
+	 * @return the number of rows
+	 */
+
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * The similarity at which the probability of a pair becoming candidates
+	 * rises most steeply.
+	 *
+	 * @return the approximate threshold of the index
+	 */
+
+	public double getThreshold() {
+		return Math.pow(1.0 / bands, 1.0 / rows);
+	}
+
+	/**
+	 * The probability that two sets of the specified Jaccard similarity are
+	 * reported as candidates.
+	 *
+	 * @param similarity
+	 *            a Jaccard similarity
+	 * @return the probability of the sets being candidates
+	 */
+
+	public double getCandidateProbability(double similarity) {
+		if (!(similarity >= 0.0 && similarity <= 1.0)) throw new IllegalArgumentException("invalid similarity");
+		return probability(similarity, bands, rows);
+	}
+
+	/**
+	 * The number of keys in the index.
+	 *
+	 * @return the number of indexed sets
+	 */
+
+	public int size() {
+		return keys.size();
+	}
+
+	/**
+	 * Indexes the signature of a set, replacing any signature previously
+	 * indexed with the same key.
+	 *
+	 * @param key
+	 *            identifies the set
+	 * @param signature
+	 *            the signature of the set
+	 */
+
+	public void add(K key, Signature signature) {
+		if (key == null) throw new IllegalArgumentException("null key");
+		long[] hashes = bandHashes(signature);
+		remove(key);
+		keys.put(key, hashes);
+		for (int i = 0; i < bands; i++) {
+			buckets.get(i).computeIfAbsent(hashes[i], h -> new ArrayList<>(1)).add(key);
+		}
+	}
+
+	/**
+	 * Removes a key from the index.
+	 *
+	 * @param key
+	 *            identifies a set
+	 * @return true if the key was indexed
+	 */
+
+	public boolean remove(K key) {
+		long[] hashes = keys.remove(key);
+		if (hashes == null) return false;
+		for (int i = 0; i < bands; i++) {
+			Map<Long, List<K>> band = buckets.get(i);
+			List<K> bucket = band.get(hashes[i]);
+			bucket.remove(key);
+			if (bucket.isEmpty()) band.remove(hashes[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * The keys of indexed sets that are candidates for similarity with the
+	 * set of the supplied signature.
+	 *
+	 * @param signature
+	 *            the signature of a set
+	 * @return the keys of candidate sets
+	 */
+
+	public Set<K> getCandidates(Signature signature) {
+		long[] hashes = bandHashes(signature);
+		Set<K> candidates = new HashSet<>();
+		for (int i = 0; i < bands; i++) {
+			List<K> bucket = buckets.get(i).get(hashes[i]);
+			if (bucket != null) candidates.addAll(bucket);
+		}
+		return candidates;
+	}
+
+	/**
+	 * Reports every pair of indexed sets that are candidates for similarity.
+	 * Each pair is reported exactly once, in no particular order.
+	 *
+	 * @param consumer
+	 *            receives the keys of each candidate pair
+	 */
+
+	public void forEachCandidatePair(BiConsumer<? super K, ? super K> consumer) {
+		if (consumer == null) throw new IllegalArgumentException("null consumer");
+		for (int i = 0; i < bands; i++) {
+			for (List<K> bucket : buckets.get(i).values()) {
+				int count = bucket.size();
+				for (int a = 0; a < count; a++) {
+					K keyA = bucket.get(a);
+					long[] hashesA = keys.get(keyA);
+					for (int b = a + 1; b < count; b++) {
+						K keyB = bucket.get(b);
+						// only report the pair in the first band in which it collides
+						if (firstCollision(hashesA, keys.get(keyB)) == i) consumer.accept(keyA, keyB);
+					}
+				}
+			}
+		}
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "MinHash index of " + keys.size() + " sets with " + bands + " bands of " + rows + " rows";
+	}
+
+	// private helper methods
+
+	private long[] bandHashes(Signature signature) {
+		if (signature == null) throw new IllegalArgumentException("null signature");
+		if (signature.getSize() < bands * rows) throw new IllegalArgumentException("signature too small");
+		long[] hashes = new long[bands];
+		for (int i = 0; i < bands; i++) {
+			long h = i;
+			int offset = i * rows;
+			for (int j = 0; j < rows; j++) {
+				h = Indices.mix(h * 31 + (signature.getValue(offset + j) & 0xffffffffL));
+			}
+			hashes[i] = h;
+		}
+		return hashes;
+	}
+
+	private int firstCollision(long[] a, long[] b) {
+		for (int i = 0; i < bands; i++) {
+			if (a[i] == b[i]) return i;
+		}
+		return -1;
+	}
+
+}
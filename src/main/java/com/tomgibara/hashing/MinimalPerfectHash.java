@@ -0,0 +1,421 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * A minimal perfect hash function over a fixed set of objects, mapping each
+ * to a distinct index in the range [0,count). The function is constructed in
+ * the manner of BBHash: objects are hashed into a bit array at each of a
+ * succession of levels, and those that do not collide with any other object
+ * have their bit set, the remainder passing to the next level. The index of
+ * an object is the number of bits set before its bit, over all levels. With
+ * the default gamma of one, the function occupies approximately 2.9 bits per
+ * object, including the samples that accelerate the counting of bits.
+ *
+ * <p>
+ * Objects are identified by their 64 bit hash values; objects with equal hash
+ * values, including duplicates, are assigned the same index and counted once.
+ * Objects outside the set are assigned an arbitrary index, or -1. Levels are
+ * constructed in parallel.
+ *
+ * <p>
+ * A function is held in a compact serialized form that is available via
+ * {@link #asBuffer()} and which may be written to a file. Functions can be
+ * evaluated directly from a buffer containing this form, such as a memory
+ * mapped file, without deserializing it; evaluation does not allocate. The
+ * hasher is not recorded in the serialized form.
+ *
+ * <p>
+ * Functions are safe for concurrent use.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of objects indexed by the function
+ */
+
+public final class MinimalPerfectHash<T> {
+
+	// the serialized form is little-endian, starting with a header:
+	// magic (int), level count (int), object count (long), word count (int), reserved (int)
+	// followed by a record for each level:
+	// word offset (int), word count (int)
+	// followed by the bits of all levels as longs, and a rank sample (int) for every block of words
+	private static final int MAGIC = 0x4648504d;
+	private static final int HEADER_SIZE = 24;
+	private static final int LEVEL_SIZE = 8;
+
+	// the number of words in each block of the rank samples
+	private static final int BLOCK_WORDS = 8;
+	// remaining hashes are deduplicated before this level
+	private static final int DEDUPLICATION_LEVEL = 8;
+	// levels with fewer hashes than this are constructed without forking
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+	// a hard limit that distinct hashes will never reach in practice
+	private static final int MAX_LEVELS = 256;
+
+	private static final double DEFAULT_GAMMA = 1.0;
+
+	/**
+	 * Builds a minimal perfect hash function over a collection of objects
+	 * with a gamma of one.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to be indexed
+	 * @param <T>
+	 *            the type of objects indexed by the function
+	 * @return a minimal perfect hash function over the objects
+	 */
+
+	public static <T> MinimalPerfectHash<T> withKeys(Hasher<T> hasher, Collection<? extends T> values) {
+		return withKeys(hasher, values, DEFAULT_GAMMA);
+	}
+
+	/**
+	 * Builds a minimal perfect hash function over a collection of objects.
+	 * Larger values of gamma produce functions that are faster to build and
+	 * evaluate, at the cost of more bits per object.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to be indexed
+	 * @param gamma
+	 *            the ratio of bits to objects at each level, at least one
+	 * @param <T>
+	 *            the type of objects indexed by the function
+	 * @return a minimal perfect hash function over the objects
+	 */
+
+	public static <T> MinimalPerfectHash<T> withKeys(Hasher<T> hasher, Collection<? extends T> values, double gamma) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		return withKeys(hasher, values.parallelStream(), gamma);
+	}
+
+	/**
+	 * Builds a minimal perfect hash function over a stream of objects with a
+	 * gamma of one.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to be indexed
+	 * @param <T>
+	 *            the type of objects indexed by the function
+	 * @return a minimal perfect hash function over the objects
+	 */
+
+	public static <T> MinimalPerfectHash<T> withKeys(Hasher<T> hasher, Stream<? extends T> values) {
+		return withKeys(hasher, values, DEFAULT_GAMMA);
+	}
+
+	/**
+	 * Builds a minimal perfect hash function over a stream of objects. The
+	 * objects are hashed in parallel if the stream is parallel.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to be indexed
+	 * @param gamma
+	 *            the ratio of bits to objects at each level, at least one
+	 * @param <T>
+	 *            the type of objects indexed by the function
+	 * @return a minimal perfect hash function over the objects
+	 */
+
+	public static <T> MinimalPerfectHash<T> withKeys(Hasher<T> hasher, Stream<? extends T> values, double gamma) {
+		checkHasher(hasher);
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (!(gamma >= 1.0) || gamma == Double.POSITIVE_INFINITY) throw new IllegalArgumentException("invalid gamma");
+		return build(hasher, values.mapToLong(v -> hasher.longHashValue(v)).toArray(), gamma);
+	}
+
+	/**
+	 * Reconstitutes a function from its serialized form. The function reads
+	 * directly from the buffer, which must not be modified while the function
+	 * is in use.
+	 *
+	 * @param hasher
+	 *            the hasher with which the function was built
+	 * @param buffer
+	 *            a buffer containing the serialized function from its
+	 *            position to its limit
+	 * @param <T>
+	 *            the type of objects indexed by the function
+	 * @return a function backed by the buffer
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not contain a valid function
+	 * @see #asBuffer()
+	 */
+
+	public static <T> MinimalPerfectHash<T> fromBuffer(Hasher<T> hasher, ByteBuffer buffer) {
+		checkHasher(hasher);
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		return new MinimalPerfectHash<>(hasher, buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	/**
+	 * Memory maps a file containing a serialized function.
+	 *
+	 * @param hasher
+	 *            the hasher with which the function was built
+	 * @param path
+	 *            the file containing the function
+	 * @param <T>
+	 *            the type of objects indexed by the function
+	 * @return a function backed by the mapped file
+	 * @throws IOException
+	 *             if the file could not be mapped
+	 * @throws IllegalArgumentException
+	 *             if the file does not contain a valid function
+	 */
+
+	public static <T> MinimalPerfectHash<T> mapFile(Hasher<T> hasher, Path path) throws IOException {
+		checkHasher(hasher);
+		if (path == null) throw new IllegalArgumentException("null path");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return fromBuffer(hasher, channel.map(MapMode.READ_ONLY, 0L, channel.size()));
+		}
+	}
+
+	private static <T> MinimalPerfectHash<T> build(Hasher<T> hasher, long[] hashes, double gamma) {
+		List<long[]> levels = new ArrayList<>();
+		while (hashes.length > 0) {
+			if (levels.size() == MAX_LEVELS) throw new IllegalStateException("too many levels");
+			if (levels.size() == DEDUPLICATION_LEVEL) {
+				// equal hashes collide at every level, and are few enough to sort by now
+				hashes = LongStream.of(hashes).sorted().distinct().toArray();
+			}
+			long words = Math.max(1L, (long) Math.ceil(gamma * hashes.length / 64.0));
+			if (words > Integer.MAX_VALUE) throw new IllegalArgumentException("too many values");
+			long[] level = new long[(int) words];
+			hashes = populate(level, levels.size(), hashes);
+			levels.add(level);
+		}
+
+		// lay out the levels and their rank samples
+		long wordCount = levels.stream().mapToLong(level -> level.length).sum();
+		long blockCount = (wordCount + BLOCK_WORDS - 1) / BLOCK_WORDS;
+		long length = HEADER_SIZE + (long) LEVEL_SIZE * levels.size() + wordCount * 8 + blockCount * 4;
+		if (length > Integer.MAX_VALUE) throw new IllegalArgumentException("too many values");
+		ByteBuffer buffer = ByteBuffer.allocate((int) length).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(levels.size()).putLong(0L).putInt((int) wordCount).putInt(0);
+		int offset = 0;
+		for (long[] level : levels) {
+			buffer.putInt(offset).putInt(level.length);
+			offset += level.length;
+		}
+		long count = 0L;
+		int[] ranks = new int[(int) blockCount];
+		int w = 0;
+		for (long[] level : levels) {
+			for (long word : level) {
+				if (w % BLOCK_WORDS == 0) ranks[w / BLOCK_WORDS] = (int) count;
+				buffer.putLong(word);
+				count += Long.bitCount(word);
+				w++;
+			}
+		}
+		for (int rank : ranks) buffer.putInt(rank);
+		buffer.putLong(8, count);
+		buffer.clear();
+		return new MinimalPerfectHash<>(hasher, buffer);
+	}
+
+	// sets the bits of hashes that do not collide, returning those that do
+	private static long[] populate(long[] level, int index, long[] hashes) {
+		long bits = (long) level.length << 6;
+		AtomicLongArray seen = new AtomicLongArray(level.length);
+		AtomicLongArray collided = new AtomicLongArray(level.length);
+		boolean parallel = hashes.length >= PARALLEL_THRESHOLD;
+		LongStream stream = LongStream.of(hashes);
+		(parallel ? stream.parallel() : stream).forEach(hash -> {
+			long position = position(hash, index, bits);
+			int i = (int) (position >>> 6);
+			long mask = 1L << position;
+			if ((seen.getAndAccumulate(i, mask, (a, b) -> a | b) & mask) != 0L) {
+				collided.getAndAccumulate(i, mask, (a, b) -> a | b);
+			}
+		});
+		IntStream words = IntStream.range(0, level.length);
+		(parallel ? words.parallel() : words).forEach(i -> level[i] = seen.get(i) & ~collided.get(i));
+		stream = LongStream.of(hashes);
+		return (parallel ? stream.parallel() : stream).filter(hash -> {
+			long position = position(hash, index, bits);
+			return (collided.get((int) (position >>> 6)) & 1L << position) != 0L;
+		}).toArray();
+	}
+
+	// the position of a hash in a level, independent of its position in other levels
+	private static long position(long hash, int level, long bits) {
+		return Indices.reduce(Indices.mix(hash + (level + 1) * 0x9e3779b97f4a7c15L), bits);
+	}
+
+	private static void checkHasher(Hasher<?> hasher) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (hasher.getSize().getBits() < 64) throw new IllegalArgumentException("hasher produces fewer than 64 bits");
+	}
+
+	private final Hasher<T> hasher;
+	private final ByteBuffer buffer;
+	private final long count;
+	private final int[] wordOffsets;
+	private final long[] levelBits;
+	private final int wordsStart;
+	private final int ranksStart;
+
+	private MinimalPerfectHash(Hasher<T> hasher, ByteBuffer buffer) {
+		this.hasher = hasher;
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IllegalArgumentException("not a perfect hash");
+		int levelCount = buffer.getInt(4);
+		count = buffer.getLong(8);
+		int wordCount = buffer.getInt(16);
+		if (levelCount < 0 || wordCount < 0 || count < 0L) throw new IllegalArgumentException("invalid header");
+		long blockCount = ((long) wordCount + BLOCK_WORDS - 1) / BLOCK_WORDS;
+		long length = HEADER_SIZE + (long) LEVEL_SIZE * levelCount + (long) wordCount * 8 + blockCount * 4;
+		if (buffer.limit() != length) throw new IllegalArgumentException("invalid perfect hash length");
+		wordOffsets = new int[levelCount];
+		levelBits = new long[levelCount];
+		long offset = 0L;
+		for (int l = 0; l < levelCount; l++) {
+			int i = HEADER_SIZE + LEVEL_SIZE * l;
+			wordOffsets[l] = buffer.getInt(i);
+			int words = buffer.getInt(i + 4);
+			if (wordOffsets[l] != offset || words < 1) throw new IllegalArgumentException("invalid level");
+			levelBits[l] = (long) words << 6;
+			offset += words;
+		}
+		if (offset != wordCount) throw new IllegalArgumentException("invalid word count");
+		wordsStart = HEADER_SIZE + LEVEL_SIZE * levelCount;
+		ranksStart = wordsStart + wordCount * 8;
+	}
+
+	/**
+	 * The hasher used to hash objects.
+	 *
+	 * @return the function's hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The number of distinct indices assigned by the function; this is the
+	 * number of objects over which the function was built, less any with
+	 * duplicate hash values.
+	 *
+	 * @return the number of indexed objects
+	 */
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * The number of levels at which objects were placed.
+	 *
+	 * @return the number of levels
+	 */
+
+	public int getLevelCount() {
+		return wordOffsets.length;
+	}
+
+	/**
+	 * The space occupied by the serialized function, per indexed object.
+	 *
+	 * @return the number of bits per object
+	 */
+
+	public double getBitsPerKey() {
+		return count == 0L ? 0.0 : buffer.limit() * 8.0 / count;
+	}
+
+	/**
+	 * The index assigned to an object. Every object over which the function
+	 * was built is assigned a distinct index less than the count. Other
+	 * objects are assigned an arbitrary index in the same range, or -1.
+	 *
+	 * @param value
+	 *            an object
+	 * @return the index of the object, or -1
+	 */
+
+	public long indexOf(T value) {
+		long hash = hasher.longHashValue(value);
+		for (int l = 0; l < wordOffsets.length; l++) {
+			long position = position(hash, l, levelBits[l]);
+			int w = wordOffsets[l] + (int) (position >>> 6);
+			long word = buffer.getLong(wordsStart + (w << 3));
+			long mask = 1L << position;
+			if ((word & mask) != 0L) return rank(w, word & mask - 1L);
+		}
+		return -1L;
+	}
+
+	/**
+	 * The serialized form of the function. The returned buffer is read-only
+	 * and its contents, from position to limit, may be written to a file or
+	 * other channel and subsequently supplied to
+	 * {@link #fromBuffer(Hasher, ByteBuffer)}.
+	 *
+	 * @return a buffer containing the serialized function
+	 */
+
+	public ByteBuffer asBuffer() {
+		return buffer.asReadOnlyBuffer();
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "Minimal perfect hash of " + count + " values over " + wordOffsets.length + " levels from " + hasher;
+	}
+
+	// private helper methods
+
+	// the number of bits set before word w, plus those set in the supplied partial word
+	private long rank(int w, long partial) {
+		int block = w / BLOCK_WORDS;
+		long rank = buffer.getInt(ranksStart + (block << 2)) & 0xffffffffL;
+		for (int i = block * BLOCK_WORDS; i < w; i++) rank += Long.bitCount(buffer.getLong(wordsStart + (i << 3)));
+		return rank + Long.bitCount(partial);
+	}
+
+}
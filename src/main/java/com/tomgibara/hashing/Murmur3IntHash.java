@@ -17,6 +17,8 @@
 package com.tomgibara.hashing;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.tomgibara.streams.WriteStream;
 
@@ -50,6 +52,26 @@ final class Murmur3IntHash implements Hash {
 		return new MurmurStream(seed);
 	}
 
+	@Override
+	public WriteStream resetStream(WriteStream s) {
+		MurmurStream stream = cast(s);
+		stream.reset(seed);
+		return stream;
+	}
+
+	@Override
+	public void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		MappedWindows.checkBuffer(stream, buffer, position, limit);
+		cast(stream).writeBuffer(buffer, position, limit);
+	}
+
+	@Override
+	public Hash seeded(long seed) {
+		// the algorithm only accommodates a 32 bit seed
+		long diffused = SeededHash.diffuse(seed);
+		return new Murmur3IntHash(this.seed ^ (int) (diffused ^ diffused >>> 32));
+	}
+
 	@Override
 	public int intHashValue(WriteStream s) {
 		return cast(s).hash();
@@ -105,11 +127,16 @@ final class Murmur3IntHash implements Hash {
 
 	static class MurmurStream implements WriteStream {
 
+		// holds the (len & 3) pending bytes, little-endian, in its low bits
 		private int k1;
 		private int h1;
 		private int len;
 
 		MurmurStream(int seed) {
+			reset(seed);
+		}
+
+		void reset(int seed) {
 			k1 = 0;
 			h1 = seed;
 			len = 0;
@@ -117,29 +144,133 @@ final class Murmur3IntHash implements Hash {
 
 		@Override
 		public void writeByte(byte v) {
-			k1 = (v << 24) | (k1 >>> 8);
+			k1 |= (v & 0xff) << ((len & 3) << 3);
 
 			// process body
 
 			if (((++len) & 3) == 0) {
-				k1 *= c1;
-				k1 = Integer.rotateLeft(k1, 15);
-				k1 *= c2;
+				mix(k1);
+				k1 = 0;
+			}
+		}
 
-				h1 ^= k1;
-				h1 = Integer.rotateLeft(h1, 13);
-				h1 = h1 * 5 + 0xe6546b64;
+		@Override
+		public void writeBytes(byte[] vs) {
+			writeBytes(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeBytes(byte[] vs, int off, int len) {
+			final int lim = off + len;
+			int i = off;
+			// align to a block boundary
+			while (i < lim && (this.len & 3) != 0) writeByte(vs[i++]);
+			// consume whole blocks
+			final int start = i;
+			final int blim = lim - 3;
+			for (; i < blim; i += 4) {
+				mix(
+					(vs[i    ] & 0xff)       |
+					(vs[i + 1] & 0xff) <<  8 |
+					(vs[i + 2] & 0xff) << 16 |
+					(vs[i + 3]       ) << 24
+				);
+			}
+			this.len += i - start;
+			// buffer the tail
+			while (i < lim) writeByte(vs[i++]);
+		}
+
+		// reads blocks using absolute gets, so the buffer's position is untouched
+		void writeBuffer(ByteBuffer buffer, int position, int limit) {
+			int i = position;
+			// align to a block boundary
+			while (i < limit && (len & 3) != 0) writeByte(buffer.get(i++));
+			// consume whole blocks, in the buffer's byte order if possible
+			final int start = i;
+			final int blim = limit - 3;
+			if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+				for (; i < blim; i += 4) mix(buffer.getInt(i));
+			} else {
+				for (; i < blim; i += 4) mix(Integer.reverseBytes(buffer.getInt(i)));
+			}
+			len += i - start;
+			// buffer the tail
+			while (i < limit) writeByte(buffer.get(i++));
+		}
+
+		@Override
+		public void writeBoolean(boolean v) {
+			writeByte((byte) (v ? -1 : 0));
+		}
+
+		@Override
+		public void writeShort(short v) {
+			write(Short.reverseBytes(v) & 0xffff, 2);
+		}
+
+		@Override
+		public void writeChar(char v) {
+			write(Character.reverseBytes(v), 2);
+		}
+
+		@Override
+		public void writeInt(int v) {
+			write(Integer.reverseBytes(v), 4);
+		}
+
+		@Override
+		public void writeLong(long v) {
+			v = Long.reverseBytes(v);
+			write((int) v, 4);
+			write((int) (v >>> 32), 4);
+		}
+
+		@Override
+		public void writeChars(char[] vs) {
+			writeChars(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeChars(char[] vs, int off, int len) {
+			final int lim = off + len;
+			int i = off;
+			if ((this.len & 1) == 0) {
+				// chars can be paired into whole blocks
+				if ((this.len & 3) == 2 && i < lim) writeChar(vs[i++]);
+				final int start = i;
+				final int blim = lim - 1;
+				for (; i < blim; i += 2) {
+					mix(Character.reverseBytes(vs[i]) | Character.reverseBytes(vs[i + 1]) << 16);
+				}
+				this.len += (i - start) << 1;
 			}
+			while (i < lim) writeChar(vs[i++]);
+		}
+
+		@Override
+		public void writeChars(CharSequence vs) {
+			// avoids copying strings into a char array
+			final int length = vs.length();
+			writeInt(length);
+			int i = 0;
+			if ((this.len & 1) == 0) {
+				if ((this.len & 3) == 2 && i < length) writeChar(vs.charAt(i++));
+				final int start = i;
+				final int blim = length - 1;
+				for (; i < blim; i += 2) {
+					mix(Character.reverseBytes(vs.charAt(i)) | Character.reverseBytes(vs.charAt(i + 1)) << 16);
+				}
+				this.len += (i - start) << 1;
+			}
+			while (i < length) writeChar(vs.charAt(i++));
 		}
 
 		int hash() {
 
 			// process tail
 
-			int rem = len & 3;
-			if (rem != 0) {
-				k1 >>>= (4 - rem) << 3;
-
+			if ((len & 3) != 0) {
 				k1 *= c1;
 				k1 = Integer.rotateLeft(k1, 15);
 				k1 *= c2;
@@ -161,6 +292,32 @@ final class Murmur3IntHash implements Hash {
 			return h1;
 		}
 
+		// writes n (at most 4) bytes, supplied little-endian in the low bits of w
+		private void write(int w, int n) {
+			int r = len & 3;
+			len += n;
+			if (r == 0 && n == 4) {
+				mix(w);
+				return;
+			}
+			long acc = (k1 & 0xffffffffL) | (w & 0xffffffffL) << (r << 3);
+			if (r + n >= 4) {
+				mix((int) acc);
+				acc >>>= 32;
+			}
+			k1 = (int) acc;
+		}
+
+		private void mix(int k) {
+			k *= c1;
+			k = Integer.rotateLeft(k, 15);
+			k *= c2;
+
+			h1 ^= k;
+			h1 = Integer.rotateLeft(h1, 13);
+			h1 = h1 * 5 + 0xe6546b64;
+		}
+
 	}
 
 }
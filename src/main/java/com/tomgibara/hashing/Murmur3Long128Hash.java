@@ -0,0 +1,387 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.tomgibara.streams.WriteStream;
+
+// See http://smhasher.googlecode.com/svn/trunk/MurmurHash3.cpp (MurmurHash3_x64_128)
+// the hash value is h2 * 2^64 + h1, so that the long value is h1
+
+final class Murmur3Long128Hash implements Hash {
+
+	static final long c1 = 0x87c37b91114253d5L;
+	static final long c2 = 0x4cf5ad432745937fL;
+
+	private static Murmur3Long128Hash instance = new Murmur3Long128Hash(0);
+
+	static Murmur3Long128Hash instance() { return instance; }
+
+	static Murmur3Long128Hash instance(int seed) { return seed == 0 ? instance : new Murmur3Long128Hash(seed); }
+
+	static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	private final int seed;
+
+	private Murmur3Long128Hash(int seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public HashSize getSize() {
+		return Long128HashCode.SIZE;
+	}
+
+	@Override
+	public WriteStream newStream() {
+		return new Murmur128Stream(seed);
+	}
+
+	@Override
+	public WriteStream resetStream(WriteStream s) {
+		Murmur128Stream stream = cast(s);
+		stream.reset(seed);
+		return stream;
+	}
+
+	@Override
+	public void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		MappedWindows.checkBuffer(stream, buffer, position, limit);
+		cast(stream).writeBuffer(buffer, position, limit);
+	}
+
+	@Override
+	public Hash seeded(long seed) {
+		// the algorithm only accommodates a 32 bit seed
+		long diffused = SeededHash.diffuse(seed);
+		return new Murmur3Long128Hash(this.seed ^ (int) (diffused ^ diffused >>> 32));
+	}
+
+	@Override
+	public int intHashValue(WriteStream s) {
+		return (int) cast(s).hash();
+	}
+
+	@Override
+	public long longHashValue(WriteStream s) {
+		return cast(s).hash();
+	}
+
+	@Override
+	public BigInteger bigHashValue(WriteStream s) {
+		Murmur128Stream stream = cast(s);
+		long h1 = stream.hash();
+		return Long128HashCode.bigFromLongs(stream.h2, h1);
+	}
+
+	@Override
+	public byte[] bytesHashValue(WriteStream s) {
+		Murmur128Stream stream = cast(s);
+		long h1 = stream.hash();
+		return Long128HashCode.bytesFromLongs(stream.h2, h1);
+	}
+
+	@Override
+	public HashCode hash(WriteStream s) {
+		Murmur128Stream stream = cast(s);
+		long h1 = stream.hash();
+		return new Long128HashCode(stream.h2, h1);
+	}
+
+	// object methods
+
+	@Override
+	public int hashCode() {
+		return 31 * seed + 1;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof Murmur3Long128Hash)) return false;
+		Murmur3Long128Hash that = (Murmur3Long128Hash) obj;
+		return this.seed == that.seed;
+	}
+
+	@Override
+	public String toString() {
+		return "Murmur3 128 bits with seed " + seed;
+	}
+
+	// private helper methods
+
+	private Murmur128Stream cast(WriteStream stream) {
+		return (Murmur128Stream) stream;
+	}
+
+	// inner classes
+
+	static class Murmur128Stream implements WriteStream {
+
+		// hold the (len & 15) pending bytes, little-endian, in their low bits
+		private long k1;
+		private long k2;
+		private long h1;
+		long h2;
+		private int len;
+
+		Murmur128Stream(int seed) {
+			reset(seed);
+		}
+
+		void reset(int seed) {
+			k1 = 0L;
+			k2 = 0L;
+			h1 = seed & 0xffffffffL;
+			h2 = h1;
+			len = 0;
+		}
+
+		@Override
+		public void writeByte(byte v) {
+			int pos = len & 15;
+			if (pos < 8) {
+				k1 |= (v & 0xffL) << (pos << 3);
+			} else {
+				k2 |= (v & 0xffL) << ((pos - 8) << 3);
+			}
+
+			// process body
+
+			if (((++len) & 15) == 0) {
+				mix(k1, k2);
+				k1 = 0L;
+				k2 = 0L;
+			}
+		}
+
+		@Override
+		public void writeBytes(byte[] vs) {
+			writeBytes(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeBytes(byte[] vs, int off, int len) {
+			final int lim = off + len;
+			int i = off;
+			// align to a block boundary
+			while (i < lim && (this.len & 15) != 0) writeByte(vs[i++]);
+			// consume whole blocks
+			final int start = i;
+			final int blim = lim - 15;
+			for (; i < blim; i += 16) {
+				mix(readLong(vs, i), readLong(vs, i + 8));
+			}
+			this.len += i - start;
+			// buffer the tail
+			while (i < lim) writeByte(vs[i++]);
+		}
+
+		// reads blocks using absolute gets, so the buffer's position is untouched
+		void writeBuffer(ByteBuffer buffer, int position, int limit) {
+			int i = position;
+			// align to a block boundary
+			while (i < limit && (len & 15) != 0) writeByte(buffer.get(i++));
+			// consume whole blocks, in the buffer's byte order if possible
+			final int start = i;
+			final int blim = limit - 15;
+			if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+				for (; i < blim; i += 16) mix(buffer.getLong(i), buffer.getLong(i + 8));
+			} else {
+				for (; i < blim; i += 16) mix(Long.reverseBytes(buffer.getLong(i)), Long.reverseBytes(buffer.getLong(i + 8)));
+			}
+			len += i - start;
+			// buffer the tail
+			while (i < limit) writeByte(buffer.get(i++));
+		}
+
+		@Override
+		public void writeBoolean(boolean v) {
+			writeByte((byte) (v ? -1 : 0));
+		}
+
+		@Override
+		public void writeShort(short v) {
+			write(Short.reverseBytes(v) & 0xffffL, 2);
+		}
+
+		@Override
+		public void writeChar(char v) {
+			write(Character.reverseBytes(v), 2);
+		}
+
+		@Override
+		public void writeInt(int v) {
+			write(Integer.reverseBytes(v) & 0xffffffffL, 4);
+		}
+
+		@Override
+		public void writeLong(long v) {
+			write(Long.reverseBytes(v), 8);
+		}
+
+		@Override
+		public void writeChars(char[] vs) {
+			writeChars(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeChars(char[] vs, int off, int len) {
+			final int lim = off + len;
+			int i = off;
+			if ((this.len & 1) == 0) {
+				// chars can be grouped into whole longs
+				while (i < lim && (this.len & 7) != 0) writeChar(vs[i++]);
+				final int blim = lim - 3;
+				for (; i < blim; i += 4) {
+					write(
+						(long) Character.reverseBytes(vs[i    ])       |
+						(long) Character.reverseBytes(vs[i + 1]) << 16 |
+						(long) Character.reverseBytes(vs[i + 2]) << 32 |
+						(long) Character.reverseBytes(vs[i + 3]) << 48,
+						8);
+				}
+			}
+			while (i < lim) writeChar(vs[i++]);
+		}
+
+		@Override
+		public void writeChars(CharSequence vs) {
+			// avoids copying strings into a char array
+			final int length = vs.length();
+			writeInt(length);
+			int i = 0;
+			if ((this.len & 1) == 0) {
+				while (i < length && (this.len & 7) != 0) writeChar(vs.charAt(i++));
+				final int blim = length - 3;
+				for (; i < blim; i += 4) {
+					write(
+						(long) Character.reverseBytes(vs.charAt(i    ))       |
+						(long) Character.reverseBytes(vs.charAt(i + 1)) << 16 |
+						(long) Character.reverseBytes(vs.charAt(i + 2)) << 32 |
+						(long) Character.reverseBytes(vs.charAt(i + 3)) << 48,
+						8);
+				}
+			}
+			while (i < length) writeChar(vs.charAt(i++));
+		}
+
+		// returns h1, leaving h2 available
+		long hash() {
+
+			// process tail
+
+			int rem = len & 15;
+			if (rem > 8) {
+				k2 *= c2;
+				k2 = Long.rotateLeft(k2, 33);
+				k2 *= c1;
+				h2 ^= k2;
+			}
+			if (rem > 0) {
+				k1 *= c1;
+				k1 = Long.rotateLeft(k1, 31);
+				k1 *= c2;
+				h1 ^= k1;
+			}
+
+			// finalize
+
+			h1 ^= len;
+			h2 ^= len;
+
+			h1 += h2;
+			h2 += h1;
+
+			h1 = fmix(h1);
+			h2 = fmix(h2);
+
+			h1 += h2;
+			h2 += h1;
+
+			// return
+
+			return h1;
+		}
+
+		// writes n (at most 8) bytes, supplied little-endian in the low bits of w
+		private void write(long w, int n) {
+			int pos = len & 15;
+			len += n;
+			if (pos < 8) {
+				int shift = pos << 3;
+				k1 |= w << shift;
+				// spill into the second half
+				if (pos + n > 8) k2 = w >>> (64 - shift);
+			} else {
+				int shift = (pos - 8) << 3;
+				k2 |= w << shift;
+				int end = pos + n;
+				if (end >= 16) {
+					mix(k1, k2);
+					// spill into the next block
+					k1 = end > 16 ? w >>> (64 - shift) : 0L;
+					k2 = 0L;
+				}
+			}
+		}
+
+		private void mix(long k1, long k2) {
+			k1 *= c1;
+			k1 = Long.rotateLeft(k1, 31);
+			k1 *= c2;
+			h1 ^= k1;
+
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			k2 *= c2;
+			k2 = Long.rotateLeft(k2, 33);
+			k2 *= c1;
+			h2 ^= k2;
+
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+		}
+
+		private static long readLong(byte[] vs, int i) {
+			return
+				(vs[i    ] & 0xffL)       |
+				(vs[i + 1] & 0xffL) <<  8 |
+				(vs[i + 2] & 0xffL) << 16 |
+				(vs[i + 3] & 0xffL) << 24 |
+				(vs[i + 4] & 0xffL) << 32 |
+				(vs[i + 5] & 0xffL) << 40 |
+				(vs[i + 6] & 0xffL) << 48 |
+				(vs[i + 7] & 0xffL) << 56 ;
+		}
+
+	}
+
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * Selects nodes for keys using weighted rendezvous (highest random weight)
+ * hashing. Every node is scored against a key, and the nodes with the best
+ * scores are selected. Each node receives a share of keys proportional to
+ * its weight, and removing a node reassigns only the keys that selected it;
+ * unlike jump consistent hashing, any node may be removed.
+ *
+ * <p>
+ * The hash of each node is computed once, when the selector is created, and
+ * combined with the hash of a key by a single 64 bit mix, so a selection
+ * requires only one invocation of the key hasher. A score is derived from the
+ * combined hash as <code>-ln(u)/w</code>, where u is uniform over (0,1] and
+ * w is the node's weight; the lowest score wins. Since <code>1-u</code> is a
+ * lower bound for <code>-ln(u)</code>, the logarithm is only evaluated for
+ * nodes that might improve on the current selection, and never if all
+ * weights are equal.
+ *
+ * <p>
+ * Selectors are immutable and safe for concurrent use.
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of keys
+ * @param <N>
+ *            the type of nodes
+ * @see Hasher#jumpSized(int)
+ */
+
+public final class RendezvousHash<K, N> {
+
+	// the largest of the 53 bits from which scores are computed
+	private static final long MAX_BITS = (1L << 53) - 1L;
+
+	/**
+	 * Creates a selector over nodes of equal weight.
+	 *
+	 * @param hasher
+	 *            hashes keys
+	 * @param nodeHasher
+	 *            hashes nodes
+	 * @param nodes
+	 *            the distinct nodes from which selections are made
+	 * @param <K>
+	 *            the type of keys
+	 * @param <N>
+	 *            the type of nodes
+	 * @return a selector
+	 */
+
+	public static <K, N> RendezvousHash<K, N> withNodes(Hasher<K> hasher, Hasher<? super N> nodeHasher, Collection<? extends N> nodes) {
+		if (nodes == null) throw new IllegalArgumentException("null nodes");
+		Map<N, Double> weights = new LinkedHashMap<>();
+		for (N node : nodes) weights.put(node, 1.0);
+		return withWeightedNodes(hasher, nodeHasher, weights);
+	}
+
+	/**
+	 * Creates a selector over weighted nodes.
+	 *
+	 * @param hasher
+	 *            hashes keys
+	 * @param nodeHasher
+	 *            hashes nodes
+	 * @param weights
+	 *            the positive weight of each node from which selections are
+	 *            made
+	 * @param <K>
+	 *            the type of keys
+	 * @param <N>
+	 *            the type of nodes
+	 * @return a selector
+	 */
+
+	public static <K, N> RendezvousHash<K, N> withWeightedNodes(Hasher<K> hasher, Hasher<? super N> nodeHasher, Map<? extends N, ? extends Number> weights) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (nodeHasher == null) throw new IllegalArgumentException("null nodeHasher");
+		if (weights == null) throw new IllegalArgumentException("null weights");
+		if (weights.isEmpty()) throw new IllegalArgumentException("no nodes");
+		int count = weights.size();
+		Object[] nodes = new Object[count];
+		long[] hashes = new long[count];
+		double[] weightArr = new double[count];
+		int i = 0;
+		for (Map.Entry<? extends N, ? extends Number> entry : weights.entrySet()) {
+			N node = entry.getKey();
+			Number weight = entry.getValue();
+			if (weight == null) throw new IllegalArgumentException("null weight");
+			double w = weight.doubleValue();
+			if (!(w > 0.0) || w == Double.POSITIVE_INFINITY) throw new IllegalArgumentException("invalid weight");
+			nodes[i] = node;
+			hashes[i] = Indices.mix(nodeHasher.longHashValue(node));
+			weightArr[i] = w;
+			i++;
+		}
+		return new RendezvousHash<>(hasher, nodeHasher, nodes, hashes, weightArr);
+	}
+
+	private final Hasher<K> hasher;
+	private final Hasher<? super N> nodeHasher;
+	private final Object[] nodes;
+	// mixed node hashes
+	private final long[] hashes;
+	private final double[] weights;
+	private final double[] inverseWeights;
+	// the least weight, and the ratio of the least weight to each weight in 31 bit fixed point
+	private final double minWeight;
+	private final long[] ratios;
+	// true if every node has the same weight
+	private final boolean uniform;
+
+	private RendezvousHash(Hasher<K> hasher, Hasher<? super N> nodeHasher, Object[] nodes, long[] hashes, double[] weights) {
+		this.hasher = hasher;
+		this.nodeHasher = nodeHasher;
+		this.nodes = nodes;
+		this.hashes = hashes;
+		this.weights = weights;
+		inverseWeights = new double[weights.length];
+		boolean uniform = true;
+		for (int i = 0; i < weights.length; i++) {
+			uniform = uniform && weights[i] == weights[0];
+			inverseWeights[i] = 1.0 / weights[i];
+		}
+		minWeight = Arrays.stream(weights).min().getAsDouble();
+		ratios = new long[weights.length];
+		for (int i = 0; i < weights.length; i++) ratios[i] = (long) (minWeight / weights[i] * 0x1.0p31);
+		this.uniform = uniform;
+	}
+
+	/**
+	 * The hasher used to hash keys.
+	 *
+	 * @return the key hasher
+	 */
+
+	public Hasher<K> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * The hasher used to hash nodes.
+	 *
+	 * @return the node hasher
+	 */
+
+	public Hasher<? super N> getNodeHasher() {
+		return nodeHasher;
+	}
+
+	/**
+	 * The nodes from which selections are made, with their weights.
+	 *
+	 * @return an unmodifiable map from nodes to weights, in the order
+	 *         supplied
+	 */
+
+	public Map<N, Double> getWeights() {
+		Map<N, Double> map = new LinkedHashMap<>();
+		for (int i = 0; i < nodes.length; i++) map.put(node(i), weights[i]);
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Derives a selector that additionally selects from the specified node,
+	 * or that changes its weight if the node is already present.
+	 *
+	 * @param node
+	 *            a node
+	 * @param weight
+	 *            the positive weight of the node
+	 * @return a selector including the node
+	 */
+
+	public RendezvousHash<K, N> withNode(N node, double weight) {
+		Map<N, Double> map = new LinkedHashMap<>(getWeights());
+		map.put(node, weight);
+		return withWeightedNodes(hasher, nodeHasher, map);
+	}
+
+	/**
+	 * Derives a selector that no longer selects the specified node. Only keys
+	 * that previously selected the node will select different nodes.
+	 *
+	 * @param node
+	 *            a node
+	 * @return a selector excluding the node
+	 */
+
+	public RendezvousHash<K, N> withoutNode(N node) {
+		Map<N, Double> map = new LinkedHashMap<>(getWeights());
+		if (map.remove(node) == null) return this;
+		return withWeightedNodes(hasher, nodeHasher, map);
+	}
+
+	/**
+	 * Selects the node for a key.
+	 *
+	 * @param key
+	 *            a key
+	 * @return the node with the best score for the key
+	 */
+
+	public N select(K key) {
+		long h = hasher.longHashValue(key);
+		int best = 0;
+		if (uniform) {
+			// equivalent to comparing scores, without floating point
+			long bestBits = Indices.mix(h ^ hashes[0]) >>> 11;
+			for (int i = 1; i < hashes.length; i++) {
+				long bits = Indices.mix(h ^ hashes[i]) >>> 11;
+				if (bits > bestBits) {
+					best = i;
+					bestBits = bits;
+				}
+			}
+		} else {
+			double bestScore = Double.POSITIVE_INFINITY;
+			long limit = Long.MAX_VALUE;
+			for (int i = 0; i < hashes.length; i++) {
+				long bits = Indices.mix(h ^ hashes[i]) >>> 11;
+				if (bound(bits, i) > limit) continue;
+				double score = score(bits, i);
+				if (score >= bestScore) continue;
+				best = i;
+				bestScore = score;
+				limit = limit(bestScore);
+			}
+		}
+		return node(best);
+	}
+
+	/**
+	 * Selects multiple distinct nodes for a key. The first node is that
+	 * returned by {@link #select(Object)}, and each selection for a count is
+	 * a prefix of the selection for any greater count.
+	 *
+	 * @param key
+	 *            a key
+	 * @param count
+	 *            the number of nodes to select, no more than the number of
+	 *            nodes
+	 * @return the selected nodes, in order of preference
+	 */
+
+	public List<N> select(K key, int count) {
+		if (count < 0) throw new IllegalArgumentException("negative count");
+		if (count > nodes.length) throw new IllegalArgumentException("count exceeds nodes");
+		long h = hasher.longHashValue(key);
+		int[] best = new int[count];
+		double[] bestScores = new double[count];
+		int size = 0;
+		long limit = Long.MAX_VALUE;
+		for (int i = 0; i < hashes.length && count > 0; i++) {
+			long bits = Indices.mix(h ^ hashes[i]) >>> 11;
+			if (bound(bits, i) > limit) continue;
+			double score = score(bits, i);
+			if (size == count && score >= bestScores[count - 1]) continue;
+			// insert into the ordered selection
+			int j = size < count ? size++ : count - 1;
+			for (; j > 0 && bestScores[j - 1] > score; j--) {
+				best[j] = best[j - 1];
+				bestScores[j] = bestScores[j - 1];
+			}
+			best[j] = i;
+			bestScores[j] = score;
+			if (size == count) limit = limit(bestScores[count - 1]);
+		}
+		List<N> list = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) list.add(node(best[i]));
+		return list;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "Rendezvous hash over " + nodes.length + " nodes from " + hasher;
+	}
+
+	// private helper methods
+
+	// the score of a node, lower being better
+	private double score(long bits, int index) {
+		// u = (bits + 1) / 2^53 is uniform over (0,1]; scaled by the weight to remain comparable with limit()
+		if (uniform) return (MAX_BITS - bits) * 0x1.0p-53 * inverseWeights[index];
+		return -Math.log((bits + 1L) * 0x1.0p-53) * inverseWeights[index];
+	}
+
+	// a lower bound for the score, (1 - u) / w, scaled by minWeight * 2^62 and computed without floating point
+	private long bound(long bits, int index) {
+		return ((MAX_BITS - bits) >>> 22) * ratios[index];
+	}
+
+	// nodes with bounds beyond this limit cannot improve on the score
+	private long limit(double score) {
+		double limit = score * minWeight * 0x1.0p62;
+		return limit >= 0x1.0p62 ? Long.MAX_VALUE : (long) limit + 1L;
+	}
+
+	@SuppressWarnings("unchecked")
+	private N node(int index) {
+		return (N) nodes[index];
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import com.tomgibara.streams.WriteStream;
+
+// seeds a hash that cannot be seeded natively by prefixing its streams with the seed
+final class SeededHash implements Hash {
+
+	// spreads a seed over 64 bits, such that a zero seed still perturbs a hash
+	static long diffuse(long seed) {
+		return Murmur3Long128Hash.fmix(seed + 0x9e3779b97f4a7c15L);
+	}
+
+	private final Hash hash;
+	private final long seed;
+
+	SeededHash(Hash hash, long seed) {
+		this.hash = hash;
+		this.seed = seed;
+	}
+
+	@Override
+	public HashSize getSize() {
+		return hash.getSize();
+	}
+
+	@Override
+	public int getQuantity() {
+		return hash.getQuantity();
+	}
+
+	@Override
+	public WriteStream newStream() {
+		WriteStream stream = hash.newStream();
+		stream.writeLong(seed);
+		return stream;
+	}
+
+	@Override
+	public WriteStream resetStream(WriteStream stream) {
+		stream = hash.resetStream(stream);
+		stream.writeLong(seed);
+		return stream;
+	}
+
+	@Override
+	public void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		hash.writeBuffer(stream, buffer, position, limit);
+	}
+
+	@Override
+	public HashCode hash(WriteStream stream) {
+		return hash.hash(stream);
+	}
+
+	@Override
+	public byte[] bytesHashValue(WriteStream stream) {
+		return hash.bytesHashValue(stream);
+	}
+
+	@Override
+	public BigInteger bigHashValue(WriteStream stream) {
+		return hash.bigHashValue(stream);
+	}
+
+	@Override
+	public long longHashValue(WriteStream stream) {
+		return hash.longHashValue(stream);
+	}
+
+	@Override
+	public int intHashValue(WriteStream stream) {
+		return hash.intHashValue(stream);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash.hashCode() + Long.hashCode(seed);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof SeededHash)) return false;
+		SeededHash that = (SeededHash) obj;
+		return this.seed == that.seed && this.hash.equals(that.hash);
+	}
+
+	@Override
+	public String toString() {
+		return hash + " seeded by " + seed;
+	}
+
+}
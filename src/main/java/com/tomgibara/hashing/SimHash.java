@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <p>
+ * Computes 64 bit SimHash fingerprints of weighted features. Each feature is
+ * hashed to 64 bits, and each bit of the fingerprint is set if the total
+ * weight of the features having that bit set exceeds the total weight of
+ * those that do not. Similar collections of features produce fingerprints
+ * that differ in few bits, so near duplicates can be identified by the
+ * Hamming distance between their fingerprints.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of features
+ * @see SimHashIndex
+ */
+
+public final class SimHash<T> {
+
+	/**
+	 * Creates a SimHash that hashes features with the supplied hasher.
+	 *
+	 * @param hasher
+	 *            a hasher producing at least 64 bits
+	 * @param <T>
+	 *            the type of features
+	 * @return a SimHash
+	 */
+
+	public static <T> SimHash<T> withHasher(Hasher<T> hasher) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (hasher.getSize().getBits() < 64) throw new IllegalArgumentException("hasher produces fewer than 64 bits");
+		return new SimHash<>(hasher);
+	}
+
+	/**
+	 * The number of bits in which two fingerprints differ.
+	 *
+	 * @param a
+	 *            a fingerprint
+	 * @param b
+	 *            another fingerprint
+	 * @return the Hamming distance between the fingerprints
+	 */
+
+	public static int distance(long a, long b) {
+		return Long.bitCount(a ^ b);
+	}
+
+	private final Hasher<T> hasher;
+
+	private SimHash(Hasher<T> hasher) {
+		this.hasher = hasher;
+	}
+
+	/**
+	 * The hasher used to hash features.
+	 *
+	 * @return the hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * Creates a builder that accumulates weighted features into a
+	 * fingerprint. Builders are not safe for concurrent use.
+	 *
+	 * @return a new builder
+	 */
+
+	public Builder newBuilder() {
+		return new Builder();
+	}
+
+	/**
+	 * Computes the fingerprint of features that each have a weight of one.
+	 * Repeated features contribute repeatedly.
+	 *
+	 * @param features
+	 *            the features
+	 * @return a fingerprint
+	 */
+
+	public long fingerprint(Iterable<? extends T> features) {
+		if (features == null) throw new IllegalArgumentException("null features");
+		Builder builder = new Builder();
+		for (T feature : features) builder.add(feature, 1.0);
+		return builder.build();
+	}
+
+	/**
+	 * Computes the fingerprint of weighted features.
+	 *
+	 * @param weights
+	 *            the weight of each feature
+	 * @return a fingerprint
+	 */
+
+	public long fingerprint(Map<? extends T, ? extends Number> weights) {
+		if (weights == null) throw new IllegalArgumentException("null weights");
+		Builder builder = new Builder();
+		weights.forEach((feature, weight) -> builder.add(feature, weight.doubleValue()));
+		return builder.build();
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "SimHash from " + hasher;
+	}
+
+	// inner classes
+
+	/**
+	 * Accumulates weighted features into a fingerprint.
+	 */
+
+	public final class Builder {
+
+		// the net weight in favour of each bit being set
+		private final double[] totals = new double[64];
+
+		private Builder() { }
+
+		/**
+		 * Adds a feature with a weight of one.
+		 *
+		 * @param feature
+		 *            a feature
+		 * @return the builder
+		 */
+
+		public Builder add(T feature) {
+			return add(feature, 1.0);
+		}
+
+		/**
+		 * Adds a weighted feature.
+		 *
+		 * @param feature
+		 *            a feature
+		 * @param weight
+		 *            the finite weight of the feature
+		 * @return the builder
+		 */
+
+		public Builder add(T feature, double weight) {
+			if (!Double.isFinite(weight)) throw new IllegalArgumentException("non-finite weight");
+			long h = hasher.longHashValue(feature);
+			for (int i = 0; i < 64; i++) {
+				totals[i] += (h >>> i & 1L) == 0L ? -weight : weight;
+			}
+			return this;
+		}
+
+		/**
+		 * Removes all features from the builder.
+		 *
+		 * @return the builder
+		 */
+
+		public Builder clear() {
+			Arrays.fill(totals, 0.0);
+			return this;
+		}
+
+		/**
+		 * The fingerprint of the features added to the builder.
+		 *
+		 * @return a fingerprint
+		 */
+
+		public long build() {
+			long fingerprint = 0L;
+			for (int i = 0; i < 64; i++) {
+				if (totals[i] > 0.0) fingerprint |= 1L << i;
+			}
+			return fingerprint;
+		}
+
+	}
+
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+/**
+ * <p>
+ * An immutable index of 64 bit fingerprints that finds every fingerprint
+ * within a small Hamming distance of a query, without scanning the whole
+ * index.
+ *
+ * <p>
+ * The index follows Manku, Jain and Das Sarma: fingerprints are split into B
+ * blocks, and a table is kept for every choice of B - k blocks, where k is
+ * the maximum distance searched. Any fingerprint within distance k of a query
+ * must agree exactly with it on at least one such choice of blocks, so each
+ * table stores its fingerprints permuted to bring the chosen blocks to the
+ * top and sorted, and a query need only examine the range of each table that
+ * shares its prefix. The number of blocks is chosen so that the shortest
+ * prefix has at least as many bits as are needed to distinguish the
+ * fingerprints, which keeps the expected number of fingerprints examined per
+ * table small; the price is one sorted <code>long[]</code> per table.
+ *
+ * <p>
+ * Indices are safe for concurrent queries.
+ *
+ * @author Tom Gibara
+ *
+ * @see SimHash
+ */
+
+public final class SimHashIndex {
+
+	// the largest distance that may be searched
+	private static final int MAX_DISTANCE = 7;
+	// limits the memory consumed by the index
+	private static final int MAX_TABLES = 64;
+	// below this, tables are sorted without forking
+	private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	/**
+	 * Creates an index of fingerprints. Duplicate fingerprints are indexed
+	 * once. The index is constructed in parallel.
+	 *
+	 * @param maxDistance
+	 *            the largest Hamming distance that will be searched, between
+	 *            zero and seven
+	 * @param fingerprints
+	 *            the fingerprints to index
+	 * @return an index of the fingerprints
+	 */
+
+	public static SimHashIndex withDistance(int maxDistance, long[] fingerprints) {
+		if (maxDistance < 0) throw new IllegalArgumentException("negative maxDistance");
+		if (maxDistance > MAX_DISTANCE) throw new IllegalArgumentException("maxDistance too large");
+		if (fingerprints == null) throw new IllegalArgumentException("null fingerprints");
+		long[] values = fingerprints.clone();
+		sort(values);
+		int count = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (i == 0 || values[i] != values[i - 1]) values[count++] = values[i];
+		}
+		values = Arrays.copyOf(values, count);
+		return new SimHashIndex(maxDistance, blockCount(maxDistance, count), values);
+	}
+
+	/**
+	 * Creates an index of fingerprints. Duplicate fingerprints are indexed
+	 * once. The index is constructed in parallel.
+	 *
+	 * @param maxDistance
+	 *            the largest Hamming distance that will be searched, between
+	 *            zero and seven
+	 * @param fingerprints
+	 *            the fingerprints to index
+	 * @return an index of the fingerprints
+	 */
+
+	public static SimHashIndex withDistance(int maxDistance, LongStream fingerprints) {
+		if (fingerprints == null) throw new IllegalArgumentException("null fingerprints");
+		return withDistance(maxDistance, fingerprints.toArray());
+	}
+
+	// the fewest blocks giving prefixes long enough to distinguish the fingerprints
+	private static int blockCount(int maxDistance, int count) {
+		int required = 64 - Long.numberOfLeadingZeros(count);
+		int blocks = maxDistance + 1;
+		while (minPrefixBits(blocks, maxDistance) < required && combinations(blocks + 1, maxDistance) <= MAX_TABLES) {
+			blocks++;
+		}
+		return blocks;
+	}
+
+	private static int minPrefixBits(int blocks, int maxDistance) {
+		// the total length of the shortest blocks that may form a prefix
+		int[] lengths = new int[blocks];
+		for (int i = 0; i < blocks; i++) lengths[i] = blockStart(i + 1, blocks) - blockStart(i, blocks);
+		Arrays.sort(lengths);
+		int bits = 0;
+		for (int i = 0; i < blocks - maxDistance; i++) bits += lengths[i];
+		return bits;
+	}
+
+	private static int blockStart(int block, int blocks) {
+		return block * 64 / blocks;
+	}
+
+	private static int combinations(int n, int k) {
+		long c = 1L;
+		for (int i = 0; i < k; i++) c = c * (n - i) / (i + 1);
+		return (int) c;
+	}
+
+	private static long mask(int bits) {
+		return bits == 64 ? -1L : (1L << bits) - 1L;
+	}
+
+	private static void sort(long[] values) {
+		if (values.length < PARALLEL_THRESHOLD) {
+			Arrays.sort(values);
+		} else {
+			Arrays.parallelSort(values);
+		}
+	}
+
+	private final int maxDistance;
+	private final int blockCount;
+	// distinct fingerprints in signed order
+	private final long[] fingerprints;
+	private final Table[] tables;
+
+	private SimHashIndex(int maxDistance, int blockCount, long[] fingerprints) {
+		this.maxDistance = maxDistance;
+		this.blockCount = blockCount;
+		this.fingerprints = fingerprints;
+		int prefixBlocks = blockCount - maxDistance;
+		// every subset of prefixBlocks blocks, as a bitmask
+		int[] choices = IntStream.range(0, 1 << blockCount).filter(c -> Integer.bitCount(c) == prefixBlocks).toArray();
+		tables = new Table[choices.length];
+		IntStream.range(0, choices.length).parallel().forEach(t -> tables[t] = new Table(choices[t]));
+	}
+
+	/**
+	 * The largest Hamming distance that may be searched.
+	 *
+	 * @return the maximum distance
+	 */
+
+	public int getMaxDistance() {
+		return maxDistance;
+	}
+
+	/**
+	 * The number of blocks into which the index splits fingerprints.
+	 *
+	 * @return the number of blocks
+	 */
+
+	public int getBlockCount() {
+		return blockCount;
+	}
+
+	/**
+	 * The number of permuted tables maintained by the index. Each table holds
+	 * one long for every indexed fingerprint.
+	 *
+	 * @return the number of tables
+	 */
+
+	public int getTableCount() {
+		return tables.length;
+	}
+
+	/**
+	 * The number of distinct fingerprints indexed.
+	 *
+	 * @return the number of fingerprints
+	 */
+
+	public int size() {
+		return fingerprints.length;
+	}
+
+	/**
+	 * Whether the fingerprint is indexed.
+	 *
+	 * @param fingerprint
+	 *            a fingerprint
+	 * @return true if the fingerprint was indexed
+	 */
+
+	public boolean contains(long fingerprint) {
+		return Arrays.binarySearch(fingerprints, fingerprint) >= 0;
+	}
+
+	/**
+	 * Finds the indexed fingerprints within the maximum distance of the
+	 * supplied fingerprint.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint searched for
+	 * @return the matching fingerprints, in ascending signed order
+	 * @see #getMaxDistance()
+	 */
+
+	public long[] search(long fingerprint) {
+		return search(fingerprint, maxDistance);
+	}
+
+	/**
+	 * Finds the indexed fingerprints within the specified distance of the
+	 * supplied fingerprint.
+	 *
+	 * @param fingerprint
+	 *            the fingerprint searched for
+	 * @param distance
+	 *            the greatest Hamming distance of a match, no more than the
+	 *            maximum distance of the index
+	 * @return the matching fingerprints, in ascending signed order
+	 */
+
+	public long[] search(long fingerprint, int distance) {
+		if (distance < 0) throw new IllegalArgumentException("negative distance");
+		if (distance > maxDistance) throw new IllegalArgumentException("distance exceeds maxDistance");
+		if (distance == 0) return contains(fingerprint) ? new long[] { fingerprint } : new long[0];
+		long[] matches = new long[8];
+		int count = 0;
+		for (Table table : tables) {
+			long p = table.permute(fingerprint);
+			// values are stored with their sign bit flipped so that they sort in unsigned order
+			long lo = (p & table.prefixMask) ^ Long.MIN_VALUE;
+			long hi = (p | ~table.prefixMask) ^ Long.MIN_VALUE;
+			long[] values = table.values;
+			int i = Arrays.binarySearch(values, lo);
+			if (i < 0) i = -1 - i;
+			for (; i < values.length && values[i] <= hi; i++) {
+				long v = values[i] ^ Long.MIN_VALUE;
+				if (Long.bitCount(v ^ p) <= distance) {
+					if (count == matches.length) matches = Arrays.copyOf(matches, count * 2);
+					matches[count++] = table.unpermute(v);
+				}
+			}
+		}
+		// a match may be found in several tables
+		Arrays.sort(matches, 0, count);
+		int unique = 0;
+		for (int i = 0; i < count; i++) {
+			if (i == 0 || matches[i] != matches[i - 1]) matches[unique++] = matches[i];
+		}
+		return Arrays.copyOf(matches, unique);
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "SimHash index of " + fingerprints.length + " fingerprints within distance " + maxDistance + " using " + tables.length + " tables";
+	}
+
+	// inner classes
+
+	private final class Table {
+
+		// per block, in permuted order
+		private final int[] sources;
+		private final int[] targets;
+		private final long[] masks;
+		private final long prefixMask;
+		private final long[] values;
+
+		Table(int choice) {
+			sources = new int[blockCount];
+			targets = new int[blockCount];
+			masks = new long[blockCount];
+			int target = 64;
+			int prefixBits = 0;
+			int j = 0;
+			// chosen blocks first, then the remainder
+			for (int pass = 0; pass < 2; pass++) {
+				for (int b = 0; b < blockCount; b++) {
+					boolean chosen = (choice & (1 << b)) != 0;
+					if (chosen != (pass == 0)) continue;
+					int start = blockStart(b, blockCount);
+					int length = blockStart(b + 1, blockCount) - start;
+					target -= length;
+					if (chosen) prefixBits += length;
+					sources[j] = start;
+					targets[j] = target;
+					masks[j] = mask(length);
+					j++;
+				}
+			}
+			prefixMask = -1L << (64 - prefixBits);
+			long[] values = new long[fingerprints.length];
+			for (int i = 0; i < values.length; i++) values[i] = permute(fingerprints[i]) ^ Long.MIN_VALUE;
+			sort(values);
+			this.values = values;
+		}
+
+		long permute(long x) {
+			long p = 0L;
+			for (int i = 0; i < sources.length; i++) p |= (x >>> sources[i] & masks[i]) << targets[i];
+			return p;
+		}
+
+		long unpermute(long p) {
+			long x = 0L;
+			for (int i = 0; i < sources.length; i++) x |= (p >>> targets[i] & masks[i]) << sources[i];
+			return x;
+		}
+
+	}
+
+}
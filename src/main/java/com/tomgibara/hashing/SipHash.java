@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.tomgibara.streams.WriteStream;
+
+// See https://131002.net/siphash/siphash.pdf
+// the key is k0 (bytes 0-7) and k1 (bytes 8-15), each read little-endian
+
+final class SipHash implements Hash {
+
+	static long readLong(byte[] bs, int i) {
+		return
+			(bs[i    ] & 0xffL)       |
+			(bs[i + 1] & 0xffL) <<  8 |
+			(bs[i + 2] & 0xffL) << 16 |
+			(bs[i + 3] & 0xffL) << 24 |
+			(bs[i + 4] & 0xffL) << 32 |
+			(bs[i + 5] & 0xffL) << 40 |
+			(bs[i + 6] & 0xffL) << 48 |
+			(bs[i + 7] & 0xffL) << 56 ;
+	}
+
+	private final int c;
+	private final int d;
+	private final long k0;
+	private final long k1;
+
+	SipHash(int c, int d, long k0, long k1) {
+		this.c = c;
+		this.d = d;
+		this.k0 = k0;
+		this.k1 = k1;
+	}
+
+	@Override
+	public HashSize getSize() {
+		return HashSize.LONG_SIZE;
+	}
+
+	@Override
+	public WriteStream newStream() {
+		return new SipStream(c, d, k0, k1);
+	}
+
+	@Override
+	public WriteStream resetStream(WriteStream s) {
+		SipStream stream = cast(s);
+		stream.reset(k0, k1);
+		return stream;
+	}
+
+	@Override
+	public void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		MappedWindows.checkBuffer(stream, buffer, position, limit);
+		cast(stream).writeBuffer(buffer, position, limit);
+	}
+
+	@Override
+	public Hash seeded(long seed) {
+		return new SipHash(c, d, k0 ^ SeededHash.diffuse(seed), k1);
+	}
+
+	@Override
+	public int intHashValue(WriteStream s) {
+		return (int) cast(s).hash();
+	}
+
+	@Override
+	public long longHashValue(WriteStream s) {
+		return cast(s).hash();
+	}
+
+	@Override
+	public BigInteger bigHashValue(WriteStream s) {
+		return AbstractHashCode.bigFromLong(cast(s).hash());
+	}
+
+	@Override
+	public byte[] bytesHashValue(WriteStream s) {
+		return AbstractHashCode.longToBytes(cast(s).hash());
+	}
+
+	@Override
+	public HashCode hash(WriteStream s) {
+		return new LongHashCode(cast(s).hash());
+	}
+
+	// object methods
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(k0) + 31 * Long.hashCode(k1) + 961 * c + d;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof SipHash)) return false;
+		SipHash that = (SipHash) obj;
+		return this.c == that.c && this.d == that.d && this.k0 == that.k0 && this.k1 == that.k1;
+	}
+
+	@Override
+	public String toString() {
+		// deliberately omits the key
+		return "SipHash-" + c + "-" + d;
+	}
+
+	// private helper methods
+
+	private SipStream cast(WriteStream stream) {
+		return (SipStream) stream;
+	}
+
+	// inner classes
+
+	static class SipStream implements WriteStream {
+
+		private final int c;
+		private final int d;
+		private long v0;
+		private long v1;
+		private long v2;
+		private long v3;
+		// holds the (len & 7) pending bytes, little-endian, in its low bits
+		private long m;
+		private long len;
+
+		SipStream(int c, int d, long k0, long k1) {
+			this.c = c;
+			this.d = d;
+			reset(k0, k1);
+		}
+
+		void reset(long k0, long k1) {
+			v0 = k0 ^ 0x736f6d6570736575L;
+			v1 = k1 ^ 0x646f72616e646f6dL;
+			v2 = k0 ^ 0x6c7967656e657261L;
+			v3 = k1 ^ 0x7465646279746573L;
+			m = 0L;
+			len = 0L;
+		}
+
+		@Override
+		public void writeByte(byte v) {
+			m |= (v & 0xffL) << (((int) len & 7) << 3);
+			if ((++len & 7) == 0) {
+				compress(m);
+				m = 0L;
+			}
+		}
+
+		@Override
+		public void writeBytes(byte[] vs) {
+			writeBytes(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeBytes(byte[] vs, int off, int len) {
+			final int lim = off + len;
+			int i = off;
+			// align to a word boundary
+			while (i < lim && (this.len & 7) != 0) writeByte(vs[i++]);
+			// consume whole words
+			final int start = i;
+			final int wlim = lim - 7;
+			for (; i < wlim; i += 8) {
+				compress(readLong(vs, i));
+			}
+			this.len += i - start;
+			// buffer the tail
+			while (i < lim) writeByte(vs[i++]);
+		}
+
+		// reads words using absolute gets, so the buffer's position is untouched
+		void writeBuffer(ByteBuffer buffer, int position, int limit) {
+			int i = position;
+			// align to a word boundary
+			while (i < limit && (len & 7) != 0) writeByte(buffer.get(i++));
+			// consume whole words, in the buffer's byte order if possible
+			final int start = i;
+			final int wlim = limit - 7;
+			if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+				for (; i < wlim; i += 8) compress(buffer.getLong(i));
+			} else {
+				for (; i < wlim; i += 8) compress(Long.reverseBytes(buffer.getLong(i)));
+			}
+			len += i - start;
+			// buffer the tail
+			while (i < limit) writeByte(buffer.get(i++));
+		}
+
+		@Override
+		public void writeBoolean(boolean v) {
+			writeByte((byte) (v ? -1 : 0));
+		}
+
+		@Override
+		public void writeShort(short v) {
+			write(Short.reverseBytes(v) & 0xffffL, 2);
+		}
+
+		@Override
+		public void writeChar(char v) {
+			write(Character.reverseBytes(v), 2);
+		}
+
+		@Override
+		public void writeInt(int v) {
+			write(Integer.reverseBytes(v) & 0xffffffffL, 4);
+		}
+
+		@Override
+		public void writeLong(long v) {
+			write(Long.reverseBytes(v), 8);
+		}
+
+		@Override
+		public void writeChars(CharSequence vs) {
+			// avoids copying strings into a char array
+			final int length = vs.length();
+			writeInt(length);
+			for (int i = 0; i < length; i++) {
+				writeChar(vs.charAt(i));
+			}
+		}
+
+		long hash() {
+			long b = (len & 0xffL) << 56 | m;
+			compress(b);
+			v2 ^= 0xffL;
+			for (int i = 0; i < d; i++) round();
+			return v0 ^ v1 ^ v2 ^ v3;
+		}
+
+		// writes n (at most 8) bytes, supplied little-endian in the low bits of w
+		private void write(long w, int n) {
+			int pos = (int) len & 7;
+			len += n;
+			if (pos == 0) {
+				if (n == 8) {
+					compress(w);
+				} else {
+					m = w;
+				}
+				return;
+			}
+			int shift = pos << 3;
+			m |= w << shift;
+			if (pos + n >= 8) {
+				compress(m);
+				m = pos + n > 8 ? w >>> (64 - shift) : 0L;
+			}
+		}
+
+		private void compress(long m) {
+			v3 ^= m;
+			for (int i = 0; i < c; i++) round();
+			v0 ^= m;
+		}
+
+		private void round() {
+			v0 += v1;
+			v1 = Long.rotateLeft(v1, 13);
+			v1 ^= v0;
+			v0 = Long.rotateLeft(v0, 32);
+			v2 += v3;
+			v3 = Long.rotateLeft(v3, 16);
+			v3 ^= v2;
+			v0 += v3;
+			v3 = Long.rotateLeft(v3, 21);
+			v3 ^= v0;
+			v2 += v1;
+			v1 = Long.rotateLeft(v1, 17);
+			v1 ^= v2;
+			v2 = Long.rotateLeft(v2, 32);
+		}
+
+	}
+
+}
@@ -80,7 +80,7 @@ abstract class SizedHasher<T> implements Hasher<T> {
 	@Override
 	public boolean equals(Object obj) {
 		if (obj == this) return true;
-		if (!(obj instanceof SizedHasher)) return false;
+		if (obj == null || obj.getClass() != this.getClass()) return false;
 		SizedHasher<?> that = (SizedHasher<?>) obj;
 		if (!this.newSize.equals(that.newSize)) return false;
 		if (!this.hashing.equals(that.hashing)) return false;
@@ -25,10 +25,12 @@ class StandardHasher<T> implements Hasher<T> {
 
 	private final Hash hash;
 	private final StreamSerializer<T> serializer;
+	private final StreamCache cache;
 
 	StandardHasher(Hash hash, StreamSerializer<T> serializer) {
 		this.hash = hash;
 		this.serializer = serializer;
+		cache = new StreamCache(hash);
 	}
 
 	@Override
@@ -41,37 +43,50 @@ class StandardHasher<T> implements Hasher<T> {
 		return hash.getQuantity();
 	}
 
+	// streams are returned to the cache only once their hash value has been taken
+
 	@Override
 	public HashCode hash(T value) {
-		return hash.hash(stream(value));
+		WriteStream stream = stream(value);
+		HashCode hashCode = hash.hash(stream);
+		cache.release(stream);
+		return hashCode;
 	}
 
 	@Override
 	public byte[] bytesHashValue(T value) {
-		return hash.bytesHashValue(stream(value));
+		WriteStream stream = stream(value);
+		byte[] bytes = hash.bytesHashValue(stream);
+		cache.release(stream);
+		return bytes;
 	}
 
 	@Override
 	public BigInteger bigHashValue(T value) {
-		return hash.bigHashValue(stream(value));
+		WriteStream stream = stream(value);
+		BigInteger big = hash.bigHashValue(stream);
+		cache.release(stream);
+		return big;
 	}
 
 	@Override
 	public long longHashValue(T value) {
-		return hash.longHashValue(stream(value));
+		WriteStream stream = stream(value);
+		long l = hash.longHashValue(stream);
+		cache.release(stream);
+		return l;
 	}
 
 	@Override
 	public int intHashValue(T value) {
-		return hash.intHashValue(stream(value));
-	}
-
-	WriteStream newStream() {
-		return hash.newStream();
+		WriteStream stream = stream(value);
+		int i = hash.intHashValue(stream);
+		cache.release(stream);
+		return i;
 	}
 
 	private WriteStream stream(T value) {
-		WriteStream stream = newStream();
+		WriteStream stream = cache.acquire();
 		serializer.serialize(value, stream);
 		return stream;
 	}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.tomgibara.streams.WriteStream;
+
+// a small lock-free pool of streams, striped by thread id
+// unlike a ThreadLocal, its size is bounded however many threads (virtual or otherwise) use it
+final class StreamCache {
+
+	private static final int SLOTS;
+
+	static {
+		int target = Runtime.getRuntime().availableProcessors() * 2;
+		SLOTS = Math.min(Integer.highestOneBit(Math.max(target - 1, 1)) << 1, 64);
+	}
+
+	private final Hash hash;
+	private final AtomicReferenceArray<WriteStream> slots = new AtomicReferenceArray<>(SLOTS);
+
+	StreamCache(Hash hash) {
+		this.hash = hash;
+	}
+
+	// returns a stream ready to receive data, reusing a cached stream if possible
+	WriteStream acquire() {
+		WriteStream stream = slots.getAndSet(slot(), null);
+		return stream == null ? hash.newStream() : hash.resetStream(stream);
+	}
+
+	// returns a stream to the cache after its hash value has been taken
+	void release(WriteStream stream) {
+		slots.compareAndSet(slot(), null, stream);
+	}
+
+	private static int slot() {
+		long id = Thread.currentThread().getId();
+		int h = (int) (id ^ id >>> 32) * 0x9e3779b9;
+		return (h ^ h >>> 16) & (SLOTS - 1);
+	}
+
+}
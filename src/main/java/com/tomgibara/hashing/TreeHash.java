@@ -0,0 +1,323 @@
+/*
+ * Copyright 2015 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>
+ * Hashes large inputs in parallel by splitting them into fixed-size leaves and
+ * combining the digests of the leaves into a binary Merkle tree. Instances are
+ * obtained from {@link HashDigest#asTreeHash(int)}.
+ *
+ * <p>
+ * The tree is that defined by RFC 6962: the digest of a leaf is taken over a
+ * zero byte followed by the leaf data, and the digest of an interior node is
+ * taken over a one byte followed by the digests of its left and right
+ * children. The left subtree of every interior node spans the largest power of
+ * two number of leaves that is less than the number of leaves it spans. The
+ * root of an empty input is the digest of no data.
+ *
+ * <p>
+ * Subtrees are hashed concurrently on a <code>ForkJoinPool</code>. Instances
+ * are immutable and safe for concurrent use.
+ *
+ * @author Tom Gibara
+ * @see MerkleTree
+ */
+
+public final class TreeHash {
+
+	private static final byte LEAF_PREFIX = 0;
+	private static final byte NODE_PREFIX = 1;
+
+	static byte[] leafDigest(MessageDigest digest, ByteBuffer buffer, int position, int limit) {
+		ByteBuffer view = buffer.duplicate();
+		view.limit(limit).position(position);
+		digest.update(LEAF_PREFIX);
+		digest.update(view);
+		return digest.digest();
+	}
+
+	static byte[] nodeDigest(MessageDigest digest, byte[] left, byte[] right) {
+		digest.update(NODE_PREFIX);
+		digest.update(left);
+		digest.update(right);
+		return digest.digest();
+	}
+
+	// the number of leaves in the left subtree of a node spanning count > 1 leaves
+	static int split(int count) {
+		return Integer.highestOneBit(count - 1);
+	}
+
+	private final HashDigest digests;
+	private final int leafSize;
+	private final ForkJoinPool pool;
+	private final HashSize size;
+
+	TreeHash(HashDigest digests, int leafSize, ForkJoinPool pool) {
+		this.digests = digests;
+		this.leafSize = leafSize;
+		this.pool = pool;
+		size = HashSize.fromByteLength(digests.newDigest().getDigestLength());
+	}
+
+	/**
+	 * The size of the hash values produced by this tree hash; this is also the
+	 * size of the leaf hashes.
+	 *
+	 * @return the size of the root hash
+	 */
+
+	public HashSize getSize() {
+		return size;
+	}
+
+	/**
+	 * The number of bytes in every leaf, except possibly the last.
+	 *
+	 * @return the leaf size in bytes
+	 */
+
+	public int getLeafSize() {
+		return leafSize;
+	}
+
+	/**
+	 * Hashes the bytes in an array.
+	 *
+	 * @param bytes
+	 *            the bytes to be hashed
+	 * @return the Merkle tree of the bytes
+	 */
+
+	public MerkleTree hash(byte[] bytes) {
+		if (bytes == null) throw new IllegalArgumentException("null bytes");
+		return hash(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Hashes the remaining bytes of a buffer. Neither the position nor the
+	 * limit of the buffer is changed.
+	 *
+	 * @param buffer
+	 *            a heap or direct buffer
+	 * @return the Merkle tree of the remaining bytes
+	 */
+
+	public MerkleTree hash(ByteBuffer buffer) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		int length = buffer.remaining();
+		byte[][] leaves = new byte[leafCount(length)][];
+		if (length == 0) return new MerkleTree(this, 0L, leaves, newDigest().digest());
+		byte[] root = pool.invoke(new Node(null, leaves, length, 0, leaves.length, buffer, -buffer.position()));
+		return new MerkleTree(this, length, leaves, root);
+	}
+
+	/**
+	 * Hashes a range of a file channel. The range is memory-mapped in windows,
+	 * each of which is released as soon as the leaves it contains have been
+	 * hashed. The position of the channel is not changed.
+	 *
+	 * @param channel
+	 *            a channel open for reading
+	 * @param position
+	 *            the position in the channel at which the range starts
+	 * @param size
+	 *            the number of bytes in the range
+	 * @return the Merkle tree of the range
+	 * @throws IOException
+	 *             if the channel could not be mapped
+	 */
+
+	public MerkleTree hash(FileChannel channel, long position, long size) throws IOException {
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		if (position < 0L) throw new IllegalArgumentException("negative position");
+		if (size < 0L) throw new IllegalArgumentException("negative size");
+		if (position + size > channel.size()) throw new IllegalArgumentException("range exceeds channel size");
+		long count = (size + leafSize - 1) / leafSize;
+		if (count > Integer.MAX_VALUE) throw new IllegalArgumentException("too many leaves");
+		byte[][] leaves = new byte[(int) count][];
+		if (size == 0L) return new MerkleTree(this, 0L, leaves, newDigest().digest());
+		try {
+			byte[] root = pool.invoke(new Node(channel, leaves, size, 0, leaves.length, null, -position));
+			return new MerkleTree(this, size, leaves, root);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Hashes the entire contents of a file.
+	 *
+	 * @param path
+	 *            the path of a readable file
+	 * @return the Merkle tree of the file's contents
+	 * @throws IOException
+	 *             if the file could not be opened or mapped
+	 * @see #hash(FileChannel, long, long)
+	 */
+
+	public MerkleTree hashFile(Path path) throws IOException {
+		if (path == null) throw new IllegalArgumentException("null path");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return hash(channel, 0L, channel.size());
+		}
+	}
+
+	/**
+	 * Reconstructs a Merkle tree from leaf hashes that have been obtained
+	 * elsewhere, typically from an untrusted source. The root of the tree is
+	 * computed from the supplied leaves, so comparing it with a trusted root,
+	 * as {@link MerkleTree#verifyRoot(HashCode)} does, establishes whether the
+	 * leaf hashes are genuine. Ranges of the input may then be verified
+	 * against the tree with {@link MerkleTree#verify(int, ByteBuffer)}.
+	 *
+	 * @param length
+	 *            the number of bytes in the input that was hashed
+	 * @param leaves
+	 *            the hash of every leaf, in order
+	 * @return the Merkle tree of the leaves
+	 * @throws IllegalArgumentException
+	 *             if the number of leaves does not match the length, or a
+	 *             leaf hash is not of the size produced by this tree hash
+	 */
+
+	public MerkleTree fromLeaves(long length, List<HashCode> leaves) {
+		if (length < 0L) throw new IllegalArgumentException("negative length");
+		if (leaves == null) throw new IllegalArgumentException("null leaves");
+		if (leaves.size() != (length + leafSize - 1) / leafSize) throw new IllegalArgumentException("leaf count does not match length");
+		byte[][] digests = new byte[leaves.size()][];
+		for (int i = 0; i < digests.length; i++) {
+			HashCode leaf = leaves.get(i);
+			if (leaf == null) throw new IllegalArgumentException("null leaf");
+			if (!leaf.size().equals(size)) throw new IllegalArgumentException("leaf size does not match hash size");
+			digests[i] = leaf.bytesValue();
+		}
+		MessageDigest digest = newDigest();
+		byte[] root = digests.length == 0 ? digest.digest() : combine(digest, digests, 0, digests.length);
+		return new MerkleTree(this, length, digests, root);
+	}
+
+	// package scoped methods
+
+	MessageDigest newDigest() {
+		return digests.newDigest();
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "tree of " + leafSize + " byte leaves sized " + size;
+	}
+
+	// private helper methods
+
+	private int leafCount(int length) {
+		return (int) ((length + (long) leafSize - 1) / leafSize);
+	}
+
+	private static byte[] combine(MessageDigest digest, byte[][] leaves, int from, int to) {
+		if (to - from == 1) return leaves[from];
+		int mid = from + split(to - from);
+		byte[] left = combine(digest, leaves, from, mid);
+		byte[] right = combine(digest, leaves, mid, to);
+		return nodeDigest(digest, left, right);
+	}
+
+	// inner classes
+
+	// hashes the subtree over leaves [from, to), returning its digest
+	private final class Node extends RecursiveTask<byte[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final byte[][] leaves;
+		private final long length;
+		private final int from;
+		private final int to;
+		// contains the data of the subtree, or null if it has yet to be mapped
+		private final ByteBuffer buffer;
+		// the offset of the buffer's zero index within the data
+		private final long base;
+
+		Node(FileChannel channel, byte[][] leaves, long length, int from, int to, ByteBuffer buffer, long base) {
+			this.channel = channel;
+			this.leaves = leaves;
+			this.length = length;
+			this.from = from;
+			this.to = to;
+			this.buffer = buffer;
+			this.base = base;
+		}
+
+		@Override
+		protected byte[] compute() {
+			long start = (long) from * leafSize;
+			long end = Math.min((long) to * leafSize, length);
+			ByteBuffer buffer = this.buffer;
+			long base = this.base;
+			boolean mapped = false;
+			// map subtrees once they fit within a window, or single leaves of any size
+			if (buffer == null && (end - start <= MappedWindows.WINDOW_SIZE || to - from == 1)) {
+				try {
+					buffer = channel.map(MapMode.READ_ONLY, start - base, end - start);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				base = start;
+				mapped = true;
+			}
+			try {
+				if (to - from == 1) {
+					byte[] leaf = leafDigest(newDigest(), buffer, (int) (start - base), (int) (end - base));
+					leaves[from] = leaf;
+					return leaf;
+				}
+				int mid = from + split(to - from);
+				Node left = new Node(channel, leaves, length, from, mid, buffer, base);
+				left.fork();
+				byte[] right;
+				try {
+					right = new Node(channel, leaves, length, mid, to, buffer, base).compute();
+				} finally {
+					// the left subtree may still be reading the buffer, even if the right failed
+					left.quietlyJoin();
+				}
+				return nodeDigest(newDigest(), left.join(), right);
+			} finally {
+				// all subtasks have completed, so the mapping is no longer referenced
+				if (mapped) MappedWindows.unmap(buffer);
+			}
+		}
+
+	}
+
+}
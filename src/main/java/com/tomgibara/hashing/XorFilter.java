@@ -0,0 +1,587 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * <p>
+ * An immutable filter that records the membership of a fixed set of objects
+ * using less space than a {@link BloomFilter} with the same false positive
+ * rate. Each object is assigned three slots, and the filter is constructed so
+ * that the exclusive-or of the fingerprints in those slots equals a
+ * fingerprint of the object. Fingerprints are 8 or 16 bits, giving false
+ * positive rates of approximately 1/256 and 1/65536 respectively.
+ *
+ * <p>
+ * Two constructions are available: classic xor filters which occupy
+ * approximately 1.23 slots per object, and binary fuse filters which occupy
+ * approximately 1.125 slots per object and which are faster to construct.
+ * Large sets are partitioned into shards that are constructed in parallel.
+ *
+ * <p>
+ * A filter is held in a compact serialized form that is available via
+ * {@link #asBuffer()} and which may be written to a file. Filters can be
+ * queried directly from a buffer containing this form, such as a memory
+ * mapped file, without deserializing it. The hasher is not recorded in the
+ * serialized form; the filter must be reconstituted with the same hasher that
+ * was used to build it.
+ *
+ * <p>
+ * Filters are safe for concurrent use.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of objects recorded in the filter
+ */
+
+public final class XorFilter<T> {
+
+	// the serialized form is little-endian, starting with a header:
+	// magic (int), type (int), fingerprint bits (int), shard count (int), key count (long)
+	// followed by a record for each shard:
+	// seed (long), segment length (int), segment count length (int), offset (int), array length (int)
+	// followed by the fingerprints of all shards
+	private static final int MAGIC = 0x46524f58;
+	private static final int HEADER_SIZE = 24;
+	private static final int SHARD_SIZE = 24;
+
+	private static final int TYPE_XOR = 0;
+	private static final int TYPE_FUSE = 1;
+
+	// the number of objects above which sets are split into shards
+	private static final int MAX_SHARD_KEYS = 1 << 20;
+	// the number of seeds tried before construction is abandoned
+	private static final int MAX_ATTEMPTS = 1000;
+
+	/**
+	 * Builds a classic xor filter over a collection of objects. The
+	 * collection may contain duplicates.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to record in the filter
+	 * @param fingerprintBits
+	 *            the size of each fingerprint, either 8 or 16
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return a filter containing the objects
+	 */
+
+	public static <T> XorFilter<T> xor(Hasher<T> hasher, Collection<? extends T> values, int fingerprintBits) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		return build(TYPE_XOR, hasher, values.parallelStream(), fingerprintBits);
+	}
+
+	/**
+	 * Builds a classic xor filter over a stream of objects. The objects are
+	 * hashed in parallel if the stream is parallel. The stream may contain
+	 * duplicates.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to record in the filter
+	 * @param fingerprintBits
+	 *            the size of each fingerprint, either 8 or 16
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return a filter containing the objects
+	 */
+
+	public static <T> XorFilter<T> xor(Hasher<T> hasher, Stream<? extends T> values, int fingerprintBits) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		return build(TYPE_XOR, hasher, values, fingerprintBits);
+	}
+
+	/**
+	 * Builds a binary fuse filter over a collection of objects. The
+	 * collection may contain duplicates.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to record in the filter
+	 * @param fingerprintBits
+	 *            the size of each fingerprint, either 8 or 16
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return a filter containing the objects
+	 */
+
+	public static <T> XorFilter<T> binaryFuse(Hasher<T> hasher, Collection<? extends T> values, int fingerprintBits) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		return build(TYPE_FUSE, hasher, values.parallelStream(), fingerprintBits);
+	}
+
+	/**
+	 * Builds a binary fuse filter over a stream of objects. The objects are
+	 * hashed in parallel if the stream is parallel. The stream may contain
+	 * duplicates.
+	 *
+	 * @param hasher
+	 *            hashes the objects, producing values of at least 64 bits
+	 * @param values
+	 *            the objects to record in the filter
+	 * @param fingerprintBits
+	 *            the size of each fingerprint, either 8 or 16
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return a filter containing the objects
+	 */
+
+	public static <T> XorFilter<T> binaryFuse(Hasher<T> hasher, Stream<? extends T> values, int fingerprintBits) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		return build(TYPE_FUSE, hasher, values, fingerprintBits);
+	}
+
+	/**
+	 * Reconstitutes a filter from its serialized form. The contents of the
+	 * buffer, from its position to its limit, are used directly (not copied)
+	 * and must not be modified while the filter is in use. The buffer's
+	 * position, limit and byte order are not changed.
+	 *
+	 * @param hasher
+	 *            the hasher with which the filter was built
+	 * @param buffer
+	 *            a buffer containing a serialized filter
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return a filter backed by the buffer
+	 * @throws IllegalArgumentException
+	 *             if the buffer does not contain a valid filter
+	 * @see #asBuffer()
+	 */
+
+	public static <T> XorFilter<T> fromBuffer(Hasher<T> hasher, ByteBuffer buffer) {
+		checkHasher(hasher);
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		return new XorFilter<>(hasher, buffer.slice().order(ByteOrder.LITTLE_ENDIAN));
+	}
+
+	/**
+	 * Memory maps a file containing a serialized filter.
+	 *
+	 * @param hasher
+	 *            the hasher with which the filter was built
+	 * @param path
+	 *            the file containing the filter
+	 * @param <T>
+	 *            the type of objects recorded in the filter
+	 * @return a filter backed by the mapped file
+	 * @throws IOException
+	 *             if the file could not be mapped
+	 * @throws IllegalArgumentException
+	 *             if the file does not contain a valid filter
+	 */
+
+	public static <T> XorFilter<T> mapFile(Hasher<T> hasher, Path path) throws IOException {
+		checkHasher(hasher);
+		if (path == null) throw new IllegalArgumentException("null path");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return fromBuffer(hasher, channel.map(MapMode.READ_ONLY, 0L, channel.size()));
+		}
+	}
+
+	private static <T> XorFilter<T> build(int type, Hasher<T> hasher, Stream<? extends T> values, int fingerprintBits) {
+		checkHasher(hasher);
+		if (fingerprintBits != 8 && fingerprintBits != 16) throw new IllegalArgumentException("invalid fingerprintBits");
+		long[] hashes = values.mapToLong(v -> hasher.longHashValue(v)).toArray();
+
+		// partition the hashes into shards
+		int shardCount = Math.max(1, (hashes.length + MAX_SHARD_KEYS - 1) / MAX_SHARD_KEYS);
+		int[] starts = new int[shardCount + 1];
+		long[] sharded;
+		if (shardCount == 1) {
+			starts[1] = hashes.length;
+			sharded = hashes;
+		} else {
+			for (long hash : hashes) starts[shard(hash, shardCount) + 1]++;
+			for (int s = 0; s < shardCount; s++) starts[s + 1] += starts[s];
+			int[] ends = Arrays.copyOf(starts, shardCount);
+			sharded = new long[hashes.length];
+			for (long hash : hashes) sharded[ends[shard(hash, shardCount)]++] = hash;
+		}
+		hashes = null;
+
+		// lay out the shards
+		Shape[] shapes = new Shape[shardCount];
+		long total = 0L;
+		for (int s = 0; s < shardCount; s++) {
+			Shape shape = new Shape(type, starts[s + 1] - starts[s]);
+			shape.offset = (int) total;
+			total += shape.arrayLength;
+			if (HEADER_SIZE + (long) SHARD_SIZE * shardCount + total * (fingerprintBits >> 3) > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException("too many values");
+			}
+			shapes[s] = shape;
+		}
+		int dataStart = HEADER_SIZE + SHARD_SIZE * shardCount;
+		byte[] bytes = new byte[dataStart + (int) total * (fingerprintBits >> 3)];
+
+		// construct the shards in parallel
+		int[] counts = IntStream.range(0, shapes.length).parallel().map(s ->
+			shapes[s].populate(sharded, starts[s], starts[s + 1], bytes, dataStart, fingerprintBits, s)
+		).toArray();
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(type).putInt(fingerprintBits).putInt(shardCount).putLong(Arrays.stream(counts).asLongStream().sum());
+		for (Shape shape : shapes) {
+			buffer.putLong(shape.seed).putInt(shape.segmentLength).putInt(shape.segmentCountLength).putInt(shape.offset).putInt(shape.arrayLength);
+		}
+		buffer.clear();
+		return new XorFilter<>(hasher, buffer);
+	}
+
+	private static void checkHasher(Hasher<?> hasher) {
+		if (hasher == null) throw new IllegalArgumentException("null hasher");
+		if (hasher.getSize().getBits() < 64) throw new IllegalArgumentException("hasher produces fewer than 64 bits");
+	}
+
+	// independent of the hash values from which slots are derived
+	private static int shard(long hash, int shardCount) {
+		return (int) Indices.reduce(Indices.step(hash), shardCount);
+	}
+
+	private static long fingerprint(long h) {
+		return h ^ h >>> 32;
+	}
+
+	private final Hasher<T> hasher;
+	private final ByteBuffer buffer;
+	private final int type;
+	private final int fingerprintBits;
+	private final int shardCount;
+	private final long count;
+	private final long[] seeds;
+	private final int[] segmentLengths;
+	private final int[] segmentCountLengths;
+	private final int[] offsets;
+	private final int arrayLength;
+	private final ByteBuffer fingerprints;
+
+	private XorFilter(Hasher<T> hasher, ByteBuffer buffer) {
+		this.hasher = hasher;
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) throw new IllegalArgumentException("not a filter");
+		type = buffer.getInt(4);
+		if (type != TYPE_XOR && type != TYPE_FUSE) throw new IllegalArgumentException("unknown filter type");
+		fingerprintBits = buffer.getInt(8);
+		if (fingerprintBits != 8 && fingerprintBits != 16) throw new IllegalArgumentException("invalid fingerprint size");
+		shardCount = buffer.getInt(12);
+		count = buffer.getLong(16);
+		if (shardCount < 1 || buffer.limit() < HEADER_SIZE + (long) SHARD_SIZE * shardCount) throw new IllegalArgumentException("invalid shard count");
+		seeds = new long[shardCount];
+		segmentLengths = new int[shardCount];
+		segmentCountLengths = new int[shardCount];
+		offsets = new int[shardCount];
+		long length = 0L;
+		for (int s = 0; s < shardCount; s++) {
+			int i = HEADER_SIZE + SHARD_SIZE * s;
+			seeds[s] = buffer.getLong(i);
+			segmentLengths[s] = buffer.getInt(i + 8);
+			segmentCountLengths[s] = buffer.getInt(i + 12);
+			offsets[s] = buffer.getInt(i + 16);
+			if (offsets[s] != length) throw new IllegalArgumentException("invalid shard offset");
+			length += buffer.getInt(i + 20);
+		}
+		int dataStart = HEADER_SIZE + SHARD_SIZE * shardCount;
+		if (buffer.limit() - dataStart != length * (fingerprintBits >> 3)) throw new IllegalArgumentException("invalid filter length");
+		arrayLength = (int) length;
+		ByteBuffer data = buffer.duplicate();
+		data.position(dataStart);
+		fingerprints = data.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * The hasher used to derive the slots and fingerprint of each object.
+	 *
+	 * @return the filter's hasher
+	 */
+
+	public Hasher<T> getHasher() {
+		return hasher;
+	}
+
+	/**
+	 * Whether the filter was constructed as a binary fuse filter.
+	 *
+	 * @return true for a binary fuse filter, false for a classic xor filter
+	 */
+
+	public boolean isBinaryFuse() {
+		return type == TYPE_FUSE;
+	}
+
+	/**
+	 * The number of bits in each fingerprint.
+	 *
+	 * @return the fingerprint size in bits
+	 */
+
+	public int getFingerprintBits() {
+		return fingerprintBits;
+	}
+
+	/**
+	 * The number of distinct hash values recorded in the filter. This will be
+	 * fewer than the number of objects from which the filter was built if
+	 * those objects contained duplicates (or objects with colliding hash
+	 * values).
+	 *
+	 * @return the number of recorded hash values
+	 */
+
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * The number of bits of fingerprint storage per recorded object.
+	 *
+	 * @return the filter's bits per object
+	 */
+
+	public double getBitsPerValue() {
+		return count == 0L ? 0.0 : (double) arrayLength * fingerprintBits / count;
+	}
+
+	/**
+	 * The probability that {@link #mightContain(Object)} returns true for an
+	 * object that was not recorded.
+	 *
+	 * @return the false positive rate
+	 */
+
+	public double getFalsePositiveRate() {
+		return 1.0 / (1 << fingerprintBits);
+	}
+
+	/**
+	 * Whether the object may have been recorded in the filter.
+	 *
+	 * @param value
+	 *            the object to test
+	 * @return false if the object has definitely not been recorded in the
+	 *         filter, true otherwise
+	 */
+
+	public boolean mightContain(T value) {
+		long hash = hasher.longHashValue(value);
+		int s = shardCount == 1 ? 0 : shard(hash, shardCount);
+		int length = segmentLengths[s];
+		if (length == 0) return false;
+		long h = Indices.mix(hash + seeds[s]);
+		int h0, h1, h2;
+		if (type == TYPE_FUSE) {
+			h0 = (int) Indices.reduce(h, segmentCountLengths[s]);
+			h1 = h0 + length;
+			h2 = h1 + length;
+			h1 ^= (int) (h >>> 18) & (length - 1);
+			h2 ^= (int) h & (length - 1);
+		} else {
+			h0 = Indices.reduce((int) h, length);
+			h1 = Indices.reduce((int) Long.rotateLeft(h, 21), length) + length;
+			h2 = Indices.reduce((int) Long.rotateLeft(h, 42), length) + 2 * length;
+		}
+		int offset = offsets[s];
+		long f = fingerprint(h);
+		if (fingerprintBits == 8) {
+			return (byte) f == (byte) (fingerprints.get(offset + h0) ^ fingerprints.get(offset + h1) ^ fingerprints.get(offset + h2));
+		} else {
+			return (short) f == (short) (fingerprints.getShort(offset + h0 << 1) ^ fingerprints.getShort(offset + h1 << 1) ^ fingerprints.getShort(offset + h2 << 1));
+		}
+	}
+
+	/**
+	 * The serialized form of the filter. The returned buffer is read-only and
+	 * its contents, from position to limit, may be written to a file or other
+	 * channel and subsequently supplied to {@link #fromBuffer(Hasher, ByteBuffer)}.
+	 *
+	 * @return a buffer containing the serialized filter
+	 */
+
+	public ByteBuffer asBuffer() {
+		return buffer.asReadOnlyBuffer();
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return (type == TYPE_FUSE ? "Binary fuse" : "Xor") + " filter of " + count + " values with " + fingerprintBits + " bit fingerprints from " + hasher;
+	}
+
+	// inner classes
+
+	// the dimensions of a shard and the means to populate it
+	private static final class Shape {
+
+		final int type;
+		final int segmentLength;
+		final int segmentCountLength;
+		final int arrayLength;
+		int offset;
+		long seed;
+
+		Shape(int type, int size) {
+			this.type = type;
+			if (size == 0) {
+				segmentLength = 0;
+				segmentCountLength = 0;
+				arrayLength = 0;
+			} else if (type == TYPE_FUSE) {
+				// see Graf & Lemire, Binary Fuse Filters: Fast and Smaller Than Xor Filters
+				int length = size < 2 ? 4 : 1 << (int) Math.floor(Math.log(size) / Math.log(3.33) + 2.25);
+				segmentLength = Math.min(length, 1 << 18);
+				double factor = size < 2 ? 0.0 : Math.max(1.125, 0.875 + 0.25 * Math.log(1000000) / Math.log(size));
+				long capacity = Math.round(size * factor);
+				int segmentCount = (int) Math.max(1L, (capacity + segmentLength - 1) / segmentLength - 2);
+				segmentCountLength = segmentCount * segmentLength;
+				arrayLength = (segmentCount + 2) * segmentLength;
+			} else {
+				// see Graf & Lemire, Xor Filters: Faster and Smaller Than Bloom and Cuckoo Filters
+				segmentLength = (32 + (int) Math.ceil(1.23 * size)) / 3;
+				segmentCountLength = segmentLength;
+				arrayLength = 3 * segmentLength;
+			}
+		}
+
+		// returns the number of distinct hashes recorded
+		int populate(long[] hashes, int from, int to, byte[] bytes, int dataStart, int fingerprintBits, int shardIndex) {
+			int size = to - from;
+			if (size == 0) return 0;
+			long[] keys = Arrays.copyOfRange(hashes, from, to);
+			// counts are multiplied by four, the low bits accumulating the xor of the slot positions
+			int[] counts = new int[arrayLength];
+			long[] xors = new long[arrayLength];
+			int[] alone = new int[arrayLength];
+			long[] order = new long[size];
+			byte[] found = new byte[size];
+			int[] slots = new int[5];
+			seed = Indices.mix(shardIndex + 1L);
+			boolean deduplicated = false;
+			for (int attempt = 0; ; attempt++) {
+				if (attempt == MAX_ATTEMPTS) throw new IllegalStateException("failed to construct filter");
+				for (long key : keys) {
+					long h = Indices.mix(key + seed);
+					slots(h, slots);
+					for (int j = 0; j < 3; j++) {
+						int slot = slots[j];
+						counts[slot] = (counts[slot] + 4) ^ j;
+						xors[slot] ^= h;
+					}
+				}
+				// peel slots that are occupied by a single hash
+				int queued = 0;
+				for (int i = 0; i < arrayLength; i++) {
+					alone[queued] = i;
+					if (counts[i] >> 2 == 1) queued++;
+				}
+				int stacked = 0;
+				while (queued > 0) {
+					int slot = alone[--queued];
+					if (counts[slot] >> 2 != 1) continue;
+					long h = xors[slot];
+					int j = counts[slot] & 3;
+					found[stacked] = (byte) j;
+					order[stacked++] = h;
+					slots(h, slots);
+					for (int k = 1; k < 3; k++) {
+						int other = slots[j + k];
+						int p = (j + k) % 3;
+						alone[queued] = other;
+						if (counts[other] >> 2 == 2) queued++;
+						counts[other] = (counts[other] - 4) ^ p;
+						xors[other] ^= h;
+					}
+				}
+				if (stacked == keys.length) break;
+				// try again with a different seed
+				Arrays.fill(counts, 0);
+				Arrays.fill(xors, 0L);
+				seed = Indices.mix(seed);
+				if (!deduplicated) {
+					// duplicate hashes can never be peeled
+					keys = distinct(keys);
+					deduplicated = true;
+				}
+			}
+
+			// assign fingerprints in the reverse of the peeling order
+			int[] fingerprints = new int[arrayLength];
+			int mask = (1 << fingerprintBits) - 1;
+			for (int i = keys.length - 1; i >= 0; i--) {
+				long h = order[i];
+				slots(h, slots);
+				int j = found[i];
+				fingerprints[slots[j]] = ((int) fingerprint(h) ^ fingerprints[slots[j + 1]] ^ fingerprints[slots[j + 2]]) & mask;
+			}
+			int b = dataStart + offset * (fingerprintBits >> 3);
+			for (int f : fingerprints) {
+				bytes[b++] = (byte) f;
+				if (fingerprintBits == 16) bytes[b++] = (byte) (f >> 8);
+			}
+			return keys.length;
+		}
+
+		// records the three slots of a hash, repeating the first two
+		private void slots(long h, int[] slots) {
+			int h0, h1, h2;
+			if (type == TYPE_FUSE) {
+				h0 = (int) Indices.reduce(h, segmentCountLength);
+				h1 = h0 + segmentLength;
+				h2 = h1 + segmentLength;
+				h1 ^= (int) (h >>> 18) & (segmentLength - 1);
+				h2 ^= (int) h & (segmentLength - 1);
+			} else {
+				h0 = Indices.reduce((int) h, segmentLength);
+				h1 = Indices.reduce((int) Long.rotateLeft(h, 21), segmentLength) + segmentLength;
+				h2 = Indices.reduce((int) Long.rotateLeft(h, 42), segmentLength) + 2 * segmentLength;
+			}
+			slots[0] = h0;
+			slots[1] = h1;
+			slots[2] = h2;
+			slots[3] = h0;
+			slots[4] = h1;
+		}
+
+		private static long[] distinct(long[] keys) {
+			long[] sorted = keys.clone();
+			Arrays.sort(sorted);
+			int n = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || sorted[i] != sorted[i - 1]) sorted[n++] = sorted[i];
+			}
+			return n == sorted.length ? keys : Arrays.copyOf(sorted, n);
+		}
+
+	}
+
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.tomgibara.streams.WriteStream;
+
+// See https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md
+
+final class XxHash64Hash implements Hash {
+
+	static final long P1 = 0x9E3779B185EBCA87L;
+	static final long P2 = 0xC2B2AE3D27D4EB4FL;
+	static final long P3 = 0x165667B19E3779F9L;
+	static final long P4 = 0x85EBCA77C2B2AE63L;
+	static final long P5 = 0x27D4EB2F165667C5L;
+
+	private static XxHash64Hash instance = new XxHash64Hash(0L);
+
+	static XxHash64Hash instance() { return instance; }
+
+	static XxHash64Hash instance(long seed) { return seed == 0L ? instance : new XxHash64Hash(seed); }
+
+	static long round(long acc, long input) {
+		acc += input * P2;
+		acc = Long.rotateLeft(acc, 31);
+		acc *= P1;
+		return acc;
+	}
+
+	static long avalanche(long h) {
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static long merge(long acc, long v) {
+		acc ^= round(0L, v);
+		return acc * P1 + P4;
+	}
+
+	private final long seed;
+
+	private XxHash64Hash(long seed) {
+		this.seed = seed;
+	}
+
+	@Override
+	public HashSize getSize() {
+		return HashSize.LONG_SIZE;
+	}
+
+	@Override
+	public WriteStream newStream() {
+		return new XxStream(seed);
+	}
+
+	@Override
+	public WriteStream resetStream(WriteStream s) {
+		XxStream stream = cast(s);
+		stream.reset(seed);
+		return stream;
+	}
+
+	@Override
+	public void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		MappedWindows.checkBuffer(stream, buffer, position, limit);
+		cast(stream).writeBuffer(buffer, position, limit);
+	}
+
+	@Override
+	public Hash seeded(long seed) {
+		return new XxHash64Hash(this.seed ^ SeededHash.diffuse(seed));
+	}
+
+	@Override
+	public int intHashValue(WriteStream s) {
+		return (int) cast(s).hash();
+	}
+
+	@Override
+	public long longHashValue(WriteStream s) {
+		return cast(s).hash();
+	}
+
+	@Override
+	public BigInteger bigHashValue(WriteStream s) {
+		return AbstractHashCode.bigFromLong(cast(s).hash());
+	}
+
+	@Override
+	public byte[] bytesHashValue(WriteStream s) {
+		return AbstractHashCode.longToBytes(cast(s).hash());
+	}
+
+	@Override
+	public HashCode hash(WriteStream s) {
+		return new LongHashCode(cast(s).hash());
+	}
+
+	// object methods
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(seed);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof XxHash64Hash)) return false;
+		XxHash64Hash that = (XxHash64Hash) obj;
+		return this.seed == that.seed;
+	}
+
+	@Override
+	public String toString() {
+		return "xxHash 64 bits with seed " + seed;
+	}
+
+	// private helper methods
+
+	private XxStream cast(WriteStream stream) {
+		return (XxStream) stream;
+	}
+
+	// inner classes
+
+	static class XxStream implements WriteStream {
+
+		private long seed;
+		// the (len & 31) pending bytes of the current stripe, little-endian
+		private final long[] lanes = new long[4];
+		private long v1;
+		private long v2;
+		private long v3;
+		private long v4;
+		private long len;
+
+		XxStream(long seed) {
+			reset(seed);
+		}
+
+		void reset(long seed) {
+			this.seed = seed;
+			lanes[0] = 0L;
+			lanes[1] = 0L;
+			lanes[2] = 0L;
+			lanes[3] = 0L;
+			v1 = seed + P1 + P2;
+			v2 = seed + P2;
+			v3 = seed;
+			v4 = seed - P1;
+			len = 0L;
+		}
+
+		@Override
+		public void writeByte(byte v) {
+			int pos = (int) len & 31;
+			lanes[pos >>> 3] |= (v & 0xffL) << ((pos & 7) << 3);
+			if ((++len & 31) == 0) stripe();
+		}
+
+		@Override
+		public void writeBytes(byte[] vs) {
+			writeBytes(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeBytes(byte[] vs, int off, int len) {
+			final int lim = off + len;
+			int i = off;
+			// align to a stripe boundary
+			while (i < lim && (this.len & 31) != 0) writeByte(vs[i++]);
+			// consume whole stripes
+			final int start = i;
+			final int slim = lim - 31;
+			for (; i < slim; i += 32) {
+				v1 = round(v1, readLong(vs, i     ));
+				v2 = round(v2, readLong(vs, i +  8));
+				v3 = round(v3, readLong(vs, i + 16));
+				v4 = round(v4, readLong(vs, i + 24));
+			}
+			this.len += i - start;
+			// buffer the tail
+			while (i < lim) writeByte(vs[i++]);
+		}
+
+		// reads stripes using absolute gets, so the buffer's position is untouched
+		void writeBuffer(ByteBuffer buffer, int position, int limit) {
+			int i = position;
+			// align to a stripe boundary
+			while (i < limit && (len & 31) != 0) writeByte(buffer.get(i++));
+			// consume whole stripes, in the buffer's byte order if possible
+			final int start = i;
+			final int slim = limit - 31;
+			if (buffer.order() == ByteOrder.LITTLE_ENDIAN) {
+				for (; i < slim; i += 32) {
+					v1 = round(v1, buffer.getLong(i     ));
+					v2 = round(v2, buffer.getLong(i +  8));
+					v3 = round(v3, buffer.getLong(i + 16));
+					v4 = round(v4, buffer.getLong(i + 24));
+				}
+			} else {
+				for (; i < slim; i += 32) {
+					v1 = round(v1, Long.reverseBytes(buffer.getLong(i     )));
+					v2 = round(v2, Long.reverseBytes(buffer.getLong(i +  8)));
+					v3 = round(v3, Long.reverseBytes(buffer.getLong(i + 16)));
+					v4 = round(v4, Long.reverseBytes(buffer.getLong(i + 24)));
+				}
+			}
+			len += i - start;
+			// buffer the tail
+			while (i < limit) writeByte(buffer.get(i++));
+		}
+
+		@Override
+		public void writeBoolean(boolean v) {
+			writeByte((byte) (v ? -1 : 0));
+		}
+
+		@Override
+		public void writeShort(short v) {
+			write(Short.reverseBytes(v) & 0xffffL, 2);
+		}
+
+		@Override
+		public void writeChar(char v) {
+			write(Character.reverseBytes(v), 2);
+		}
+
+		@Override
+		public void writeInt(int v) {
+			write(Integer.reverseBytes(v) & 0xffffffffL, 4);
+		}
+
+		@Override
+		public void writeLong(long v) {
+			write(Long.reverseBytes(v), 8);
+		}
+
+		@Override
+		public void writeChars(char[] vs) {
+			writeChars(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeChars(char[] vs, int off, int len) {
+			final int lim = off + len;
+			int i = off;
+			if ((this.len & 1) == 0) {
+				// chars can be grouped into whole longs
+				while (i < lim && (this.len & 7) != 0) writeChar(vs[i++]);
+				final int blim = lim - 3;
+				for (; i < blim; i += 4) {
+					write(
+						(long) Character.reverseBytes(vs[i    ])       |
+						(long) Character.reverseBytes(vs[i + 1]) << 16 |
+						(long) Character.reverseBytes(vs[i + 2]) << 32 |
+						(long) Character.reverseBytes(vs[i + 3]) << 48,
+						8);
+				}
+			}
+			while (i < lim) writeChar(vs[i++]);
+		}
+
+		@Override
+		public void writeChars(CharSequence vs) {
+			// avoids copying strings into a char array
+			final int length = vs.length();
+			writeInt(length);
+			int i = 0;
+			if ((this.len & 1) == 0) {
+				while (i < length && (this.len & 7) != 0) writeChar(vs.charAt(i++));
+				final int blim = length - 3;
+				for (; i < blim; i += 4) {
+					write(
+						(long) Character.reverseBytes(vs.charAt(i    ))       |
+						(long) Character.reverseBytes(vs.charAt(i + 1)) << 16 |
+						(long) Character.reverseBytes(vs.charAt(i + 2)) << 32 |
+						(long) Character.reverseBytes(vs.charAt(i + 3)) << 48,
+						8);
+				}
+			}
+			while (i < length) writeChar(vs.charAt(i++));
+		}
+
+		long hash() {
+			long h;
+			if (len >= 32) {
+				h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+				h = merge(h, v1);
+				h = merge(h, v2);
+				h = merge(h, v3);
+				h = merge(h, v4);
+			} else {
+				h = seed + P5;
+			}
+			h += len;
+
+			// process the pending bytes
+
+			int rem = (int) len & 31;
+			int lane = 0;
+			for (; rem >= 8; rem -= 8) {
+				h ^= round(0L, lanes[lane++]);
+				h = Long.rotateLeft(h, 27) * P1 + P4;
+			}
+			long k = rem == 0 ? 0L : lanes[lane];
+			if (rem >= 4) {
+				h ^= (k & 0xffffffffL) * P1;
+				h = Long.rotateLeft(h, 23) * P2 + P3;
+				k >>>= 32;
+				rem -= 4;
+			}
+			for (; rem > 0; rem--) {
+				h ^= (k & 0xffL) * P5;
+				h = Long.rotateLeft(h, 11) * P1;
+				k >>>= 8;
+			}
+
+			return avalanche(h);
+		}
+
+		// writes n (at most 8) bytes, supplied little-endian in the low bits of w
+		private void write(long w, int n) {
+			int pos = (int) len & 31;
+			len += n;
+			int lane = pos >>> 3;
+			int off = pos & 7;
+			lanes[lane] |= w << (off << 3);
+			boolean spills = off + n > 8;
+			long spill = spills ? w >>> (64 - (off << 3)) : 0L;
+			if (pos + n >= 32) {
+				stripe();
+				lanes[0] = spill;
+			} else if (spills) {
+				lanes[lane + 1] = spill;
+			}
+		}
+
+		private void stripe() {
+			v1 = round(v1, lanes[0]);
+			v2 = round(v2, lanes[1]);
+			v3 = round(v3, lanes[2]);
+			v4 = round(v4, lanes[3]);
+			lanes[0] = 0L;
+			lanes[1] = 0L;
+			lanes[2] = 0L;
+			lanes[3] = 0L;
+		}
+
+		private static long readLong(byte[] vs, int i) {
+			return
+				(vs[i    ] & 0xffL)       |
+				(vs[i + 1] & 0xffL) <<  8 |
+				(vs[i + 2] & 0xffL) << 16 |
+				(vs[i + 3] & 0xffL) << 24 |
+				(vs[i + 4] & 0xffL) << 32 |
+				(vs[i + 5] & 0xffL) << 40 |
+				(vs[i + 6] & 0xffL) << 48 |
+				(vs[i + 7] & 0xffL) << 56 ;
+		}
+
+	}
+
+}
@@ -0,0 +1,714 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import static com.tomgibara.hashing.XxHash64Hash.P1;
+import static com.tomgibara.hashing.XxHash64Hash.P2;
+import static com.tomgibara.hashing.XxHash64Hash.P3;
+import static com.tomgibara.hashing.XxHash64Hash.P4;
+import static com.tomgibara.hashing.XxHash64Hash.P5;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.tomgibara.streams.WriteStream;
+
+// See https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md (XXH3)
+// the 128 bit hash value is high * 2^64 + low, so that the long value is low
+
+final class Xxh3Hash implements Hash {
+
+	static final int SECRET_SIZE_MIN = 136;
+
+	private static final long P32_1 = 0x9E3779B1L;
+	private static final long P32_2 = 0x85EBCA77L;
+	private static final long P32_3 = 0xC2B2AE3DL;
+	private static final long PRIME_MX1 = 0x165667919E3779F9L;
+	private static final long PRIME_MX2 = 0x9FB21C651E98DF25L;
+
+	private static final long[] INIT_ACC = { P32_3, P1, P2, P3, P4, P32_2, P5, P32_1 };
+
+	private static final int STRIPE_LEN = 64;
+	private static final int BUFFER_SIZE = 256;
+	private static final int MIDSIZE_MAX = 240;
+	private static final int MIDSIZE_STARTOFFSET = 3;
+	private static final int MIDSIZE_LASTOFFSET = 17;
+	private static final int SECRET_MERGEACCS_START = 11;
+	private static final int SECRET_LASTACC_START = 7;
+
+	private static final byte[] kSecret = {
+		(byte) 0xb8, (byte) 0xfe, (byte) 0x6c, (byte) 0x39, (byte) 0x23, (byte) 0xa4, (byte) 0x4b, (byte) 0xbe, (byte) 0x7c, (byte) 0x01, (byte) 0x81, (byte) 0x2c, (byte) 0xf7, (byte) 0x21, (byte) 0xad, (byte) 0x1c,
+		(byte) 0xde, (byte) 0xd4, (byte) 0x6d, (byte) 0xe9, (byte) 0x83, (byte) 0x90, (byte) 0x97, (byte) 0xdb, (byte) 0x72, (byte) 0x40, (byte) 0xa4, (byte) 0xa4, (byte) 0xb7, (byte) 0xb3, (byte) 0x67, (byte) 0x1f,
+		(byte) 0xcb, (byte) 0x79, (byte) 0xe6, (byte) 0x4e, (byte) 0xcc, (byte) 0xc0, (byte) 0xe5, (byte) 0x78, (byte) 0x82, (byte) 0x5a, (byte) 0xd0, (byte) 0x7d, (byte) 0xcc, (byte) 0xff, (byte) 0x72, (byte) 0x21,
+		(byte) 0xb8, (byte) 0x08, (byte) 0x46, (byte) 0x74, (byte) 0xf7, (byte) 0x43, (byte) 0x24, (byte) 0x8e, (byte) 0xe0, (byte) 0x35, (byte) 0x90, (byte) 0xe6, (byte) 0x81, (byte) 0x3a, (byte) 0x26, (byte) 0x4c,
+		(byte) 0x3c, (byte) 0x28, (byte) 0x52, (byte) 0xbb, (byte) 0x91, (byte) 0xc3, (byte) 0x00, (byte) 0xcb, (byte) 0x88, (byte) 0xd0, (byte) 0x65, (byte) 0x8b, (byte) 0x1b, (byte) 0x53, (byte) 0x2e, (byte) 0xa3,
+		(byte) 0x71, (byte) 0x64, (byte) 0x48, (byte) 0x97, (byte) 0xa2, (byte) 0x0d, (byte) 0xf9, (byte) 0x4e, (byte) 0x38, (byte) 0x19, (byte) 0xef, (byte) 0x46, (byte) 0xa9, (byte) 0xde, (byte) 0xac, (byte) 0xd8,
+		(byte) 0xa8, (byte) 0xfa, (byte) 0x76, (byte) 0x3f, (byte) 0xe3, (byte) 0x9c, (byte) 0x34, (byte) 0x3f, (byte) 0xf9, (byte) 0xdc, (byte) 0xbb, (byte) 0xc7, (byte) 0xc7, (byte) 0x0b, (byte) 0x4f, (byte) 0x1d,
+		(byte) 0x8a, (byte) 0x51, (byte) 0xe0, (byte) 0x4b, (byte) 0xcd, (byte) 0xb4, (byte) 0x59, (byte) 0x31, (byte) 0xc8, (byte) 0x9f, (byte) 0x7e, (byte) 0xc9, (byte) 0xd9, (byte) 0x78, (byte) 0x73, (byte) 0x64,
+		(byte) 0xea, (byte) 0xc5, (byte) 0xac, (byte) 0x83, (byte) 0x34, (byte) 0xd3, (byte) 0xeb, (byte) 0xc3, (byte) 0xc5, (byte) 0x81, (byte) 0xa0, (byte) 0xff, (byte) 0xfa, (byte) 0x13, (byte) 0x63, (byte) 0xeb,
+		(byte) 0x17, (byte) 0x0d, (byte) 0xdd, (byte) 0x51, (byte) 0xb7, (byte) 0xf0, (byte) 0xda, (byte) 0x49, (byte) 0xd3, (byte) 0x16, (byte) 0x55, (byte) 0x26, (byte) 0x29, (byte) 0xd4, (byte) 0x68, (byte) 0x9e,
+		(byte) 0x2b, (byte) 0x16, (byte) 0xbe, (byte) 0x58, (byte) 0x7d, (byte) 0x47, (byte) 0xa1, (byte) 0xfc, (byte) 0x8f, (byte) 0xf8, (byte) 0xb8, (byte) 0xd1, (byte) 0x7a, (byte) 0xd0, (byte) 0x31, (byte) 0xce,
+		(byte) 0x45, (byte) 0xcb, (byte) 0x3a, (byte) 0x8f, (byte) 0x95, (byte) 0x16, (byte) 0x04, (byte) 0x28, (byte) 0xaf, (byte) 0xd7, (byte) 0xfb, (byte) 0xca, (byte) 0xbb, (byte) 0x4b, (byte) 0x40, (byte) 0x7e,
+	};
+
+	private static final Xxh3Hash instance64 = new Xxh3Hash(false, 0L, null);
+	private static final Xxh3Hash instance128 = new Xxh3Hash(true, 0L, null);
+
+	static Xxh3Hash instance(boolean wide) { return wide ? instance128 : instance64; }
+
+	static Xxh3Hash instance(boolean wide, long seed) { return seed == 0L ? instance(wide) : new Xxh3Hash(wide, seed, null); }
+
+	static Xxh3Hash instance(boolean wide, byte[] secret) {
+		if (secret == null) throw new IllegalArgumentException("null secret");
+		if (secret.length < SECRET_SIZE_MIN) throw new IllegalArgumentException("secret too short");
+		return new Xxh3Hash(wide, 0L, secret.clone());
+	}
+
+	// primitive operations
+
+	static long readLong(byte[] bs, int i) {
+		return
+			(bs[i    ] & 0xffL)       |
+			(bs[i + 1] & 0xffL) <<  8 |
+			(bs[i + 2] & 0xffL) << 16 |
+			(bs[i + 3] & 0xffL) << 24 |
+			(bs[i + 4] & 0xffL) << 32 |
+			(bs[i + 5] & 0xffL) << 40 |
+			(bs[i + 6] & 0xffL) << 48 |
+			(bs[i + 7] & 0xffL) << 56 ;
+	}
+
+	static long readInt(byte[] bs, int i) {
+		return
+			(bs[i    ] & 0xffL)       |
+			(bs[i + 1] & 0xffL) <<  8 |
+			(bs[i + 2] & 0xffL) << 16 |
+			(bs[i + 3] & 0xffL) << 24 ;
+	}
+
+	// the high 64 bits of the unsigned 128 bit product
+	static long multiplyHigh(long a, long b) {
+		long aLo = a & 0xffffffffL;
+		long aHi = a >>> 32;
+		long bLo = b & 0xffffffffL;
+		long bHi = b >>> 32;
+		long loLo = aLo * bLo;
+		long hiLo = aHi * bLo;
+		long loHi = aLo * bHi;
+		long hiHi = aHi * bHi;
+		long cross = (loLo >>> 32) + (hiLo & 0xffffffffL) + loHi;
+		return (hiLo >>> 32) + (cross >>> 32) + hiHi;
+	}
+
+	private static long fold(long a, long b) {
+		return a * b ^ multiplyHigh(a, b);
+	}
+
+	private static long avalanche(long h) {
+		h ^= h >>> 37;
+		h *= PRIME_MX1;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	private static long rrmxmx(long h, int len) {
+		h ^= Long.rotateLeft(h, 49) ^ Long.rotateLeft(h, 24);
+		h *= PRIME_MX2;
+		h ^= (h >>> 35) + len;
+		h *= PRIME_MX2;
+		h ^= h >>> 28;
+		return h;
+	}
+
+	private static long mix16(byte[] in, int i, byte[] secret, int s, long seed) {
+		return fold(
+				readLong(in, i    ) ^ (readLong(secret, s    ) + seed),
+				readLong(in, i + 8) ^ (readLong(secret, s + 8) - seed)
+				);
+	}
+
+	private static byte[] deriveSecret(long seed) {
+		if (seed == 0L) return kSecret;
+		byte[] secret = new byte[kSecret.length];
+		for (int i = 0; i < secret.length; i += 16) {
+			writeLong(secret, i    , readLong(kSecret, i    ) + seed);
+			writeLong(secret, i + 8, readLong(kSecret, i + 8) - seed);
+		}
+		return secret;
+	}
+
+	private static void writeLong(byte[] bs, int i, long v) {
+		for (int j = 0; j < 8; j++) {
+			bs[i + j] = (byte) v;
+			v >>>= 8;
+		}
+	}
+
+	// short inputs - 64 bits
+
+	static long hash64(byte[] in, int len, byte[] secret, long seed) {
+		if (len <= 16) {
+			if (len > 8) {
+				long bitflip1 = (readLong(secret, 24) ^ readLong(secret, 32)) + seed;
+				long bitflip2 = (readLong(secret, 40) ^ readLong(secret, 48)) - seed;
+				long lo = readLong(in, 0) ^ bitflip1;
+				long hi = readLong(in, len - 8) ^ bitflip2;
+				long acc = len + Long.reverseBytes(lo) + hi + fold(lo, hi);
+				return avalanche(acc);
+			}
+			if (len >= 4) {
+				seed ^= (Integer.reverseBytes((int) seed) & 0xffffffffL) << 32;
+				long in1 = readInt(in, 0);
+				long in2 = readInt(in, len - 4);
+				long bitflip = (readLong(secret, 8) ^ readLong(secret, 16)) - seed;
+				long in64 = in2 + (in1 << 32);
+				return rrmxmx(in64 ^ bitflip, len);
+			}
+			if (len > 0) {
+				int c1 = in[0] & 0xff;
+				int c2 = in[len >> 1] & 0xff;
+				int c3 = in[len - 1] & 0xff;
+				long combined = ((c1 << 16) | (c2 << 24) | c3 | (len << 8)) & 0xffffffffL;
+				long bitflip = (readInt(secret, 0) ^ readInt(secret, 4)) + seed;
+				return XxHash64Hash.avalanche(combined ^ bitflip);
+			}
+			return XxHash64Hash.avalanche(seed ^ readLong(secret, 56) ^ readLong(secret, 64));
+		}
+		long acc = len * P1;
+		if (len <= 128) {
+			if (len > 32) {
+				if (len > 64) {
+					if (len > 96) {
+						acc += mix16(in, 48, secret, 96, seed);
+						acc += mix16(in, len - 64, secret, 112, seed);
+					}
+					acc += mix16(in, 32, secret, 64, seed);
+					acc += mix16(in, len - 48, secret, 80, seed);
+				}
+				acc += mix16(in, 16, secret, 32, seed);
+				acc += mix16(in, len - 32, secret, 48, seed);
+			}
+			acc += mix16(in, 0, secret, 0, seed);
+			acc += mix16(in, len - 16, secret, 16, seed);
+			return avalanche(acc);
+		}
+		int rounds = len / 16;
+		for (int i = 0; i < 8; i++) {
+			acc += mix16(in, 16 * i, secret, 16 * i, seed);
+		}
+		acc = avalanche(acc);
+		for (int i = 8; i < rounds; i++) {
+			acc += mix16(in, 16 * i, secret, 16 * (i - 8) + MIDSIZE_STARTOFFSET, seed);
+		}
+		acc += mix16(in, len - 16, secret, SECRET_SIZE_MIN - MIDSIZE_LASTOFFSET, seed);
+		return avalanche(acc);
+	}
+
+	// short inputs - 128 bits, records the low and high bits in out[0] and out[1]
+
+	static void hash128(byte[] in, int len, byte[] secret, long seed, long[] out) {
+		if (len <= 16) {
+			if (len > 8) {
+				long bitflipl = (readLong(secret, 32) ^ readLong(secret, 40)) - seed;
+				long bitfliph = (readLong(secret, 48) ^ readLong(secret, 56)) + seed;
+				long inLo = readLong(in, 0);
+				long inHi = readLong(in, len - 8);
+				long mLo = (inLo ^ inHi ^ bitflipl);
+				long mHi = multiplyHigh(mLo, P1);
+				mLo *= P1;
+				mLo += (long) (len - 1) << 54;
+				inHi ^= bitfliph;
+				mHi += inHi + (inHi & 0xffffffffL) * (P32_2 - 1);
+				mLo ^= Long.reverseBytes(mHi);
+				long hLo = mLo * P2;
+				long hHi = multiplyHigh(mLo, P2) + mHi * P2;
+				out[0] = avalanche(hLo);
+				out[1] = avalanche(hHi);
+				return;
+			}
+			if (len >= 4) {
+				seed ^= (Integer.reverseBytes((int) seed) & 0xffffffffL) << 32;
+				long inLo = readInt(in, 0);
+				long inHi = readInt(in, len - 4);
+				long in64 = inLo + (inHi << 32);
+				long bitflip = (readLong(secret, 16) ^ readLong(secret, 24)) + seed;
+				long keyed = in64 ^ bitflip;
+				long m = P1 + (len << 2);
+				long mLo = keyed * m;
+				long mHi = multiplyHigh(keyed, m);
+				mHi += mLo << 1;
+				mLo ^= mHi >>> 3;
+				mLo ^= mLo >>> 35;
+				mLo *= PRIME_MX2;
+				mLo ^= mLo >>> 28;
+				out[0] = mLo;
+				out[1] = avalanche(mHi);
+				return;
+			}
+			if (len > 0) {
+				int c1 = in[0] & 0xff;
+				int c2 = in[len >> 1] & 0xff;
+				int c3 = in[len - 1] & 0xff;
+				int combinedl = (c1 << 16) | (c2 << 24) | c3 | (len << 8);
+				int combinedh = Integer.rotateLeft(Integer.reverseBytes(combinedl), 13);
+				long bitflipl = (readInt(secret, 0) ^ readInt(secret, 4)) + seed;
+				long bitfliph = (readInt(secret, 8) ^ readInt(secret, 12)) - seed;
+				out[0] = XxHash64Hash.avalanche((combinedl & 0xffffffffL) ^ bitflipl);
+				out[1] = XxHash64Hash.avalanche((combinedh & 0xffffffffL) ^ bitfliph);
+				return;
+			}
+			out[0] = XxHash64Hash.avalanche(seed ^ readLong(secret, 64) ^ readLong(secret, 72));
+			out[1] = XxHash64Hash.avalanche(seed ^ readLong(secret, 80) ^ readLong(secret, 88));
+			return;
+		}
+		// the output doubles as the accumulator
+		long[] acc = out;
+		acc[0] = len * P1;
+		acc[1] = 0L;
+		if (len <= 128) {
+			if (len > 32) {
+				if (len > 64) {
+					if (len > 96) {
+						mix32(acc, in, 48, len - 64, secret, 96, seed);
+					}
+					mix32(acc, in, 32, len - 48, secret, 64, seed);
+				}
+				mix32(acc, in, 16, len - 32, secret, 32, seed);
+			}
+			mix32(acc, in, 0, len - 16, secret, 0, seed);
+		} else {
+			int rounds = len / 32;
+			for (int i = 0; i < 4; i++) {
+				mix32(acc, in, 32 * i, 32 * i + 16, secret, 32 * i, seed);
+			}
+			acc[0] = avalanche(acc[0]);
+			acc[1] = avalanche(acc[1]);
+			for (int i = 4; i < rounds; i++) {
+				mix32(acc, in, 32 * i, 32 * i + 16, secret, MIDSIZE_STARTOFFSET + 32 * (i - 4), seed);
+			}
+			mix32(acc, in, len - 16, len - 32, secret, SECRET_SIZE_MIN - MIDSIZE_LASTOFFSET - 16, -seed);
+		}
+		long lo = acc[0] + acc[1];
+		long hi = acc[0] * P1 + acc[1] * P4 + (len - seed) * P2;
+		out[0] = avalanche(lo);
+		out[1] = -avalanche(hi);
+	}
+
+	private static void mix32(long[] acc, byte[] in, int i1, int i2, byte[] secret, int s, long seed) {
+		acc[0] += mix16(in, i1, secret, s, seed);
+		acc[0] ^= readLong(in, i2) + readLong(in, i2 + 8);
+		acc[1] += mix16(in, i2, secret, s + 16, seed);
+		acc[1] ^= readLong(in, i1) + readLong(in, i1 + 8);
+	}
+
+	// long inputs
+
+	private static void accumulate(long[] acc, byte[] in, int i, byte[] secret, int s) {
+		for (int j = 0; j < 8; j++) {
+			long value = readLong(in, i + 8 * j);
+			long key = value ^ readLong(secret, s + 8 * j);
+			acc[j ^ 1] += value;
+			acc[j] += (key & 0xffffffffL) * (key >>> 32);
+		}
+	}
+
+	// as above, but reading from a little-endian buffer
+	private static void accumulate(long[] acc, ByteBuffer in, int i, byte[] secret, int s) {
+		for (int j = 0; j < 8; j++) {
+			long value = in.getLong(i + 8 * j);
+			long key = value ^ readLong(secret, s + 8 * j);
+			acc[j ^ 1] += value;
+			acc[j] += (key & 0xffffffffL) * (key >>> 32);
+		}
+	}
+
+	private static void scramble(long[] acc, byte[] secret, int s) {
+		for (int j = 0; j < 8; j++) {
+			long a = acc[j];
+			a ^= a >>> 47;
+			a ^= readLong(secret, s + 8 * j);
+			a *= P32_1;
+			acc[j] = a;
+		}
+	}
+
+	private static long merge(long[] acc, byte[] secret, int s, long start) {
+		long result = start;
+		for (int j = 0; j < 4; j++) {
+			result += fold(acc[2 * j] ^ readLong(secret, s + 16 * j), acc[2 * j + 1] ^ readLong(secret, s + 16 * j + 8));
+		}
+		return avalanche(result);
+	}
+
+	// fields
+
+	private final boolean wide;
+	private final long seed;
+	// used for inputs of at most MIDSIZE_MAX bytes
+	private final byte[] shortSecret;
+	private final long shortSeed;
+	// used for longer inputs
+	private final byte[] longSecret;
+
+	private Xxh3Hash(boolean wide, long seed, byte[] secret) {
+		this.wide = wide;
+		this.seed = seed;
+		if (secret == null) {
+			shortSecret = kSecret;
+			shortSeed = seed;
+			longSecret = deriveSecret(seed);
+		} else {
+			shortSecret = secret;
+			shortSeed = 0L;
+			longSecret = secret;
+		}
+	}
+
+	// hash methods
+
+	@Override
+	public HashSize getSize() {
+		return wide ? Long128HashCode.SIZE : HashSize.LONG_SIZE;
+	}
+
+	@Override
+	public WriteStream newStream() {
+		return new Xxh3Stream();
+	}
+
+	@Override
+	public WriteStream resetStream(WriteStream s) {
+		Xxh3Stream stream = cast(s);
+		// streams are bound to the secret of the hash that created them
+		if (stream.owner() != this) return newStream();
+		stream.reset();
+		return stream;
+	}
+
+	@Override
+	public void writeBuffer(WriteStream stream, ByteBuffer buffer, int position, int limit) {
+		MappedWindows.checkBuffer(stream, buffer, position, limit);
+		cast(stream).writeBuffer(buffer, position, limit);
+	}
+
+	@Override
+	public Hash seeded(long seed) {
+		// seeds cannot be combined with custom secrets
+		if (shortSecret != kSecret) return Hash.super.seeded(seed);
+		return new Xxh3Hash(wide, this.seed ^ SeededHash.diffuse(seed), null);
+	}
+
+	@Override
+	public int intHashValue(WriteStream s) {
+		return (int) cast(s).hash();
+	}
+
+	@Override
+	public long longHashValue(WriteStream s) {
+		return cast(s).hash();
+	}
+
+	@Override
+	public BigInteger bigHashValue(WriteStream s) {
+		Xxh3Stream stream = cast(s);
+		long lo = stream.hash();
+		return wide ? Long128HashCode.bigFromLongs(stream.hi, lo) : AbstractHashCode.bigFromLong(lo);
+	}
+
+	@Override
+	public byte[] bytesHashValue(WriteStream s) {
+		Xxh3Stream stream = cast(s);
+		long lo = stream.hash();
+		return wide ? Long128HashCode.bytesFromLongs(stream.hi, lo) : AbstractHashCode.longToBytes(lo);
+	}
+
+	@Override
+	public HashCode hash(WriteStream s) {
+		Xxh3Stream stream = cast(s);
+		long lo = stream.hash();
+		return wide ? new Long128HashCode(stream.hi, lo) : new LongHashCode(lo);
+	}
+
+	// object methods
+
+	@Override
+	public int hashCode() {
+		return Long.hashCode(seed) + Arrays.hashCode(longSecret) + (wide ? 1 : 0);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof Xxh3Hash)) return false;
+		Xxh3Hash that = (Xxh3Hash) obj;
+		if (this.wide != that.wide) return false;
+		if (this.seed != that.seed) return false;
+		if (this.shortSecret != that.shortSecret && !Arrays.equals(this.shortSecret, that.shortSecret)) return false;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		String str = "XXH3 " + (wide ? 128 : 64) + " bits";
+		return shortSecret == kSecret ? str + " with seed " + seed : str + " with custom secret";
+	}
+
+	// private helper methods
+
+	private Xxh3Stream cast(WriteStream stream) {
+		return (Xxh3Stream) stream;
+	}
+
+	// inner classes
+
+	final class Xxh3Stream implements WriteStream {
+
+		// buffered input is only consumed when more input arrives
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int buffered = 0;
+		private long total = 0L;
+		private final long[] acc = INIT_ACC.clone();
+		private int stripes = 0;
+		private final long[] pair = new long[2];
+		private byte[] last = null;
+		// the high bits of a 128 bit hash
+		long hi;
+
+		void reset() {
+			buffered = 0;
+			total = 0L;
+			System.arraycopy(INIT_ACC, 0, acc, 0, INIT_ACC.length);
+			stripes = 0;
+			hi = 0L;
+		}
+
+		Xxh3Hash owner() {
+			return Xxh3Hash.this;
+		}
+
+		@Override
+		public void writeByte(byte v) {
+			if (buffered == BUFFER_SIZE) flush();
+			buffer[buffered++] = v;
+			total++;
+		}
+
+		@Override
+		public void writeBytes(byte[] vs) {
+			writeBytes(vs, 0, vs.length);
+		}
+
+		@Override
+		public void writeBytes(byte[] vs, int off, int len) {
+			total += len;
+			if (buffered + len <= BUFFER_SIZE) {
+				System.arraycopy(vs, off, buffer, buffered, len);
+				buffered += len;
+				return;
+			}
+			// top-up the buffer and consume it
+			if (buffered > 0) {
+				int load = BUFFER_SIZE - buffered;
+				System.arraycopy(vs, off, buffer, buffered, load);
+				off += load;
+				len -= load;
+				consume(buffer, 0, BUFFER_SIZE / STRIPE_LEN);
+				buffered = 0;
+			}
+			// consume directly from the array, always retaining some input
+			if (len > BUFFER_SIZE) {
+				int lim = off + len - BUFFER_SIZE;
+				do {
+					consume(vs, off, BUFFER_SIZE / STRIPE_LEN);
+					off += BUFFER_SIZE;
+					len -= BUFFER_SIZE;
+				} while (off < lim);
+				// keep the last stripe in case it is needed to finish
+				System.arraycopy(vs, off - STRIPE_LEN, buffer, BUFFER_SIZE - STRIPE_LEN, STRIPE_LEN);
+			}
+			System.arraycopy(vs, off, buffer, 0, len);
+			buffered = len;
+		}
+
+		// mirrors writeBytes, reading stripes using absolute gets so the source's position is untouched
+		void writeBuffer(ByteBuffer source, int position, int limit) {
+			// a little-endian view shares content, and spares accumulating in both byte orders
+			ByteBuffer in = source.order() == ByteOrder.LITTLE_ENDIAN ? source : source.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+			int off = position;
+			int len = limit - position;
+			total += len;
+			if (buffered + len <= BUFFER_SIZE) {
+				copy(in, off, buffered, len);
+				buffered += len;
+				return;
+			}
+			// top-up the buffer and consume it
+			if (buffered > 0) {
+				int load = BUFFER_SIZE - buffered;
+				copy(in, off, buffered, load);
+				off += load;
+				len -= load;
+				consume(buffer, 0, BUFFER_SIZE / STRIPE_LEN);
+				buffered = 0;
+			}
+			// consume directly from the source, always retaining some input
+			if (len > BUFFER_SIZE) {
+				int lim = off + len - BUFFER_SIZE;
+				do {
+					consume(in, off, BUFFER_SIZE / STRIPE_LEN);
+					off += BUFFER_SIZE;
+					len -= BUFFER_SIZE;
+				} while (off < lim);
+				// keep the last stripe in case it is needed to finish
+				copy(in, off - STRIPE_LEN, BUFFER_SIZE - STRIPE_LEN, STRIPE_LEN);
+			}
+			copy(in, off, 0, len);
+			buffered = len;
+		}
+
+		@Override
+		public void writeBoolean(boolean v) {
+			writeByte((byte) (v ? -1 : 0));
+		}
+
+		@Override
+		public void writeShort(short v) {
+			if (buffered + 2 > BUFFER_SIZE) {
+				WriteStream.super.writeShort(v);
+				return;
+			}
+			buffer[buffered++] = (byte) (v >> 8);
+			buffer[buffered++] = (byte) (v     );
+			total += 2;
+		}
+
+		@Override
+		public void writeChar(char v) {
+			if (buffered + 2 > BUFFER_SIZE) {
+				WriteStream.super.writeChar(v);
+				return;
+			}
+			buffer[buffered++] = (byte) (v >> 8);
+			buffer[buffered++] = (byte) (v     );
+			total += 2;
+		}
+
+		@Override
+		public void writeInt(int v) {
+			if (buffered + 4 > BUFFER_SIZE) {
+				WriteStream.super.writeInt(v);
+				return;
+			}
+			buffer[buffered++] = (byte) (v >> 24);
+			buffer[buffered++] = (byte) (v >> 16);
+			buffer[buffered++] = (byte) (v >>  8);
+			buffer[buffered++] = (byte) (v      );
+			total += 4;
+		}
+
+		@Override
+		public void writeLong(long v) {
+			if (buffered + 8 > BUFFER_SIZE) {
+				WriteStream.super.writeLong(v);
+				return;
+			}
+			buffer[buffered++] = (byte) (v >> 56);
+			buffer[buffered++] = (byte) (v >> 48);
+			buffer[buffered++] = (byte) (v >> 40);
+			buffer[buffered++] = (byte) (v >> 32);
+			buffer[buffered++] = (byte) (v >> 24);
+			buffer[buffered++] = (byte) (v >> 16);
+			buffer[buffered++] = (byte) (v >>  8);
+			buffer[buffered++] = (byte) (v      );
+			total += 8;
+		}
+
+		@Override
+		public void writeChars(CharSequence vs) {
+			// avoids copying strings into a char array
+			final int length = vs.length();
+			writeInt(length);
+			for (int i = 0; i < length; i++) {
+				writeChar(vs.charAt(i));
+			}
+		}
+
+		// returns the low bits, leaving any high bits available
+		long hash() {
+			if (total <= MIDSIZE_MAX) {
+				int len = (int) total;
+				if (!wide) return hash64(buffer, len, shortSecret, shortSeed);
+				hash128(buffer, len, shortSecret, shortSeed, pair);
+				hi = pair[1];
+				return pair[0];
+			}
+			int limit = longSecret.length - STRIPE_LEN;
+			if (buffered >= STRIPE_LEN) {
+				consume(buffer, 0, (buffered - 1) / STRIPE_LEN);
+				accumulate(acc, buffer, buffered - STRIPE_LEN, longSecret, limit - SECRET_LASTACC_START);
+			} else {
+				// the last stripe straddles the start and end of the buffer
+				if (last == null) last = new byte[STRIPE_LEN];
+				int catchup = STRIPE_LEN - buffered;
+				System.arraycopy(buffer, BUFFER_SIZE - catchup, last, 0, catchup);
+				System.arraycopy(buffer, 0, last, catchup, buffered);
+				accumulate(acc, last, 0, longSecret, limit - SECRET_LASTACC_START);
+			}
+			long lo = merge(acc, longSecret, SECRET_MERGEACCS_START, total * P1);
+			if (wide) hi = merge(acc, longSecret, limit - SECRET_MERGEACCS_START, ~(total * P2));
+			return lo;
+		}
+
+		private void flush() {
+			consume(buffer, 0, BUFFER_SIZE / STRIPE_LEN);
+			buffered = 0;
+		}
+
+		private void consume(ByteBuffer in, int off, int count) {
+			int limit = longSecret.length - STRIPE_LEN;
+			int perBlock = limit / 8;
+			for (int i = 0; i < count; i++) {
+				accumulate(acc, in, off + i * STRIPE_LEN, longSecret, stripes * 8);
+				if (++stripes == perBlock) {
+					scramble(acc, longSecret, limit);
+					stripes = 0;
+				}
+			}
+		}
+
+		// copies at most BUFFER_SIZE bytes from the buffer into the stream's buffer
+		private void copy(ByteBuffer in, int off, int to, int len) {
+			for (int i = 0; i < len; i++) buffer[to + i] = in.get(off + i);
+		}
+
+		private void consume(byte[] in, int off, int count) {
+			int limit = longSecret.length - STRIPE_LEN;
+			int perBlock = limit / 8;
+			for (int i = 0; i < count; i++) {
+				accumulate(acc, in, off + i * STRIPE_LEN, longSecret, stripes * 8);
+				if (++stripes == perBlock) {
+					scramble(acc, longSecret, limit);
+					stripes = 0;
+				}
+			}
+		}
+
+	}
+
+}
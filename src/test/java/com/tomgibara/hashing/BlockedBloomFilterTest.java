@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class BlockedBloomFilterTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+
+	public void testNoFalseNegatives() {
+		BlockedBloomFilter<Integer> filter = BlockedBloomFilter.withRate(hasher, 10000, 0.01);
+		for (int i = 0; i < 10000; i++) filter.add(i);
+		for (int i = 0; i < 10000; i++) assertTrue(filter.mightContain(i));
+	}
+
+	public void testFalsePositiveRate() {
+		// more hashes than fit in a single long of offsets
+		testFalsePositiveRate(0.01);
+		testFalsePositiveRate(0.0001);
+	}
+
+	private void testFalsePositiveRate(double rate) {
+		BlockedBloomFilter<Integer> filter = BlockedBloomFilter.withRate(hasher, 20000, rate);
+		for (int i = 0; i < 20000; i++) filter.add(i);
+		int positives = 0;
+		int trials = 1000000;
+		for (int i = 20000; i < 20000 + trials; i++) {
+			if (filter.mightContain(i)) positives++;
+		}
+		double actual = (double) positives / trials;
+		assertTrue("false positive rate " + actual, actual < rate * 1.3);
+	}
+
+	public void testMightContainAll() {
+		BlockedBloomFilter<Integer> filter = BlockedBloomFilter.withRate(hasher, 1000, 0.01);
+		for (int i = 0; i < 1000; i += 2) filter.add(i);
+		List<Integer> values = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) values.add(i);
+		boolean[] results = new boolean[values.size()];
+		int count = filter.mightContainAll(values, results);
+		int expected = 0;
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(filter.mightContain(i), results[i]);
+			if (results[i]) expected++;
+		}
+		assertEquals(expected, count);
+		assertTrue(count >= 500);
+	}
+
+	public void testUnion() {
+		BlockedBloomFilter<Integer> a = BlockedBloomFilter.withRate(hasher, 1000, 0.01);
+		BlockedBloomFilter<Integer> b = BlockedBloomFilter.withRate(hasher, 1000, 0.01);
+		for (int i = 0; i < 500; i++) a.add(i);
+		for (int i = 500; i < 1000; i++) b.add(i);
+		a.unionWith(b);
+		for (int i = 0; i < 1000; i++) assertTrue(a.mightContain(i));
+	}
+
+	public void testIntersectAndCopy() {
+		BlockedBloomFilter<Integer> a = BlockedBloomFilter.withRate(hasher, 1000, 0.01);
+		BlockedBloomFilter<Integer> b = BlockedBloomFilter.withRate(hasher, 1000, 0.01);
+		for (int i = 0; i < 500; i++) a.add(i);
+		for (int i = 250; i < 750; i++) b.add(i);
+
+		BlockedBloomFilter<Integer> copy = a.copy();
+		assertTrue(copy.isCompatible(a));
+		assertEquals(a.getSetBitCount(), copy.getSetBitCount());
+		// the copy is independent of the original
+		BlockedBloomFilter<Integer> empty = BlockedBloomFilter.withRate(hasher, 1000, 0.01);
+		BlockedBloomFilter<Integer> added = empty.copy();
+		added.add(1);
+		assertTrue(added.mightContain(1));
+		assertEquals(0L, empty.getSetBitCount());
+
+		BlockedBloomFilter<Integer> intersection = a.copy();
+		intersection.intersectWith(b);
+		for (int i = 250; i < 500; i++) assertTrue(intersection.mightContain(i));
+		int positives = 0;
+		for (int i = 0; i < 250; i++) if (intersection.mightContain(i)) positives++;
+		assertTrue(positives < 50);
+
+		try {
+			a.intersectWith(BlockedBloomFilter.withRate(hasher, 2000, 0.01));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testAddReportsModification() {
+		BlockedBloomFilter<Integer> filter = BlockedBloomFilter.withRate(hasher, 100, 0.01);
+		assertTrue(filter.add(1));
+		assertFalse(filter.add(1));
+		assertEquals(filter.getHashCount(), filter.getSetBitCount());
+	}
+
+}
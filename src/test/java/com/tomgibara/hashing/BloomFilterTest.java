@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+public class BloomFilterTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+
+	public void testSizing() {
+		BloomFilter<Integer> filter = BloomFilter.withRate(hasher, 1000, 0.01);
+		// ~9.59 bits and ~6.64 hashes per object
+		assertEquals(9600, filter.getBitCount());
+		assertEquals(7, filter.getHashCount());
+	}
+
+	public void testNoFalseNegatives() {
+		BloomFilter<Integer> filter = BloomFilter.withRate(hasher, 10000, 0.01);
+		for (int i = 0; i < 10000; i++) filter.add(i);
+		for (int i = 0; i < 10000; i++) assertTrue(filter.mightContain(i));
+	}
+
+	public void testFalsePositiveRate() {
+		testFalsePositiveRate(hasher);
+		// int sized hashers are spread over the filter
+		testFalsePositiveRate(Hashing.murmur3Int().hasher((i, s) -> s.writeInt(i)));
+	}
+
+	private void testFalsePositiveRate(Hasher<Integer> hasher) {
+		BloomFilter<Integer> filter = BloomFilter.withRate(hasher, 10000, 0.01);
+		for (int i = 0; i < 10000; i++) filter.add(i);
+		int positives = 0;
+		for (int i = 10000; i < 110000; i++) {
+			if (filter.mightContain(i)) positives++;
+		}
+		assertTrue("false positives " + positives, positives > 500 && positives < 1500);
+		assertEquals(0.01, filter.getFalsePositiveRate(), 0.005);
+		assertEquals(10000.0, filter.getEstimatedCount(), 300.0);
+	}
+
+	public void testAddReportsModification() {
+		BloomFilter<Integer> filter = BloomFilter.withRate(hasher, 100, 0.01);
+		assertTrue(filter.add(1));
+		assertFalse(filter.add(1));
+	}
+
+	public void testLargeBitCount() {
+		// indices must be able to exceed the range of an int
+		long bitCount = 1L << 36;
+		long max = 0L;
+		for (long h = 0L; h < 1000L; h++) {
+			long index = Indices.reduce(Indices.mix(h), bitCount);
+			assertTrue(index >= 0L && index < bitCount);
+			max = Math.max(max, index);
+		}
+		assertTrue(max > Integer.MAX_VALUE);
+		try {
+			BloomFilter.withSize(hasher, (1L << 37) + 1, 3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testMerges() {
+		BloomFilter<Integer> a = BloomFilter.withRate(hasher, 1000, 0.01);
+		BloomFilter<Integer> b = BloomFilter.withRate(hasher, 1000, 0.01);
+		for (int i = 0; i < 500; i++) a.add(i);
+		for (int i = 250; i < 750; i++) b.add(i);
+
+		BloomFilter<Integer> union = a.copy();
+		union.unionWith(b);
+		for (int i = 0; i < 750; i++) assertTrue(union.mightContain(i));
+
+		BloomFilter<Integer> intersection = a.copy();
+		intersection.intersectWith(b);
+		for (int i = 250; i < 500; i++) assertTrue(intersection.mightContain(i));
+		int positives = 0;
+		for (int i = 0; i < 250; i++) if (intersection.mightContain(i)) positives++;
+		assertTrue(positives < 50);
+
+		try {
+			a.unionWith(BloomFilter.withRate(hasher, 2000, 0.01));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testConcurrentAdds() throws Exception {
+		BloomFilter<Integer> filter = BloomFilter.withRate(hasher, 100000, 0.01);
+		runConcurrently(4, 4, offset -> {
+			for (int i = offset; i < 100000; i += 4) filter.add(i);
+		});
+		for (int i = 0; i < 100000; i++) assertTrue(filter.mightContain(i));
+		BloomFilter<Integer> sequential = BloomFilter.withRate(hasher, 100000, 0.01);
+		for (int i = 0; i < 100000; i++) sequential.add(i);
+		assertEquals(sequential.getSetBitCount(), filter.getSetBitCount());
+	}
+
+}
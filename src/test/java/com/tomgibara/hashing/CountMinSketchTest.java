@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Random;
+
+import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.Streams;
+
+public class CountMinSketchTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.murmur3Int().hasher((i, s) -> s.writeInt(i));
+
+	// a skewed stream of values with their true counts
+	private static int[] zipf(Random r, int distinct, int events, int[] counts) {
+		int[] values = new int[events];
+		for (int i = 0; i < events; i++) {
+			int v = (int) Math.min(distinct - 1, Math.floor(Math.pow(distinct, r.nextDouble())) - 1);
+			values[i] = v;
+			counts[v]++;
+		}
+		return values;
+	}
+
+	public void testSizing() {
+		CountMinSketch<Integer> sketch = CountMinSketch.withAccuracy(hasher, 0.001, 0.01, 64, false);
+		assertEquals(2719, sketch.getWidth());
+		assertEquals(5, sketch.getDepth());
+	}
+
+	public void testAccuracy() {
+		Random r = new Random(0L);
+		int distinct = 100000;
+		int events = 1000000;
+		int[] counts = new int[distinct];
+		int[] values = zipf(r, distinct, events, counts);
+		double epsilon = 0.0005;
+		long standardError = 0L;
+		long conservativeError = 0L;
+		for (boolean conservative : new boolean[] {false, true}) {
+			for (int bits : new int[] {32, 64}) {
+				CountMinSketch<Integer> sketch = CountMinSketch.withAccuracy(hasher, epsilon, 0.01, bits, conservative);
+				for (int v : values) sketch.add(v);
+				assertEquals(events, sketch.getTotalCount());
+				long error = 0L;
+				int exceeded = 0;
+				for (int v = 0; v < distinct; v++) {
+					long estimate = sketch.estimateCount(v);
+					assertTrue(estimate >= counts[v]);
+					if (estimate - counts[v] > epsilon * events) exceeded++;
+					error += estimate - counts[v];
+				}
+				assertTrue("exceeded " + exceeded, exceeded < distinct * 0.01);
+				if (conservative) conservativeError = error; else standardError = error;
+			}
+		}
+		// conservative updates substantially reduce overestimation
+		assertTrue(conservativeError + " " + standardError, conservativeError < standardError * 0.6);
+	}
+
+	public void testAddReturnsEstimate() {
+		for (boolean conservative : new boolean[] {false, true}) {
+			CountMinSketch<Integer> sketch = CountMinSketch.withSize(hasher, 1000, 4, 64, conservative);
+			assertEquals(1L, sketch.add(7));
+			assertEquals(6L, sketch.add(7, 5L));
+			assertEquals(6L, sketch.estimateCount(7));
+			assertEquals(0L, sketch.estimateCount(8));
+		}
+	}
+
+	public void testSaturation() {
+		for (boolean conservative : new boolean[] {false, true}) {
+			CountMinSketch<Integer> sketch = CountMinSketch.withSize(hasher, 100, 3, 32, conservative);
+			sketch.add(1, Integer.MAX_VALUE - 1L);
+			sketch.add(1, 10L);
+			assertEquals(Integer.MAX_VALUE, sketch.estimateCount(1));
+			CountMinSketch<Integer> other = CountMinSketch.withSize(hasher, 100, 3, 32, conservative);
+			other.add(1, 10L);
+			sketch.mergeWith(other);
+			assertEquals(Integer.MAX_VALUE, sketch.estimateCount(1));
+		}
+	}
+
+	public void testMerge() {
+		Random r = new Random(1L);
+		int[] counts = new int[1000];
+		CountMinSketch<Integer> a = CountMinSketch.withSize(hasher, 200, 4, 64, false);
+		CountMinSketch<Integer> b = CountMinSketch.withSize(hasher, 200, 4, 64, false);
+		CountMinSketch<Integer> both = CountMinSketch.withSize(hasher, 200, 4, 64, false);
+		for (int i = 0; i < 20000; i++) {
+			int v = r.nextInt(1000);
+			counts[v]++;
+			(i % 2 == 0 ? a : b).add(v);
+			both.add(v);
+		}
+		a.mergeWith(b);
+		assertEquals(20000, a.getTotalCount());
+		// merging standard sketches is equivalent to counting in one sketch
+		for (int v = 0; v < 1000; v++) assertEquals(both.estimateCount(v), a.estimateCount(v));
+		try {
+			a.mergeWith(CountMinSketch.withSize(hasher, 201, 4, 64, false));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testSerialization() {
+		for (int bits : new int[] {32, 64}) {
+			CountMinSketch<Integer> sketch = CountMinSketch.withSize(hasher, 300, 5, bits, true);
+			for (int i = 0; i < 5000; i++) sketch.add(i % 777, i % 3);
+			StreamBytes bytes = Streams.bytes();
+			sketch.writeTo(bytes.writeStream());
+			CountMinSketch<Integer> read = CountMinSketch.readFrom(hasher, bytes.readStream());
+			assertTrue(read.isCompatible(sketch));
+			assertTrue(read.isConservative());
+			assertEquals(sketch.getTotalCount(), read.getTotalCount());
+			for (int v = 0; v < 1000; v++) assertEquals(sketch.estimateCount(v), read.estimateCount(v));
+		}
+	}
+
+	public void testConcurrentAdds() throws Exception {
+		for (boolean conservative : new boolean[] {false, true}) {
+			CountMinSketch<Integer> sketch = CountMinSketch.withSize(hasher, 1000, 4, 64, conservative);
+			runConcurrently(4, 4, t -> {
+				for (int i = 0; i < 100000; i++) sketch.add(i % 100);
+			});
+			assertEquals(400000, sketch.getTotalCount());
+			// each value was added 4000 times
+			for (int v = 0; v < 100; v++) assertTrue(sketch.estimateCount(v) >= 4000);
+		}
+	}
+
+}
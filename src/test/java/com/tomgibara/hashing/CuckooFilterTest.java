@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+public class CuckooFilterTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+
+	public void testSizing() {
+		CuckooFilter<Integer> filter = CuckooFilter.withCapacity(hasher, 1000, 12);
+		// 1000 / (4 * 0.95) rounded up to a power of two
+		assertEquals(512, filter.getBucketCount());
+		assertEquals(2048, filter.getCapacity());
+		try {
+			CuckooFilter.withSize(hasher, 100, 8);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			CuckooFilter.withSize(hasher, 128, 10);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testNoFalseNegatives() {
+		for (int bits : new int[] {8, 12, 16}) {
+			CuckooFilter<Integer> filter = CuckooFilter.withSize(hasher, 1024, bits);
+			// fill to a load of ~94%
+			int n = 3850;
+			for (int i = 0; i < n; i++) assertTrue(filter.add(i));
+			assertFalse(filter.isFull());
+			assertEquals(n, filter.getCount());
+			assertEquals(n / 4096.0, filter.getLoadFactor(), 1e-9);
+			for (int i = 0; i < n; i++) assertTrue("bits " + bits + " value " + i, filter.mightContain(i));
+		}
+	}
+
+	public void testFalsePositiveRate() {
+		for (int bits : new int[] {8, 12, 16}) {
+			CuckooFilter<Integer> filter = CuckooFilter.withCapacity(hasher, 10000, bits);
+			for (int i = 0; i < 10000; i++) filter.add(i);
+			int positives = 0;
+			int trials = 1000000;
+			for (int i = 10000; i < 10000 + trials; i++) {
+				if (filter.mightContain(i)) positives++;
+			}
+			double expected = filter.getFalsePositiveRate();
+			double actual = (double) positives / trials;
+			assertTrue("bits " + bits + " expected " + expected + " actual " + actual, actual < expected * 1.3 + 1e-5);
+		}
+	}
+
+	public void testRemove() {
+		for (int bits : new int[] {8, 12, 16}) {
+			CuckooFilter<Integer> filter = CuckooFilter.withCapacity(hasher, 10000, bits);
+			for (int i = 0; i < 10000; i++) filter.add(i);
+			for (int i = 0; i < 10000; i += 2) assertTrue(filter.remove(i));
+			assertEquals(5000, filter.getCount());
+			for (int i = 1; i < 10000; i += 2) assertTrue(filter.mightContain(i));
+			int positives = 0;
+			for (int i = 0; i < 10000; i += 2) if (filter.mightContain(i)) positives++;
+			assertTrue("bits " + bits + " positives " + positives, positives < 5000 * filter.getFalsePositiveRate() * 2 + 5);
+			for (int i = 1; i < 10000; i += 2) assertTrue(filter.remove(i));
+			assertEquals(0, filter.getCount());
+			for (int i = 0; i < 10000; i++) assertFalse(filter.mightContain(i));
+		}
+	}
+
+	public void testDuplicates() {
+		CuckooFilter<Integer> filter = CuckooFilter.withCapacity(hasher, 100, 16);
+		filter.add(7);
+		filter.add(7);
+		assertEquals(2, filter.getCount());
+		assertTrue(filter.remove(7));
+		assertTrue(filter.mightContain(7));
+		assertTrue(filter.remove(7));
+		assertFalse(filter.mightContain(7));
+		assertFalse(filter.remove(7));
+	}
+
+	public void testFull() {
+		CuckooFilter<Integer> filter = CuckooFilter.withSize(hasher, 16, 12);
+		int added = 0;
+		while (filter.add(added)) added++;
+		assertTrue(filter.isFull());
+		assertTrue(added > 48);
+		assertEquals(added, filter.getCount());
+		// nothing is lost when the filter fills
+		for (int i = 0; i < added; i++) assertTrue(filter.mightContain(i));
+		// removal makes room again once a slot is freed in a victim's bucket
+		int removed = 0;
+		while (filter.isFull()) assertTrue(filter.remove(removed++));
+		assertTrue(removed < added);
+		assertEquals(added - removed, filter.getCount());
+		for (int i = removed; i < added; i++) assertTrue(filter.mightContain(i));
+		assertTrue(filter.add(0));
+		filter.clear();
+		assertEquals(0, filter.getCount());
+		assertFalse(filter.isFull());
+		for (int i = 0; i < added; i++) assertFalse(filter.mightContain(i));
+	}
+
+}
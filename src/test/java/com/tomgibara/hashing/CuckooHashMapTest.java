@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.tomgibara.streams.WriteStream;
+
+public class CuckooHashMapTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.murmur3Int().hasher((Integer i, WriteStream w) -> w.writeInt(i));
+
+	public void testRandomOperations() {
+		Random r = new Random(0L);
+		CuckooHashMap<Integer, Integer> map = CuckooHashMap.withHasher(hasher);
+		Map<Integer, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 100000; i++) {
+			Integer key = r.nextInt(5000);
+			switch (r.nextInt(4)) {
+			case 0:
+				assertEquals(expected.remove(key), map.remove(key));
+				break;
+			case 1:
+				assertEquals(expected.get(key), map.get(key));
+				assertEquals(expected.containsKey(key), map.containsKey(key));
+				break;
+			default:
+				Integer value = r.nextInt();
+				assertEquals(expected.put(key, value), map.put(key, value));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(0));
+	}
+
+	public void testHighLoad() {
+		int count = 100000;
+		CuckooHashMap<Integer, Integer> map = CuckooHashMap.withCapacity(hasher, count, 0.97);
+		int capacity = map.getCapacity();
+		assertTrue(capacity >= count);
+		for (int i = 0; i < count; i++) map.put(i, -i);
+		// reaching the load factor requires neither growth nor loss
+		assertEquals(capacity, map.getCapacity());
+		assertEquals(count, map.size());
+		for (int i = 0; i < count; i++) assertEquals(-i, map.get(i).intValue());
+		assertNull(map.get(count));
+		// growth preserves entries
+		for (int i = count; i < 2 * count; i++) map.put(i, -i);
+		assertTrue(map.getCapacity() > capacity);
+		for (int i = 0; i < 2 * count; i++) assertEquals(-i, map.get(i).intValue());
+	}
+
+	public void testIteratorRemoval() {
+		CuckooHashMap<Integer, Integer> map = CuckooHashMap.withHasher(hasher);
+		for (int i = 0; i < 1000; i++) map.put(i, i);
+		for (Iterator<Map.Entry<Integer, Integer>> i = map.entrySet().iterator(); i.hasNext(); ) {
+			Map.Entry<Integer, Integer> entry = i.next();
+			if ((entry.getKey() & 1) == 0) {
+				i.remove();
+			} else {
+				entry.setValue(-entry.getKey());
+			}
+		}
+		assertEquals(500, map.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals((i & 1) == 0 ? null : Integer.valueOf(-i), map.get(i));
+		}
+	}
+
+	public void testNulls() {
+		CuckooHashMap<Integer, Integer> map = CuckooHashMap.withHasher(hasher);
+		map.put(1, null);
+		assertTrue(map.containsKey(1));
+		assertNull(map.get(1));
+		assertNull(map.get(null));
+		assertFalse(map.containsKey("1"));
+		try {
+			map.put(null, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testEqualHashes() {
+		// strings built from these pairs share hash codes
+		List<String> keys = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = 0; j < 4; j++) sb.append((i >> j & 1) == 0 ? "Aa" : "BB");
+			keys.add(sb.toString());
+		}
+		CuckooHashMap<String, Integer> map = CuckooHashMap.withHasher(Hashing.objectHasher());
+		for (int i = 0; i < 8; i++) map.put(keys.get(i), i);
+		try {
+			map.put(keys.get(8), 8);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		// the map is unchanged by the failure
+		assertEquals(8, map.size());
+		for (int i = 0; i < 8; i++) assertEquals(i, map.get(keys.get(i)).intValue());
+	}
+
+}
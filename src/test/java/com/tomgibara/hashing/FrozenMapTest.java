@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.tomgibara.streams.WriteStream;
+
+public class FrozenMapTest extends HashingTest {
+
+	private static final Hasher<String> hasher = Hashing.xxHash64().hasher((String s, WriteStream w) -> w.writeChars(s));
+
+	private static Map<String, Integer> entries(int count) {
+		Map<String, Integer> map = new HashMap<>();
+		for (int i = 0; i < count; i++) map.put("key-" + i, i);
+		return map;
+	}
+
+	public void testLookup() {
+		for (int n : new int[] {0, 1, 2, 10, 100, 1000, 10000}) {
+			Map<String, Integer> entries = entries(n);
+			FrozenMap<String, Integer> map = FrozenMap.withEntries(hasher, entries);
+			assertEquals(n, map.size());
+			for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+				assertEquals(entry.getValue(), map.get(entry.getKey()));
+				assertTrue(map.containsKey(entry.getKey()));
+			}
+			for (int i = n; i < n + 100; i++) {
+				assertNull(map.get("key-" + i));
+				assertFalse(map.containsKey("key-" + i));
+			}
+			assertEquals(entries, map);
+			assertEquals(map, entries);
+			assertEquals(entries.hashCode(), map.hashCode());
+		}
+	}
+
+	public void testNulls() {
+		Map<String, Integer> entries = entries(10);
+		entries.put("absent", null);
+		FrozenMap<String, Integer> map = FrozenMap.withEntries(hasher, entries);
+		assertTrue(map.containsKey("absent"));
+		assertNull(map.get("absent"));
+		assertFalse(map.containsKey(null));
+		assertNull(map.get(null));
+		try {
+			FrozenMap.withEntries(hasher, Collections.singletonMap(null, 1));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testForeignKeys() {
+		FrozenMap<String, Integer> map = FrozenMap.withEntries(hasher, entries(10));
+		assertFalse(map.containsKey(3));
+		assertNull(map.get(new Object()));
+	}
+
+	public void testImmutable() {
+		FrozenMap<String, Integer> map = FrozenMap.withEntries(hasher, entries(10));
+		try {
+			map.put("key-10", 10);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+		try {
+			map.entrySet().iterator().remove();
+			fail();
+		} catch (UnsupportedOperationException | IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(10, map.size());
+	}
+
+	public void testNarrowHasher() {
+		try {
+			FrozenMap.withEntries(Hashing.objectHasher(), entries(10));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testEqualHashes() {
+		Map<String, Integer> entries = new HashMap<>();
+		// these strings share a hash code
+		entries.put("Aa", 1);
+		entries.put("BB", 2);
+		// but are distinguished by a wide hasher
+		FrozenMap<String, Integer> map = FrozenMap.withEntries(hasher, entries);
+		assertEquals(1, map.get("Aa").intValue());
+		assertEquals(2, map.get("BB").intValue());
+		// and not by one that hashes only their hash codes
+		Hasher<String> weak = Hashing.xxHash64().hasher((String s, WriteStream w) -> w.writeInt(s.hashCode()));
+		try {
+			FrozenMap.withEntries(weak, entries);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
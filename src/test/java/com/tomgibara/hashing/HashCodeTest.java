@@ -82,4 +82,14 @@ public class HashCodeTest extends HashingTest {
 		assertEquals(i2, code.bigValue());
 		assertEquals(i3, code.bigValue());
 	}
+
+	public void testUnsignedLongBigValues() {
+		BigInteger max = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+		assertEquals(max, HashCode.fromLong(-1L).bigValue());
+		assertEquals(BigInteger.ONE, HashCode.fromLong(1L).bigValue());
+		HashCode code = HashCode.fromLongs(-1L, 1L, Long.MIN_VALUE);
+		assertEquals(max, code.bigValue());
+		assertEquals(BigInteger.ONE, code.bigValue());
+		assertEquals(BigInteger.ONE.shiftLeft(63), code.bigValue());
+	}
 }
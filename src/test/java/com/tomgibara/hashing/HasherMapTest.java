@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import com.tomgibara.streams.WriteStream;
+
+public class HasherMapTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.murmur3Int().seeded((Integer i, WriteStream w) -> w.writeInt(i), 42L);
+
+	public void testRandomOperations() {
+		Random r = new Random(0L);
+		HasherMap<Integer, Integer> map = HasherMap.withHasher(hasher);
+		Map<Integer, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 100000; i++) {
+			Integer key = r.nextInt(5000);
+			switch (r.nextInt(4)) {
+			case 0:
+				assertEquals(expected.remove(key), map.remove(key));
+				break;
+			case 1:
+				assertEquals(expected.get(key), map.get(key));
+				assertEquals(expected.containsKey(key), map.containsKey(key));
+				break;
+			default:
+				Integer value = r.nextInt();
+				assertEquals(expected.put(key, value), map.put(key, value));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertNull(map.get(0));
+	}
+
+	public void testCollidingHashes() {
+		// a weak hasher places every key in few slots, exercising displacement and shifting
+		Hasher<Integer> weak = Hashing.<Integer>objectHasher().sized(HashSize.fromInt(4));
+		HasherMap<Integer, Integer> map = HasherMap.withHasher(weak);
+		for (int i = 0; i < 200; i++) map.put(i, i);
+		for (int i = 0; i < 200; i += 3) assertEquals(i, map.remove(i).intValue());
+		for (int i = 0; i < 200; i++) assertEquals(i % 3 == 0 ? null : Integer.valueOf(i), map.get(i));
+	}
+
+	public void testIdentity() {
+		HasherMap<String, Integer> map = HasherMap.withHasher(Hashing.identityHasher(), (a, b) -> a == b);
+		String a = new String("key");
+		String b = new String("key");
+		map.put(a, 1);
+		map.put(b, 2);
+		assertEquals(2, map.size());
+		assertEquals(1, map.get(a).intValue());
+		assertEquals(2, map.get(b).intValue());
+		assertNull(map.get("key"));
+	}
+
+	public void testIteratorRemoval() {
+		Random r = new Random(0L);
+		for (int n : new int[] {0, 1, 7, 100, 10000}) {
+			HasherMap<Integer, Integer> map = HasherMap.withHasher(hasher);
+			for (int i = 0; i < n; i++) map.put(i, i);
+			Set<Integer> removed = new HashSet<>();
+			Set<Integer> seen = new HashSet<>();
+			for (Iterator<Map.Entry<Integer, Integer>> i = map.entrySet().iterator(); i.hasNext(); ) {
+				Map.Entry<Integer, Integer> entry = i.next();
+				// every entry is visited exactly once
+				assertTrue(seen.add(entry.getKey()));
+				if (r.nextBoolean()) {
+					i.remove();
+					removed.add(entry.getKey());
+				} else {
+					entry.setValue(-entry.getKey());
+				}
+			}
+			assertEquals(n, seen.size());
+			assertEquals(n - removed.size(), map.size());
+			for (int i = 0; i < n; i++) {
+				assertEquals(removed.contains(i) ? null : Integer.valueOf(-i), map.get(i));
+			}
+		}
+	}
+
+	public void testNulls() {
+		HasherMap<Integer, Integer> map = HasherMap.withHasher(hasher);
+		map.put(1, null);
+		assertTrue(map.containsKey(1));
+		assertNull(map.get(1));
+		assertNull(map.get(null));
+		assertFalse(map.containsKey("1"));
+		try {
+			map.put(null, 1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
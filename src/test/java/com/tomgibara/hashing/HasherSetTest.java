@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import com.tomgibara.streams.WriteStream;
+
+public class HasherSetTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.murmur3Int().seeded((Integer i, WriteStream w) -> w.writeInt(i), 42L);
+
+	public void testRandomOperations() {
+		Random r = new Random(0L);
+		HasherSet<Integer> set = HasherSet.withCapacity(hasher, Integer::equals, 100);
+		Set<Integer> expected = new HashSet<>();
+		for (int i = 0; i < 100000; i++) {
+			Integer e = r.nextInt(5000);
+			switch (r.nextInt(3)) {
+			case 0:
+				assertEquals(expected.remove(e), set.remove(e));
+				break;
+			case 1:
+				assertEquals(expected.contains(e), set.contains(e));
+				break;
+			default:
+				assertEquals(expected.add(e), set.add(e));
+			}
+			assertEquals(expected.size(), set.size());
+		}
+		assertEquals(expected, set);
+		assertEquals(set, expected);
+		set.removeIf(e -> (e & 1) == 0);
+		expected.removeIf(e -> (e & 1) == 0);
+		assertEquals(expected, set);
+	}
+
+	public void testIdentity() {
+		HasherSet<String> set = HasherSet.withHasher(Hashing.identityHasher(), (a, b) -> a == b);
+		String a = new String("e");
+		String b = new String("e");
+		assertTrue(set.add(a));
+		assertTrue(set.add(b));
+		assertFalse(set.add(a));
+		assertEquals(2, set.size());
+		assertFalse(set.contains("e"));
+		assertTrue(set.remove(b));
+		assertTrue(set.contains(a));
+	}
+
+}
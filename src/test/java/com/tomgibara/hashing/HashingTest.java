@@ -17,9 +17,21 @@
 package com.tomgibara.hashing;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 
 import junit.framework.TestCase;
 
+import com.tomgibara.streams.WriteStream;
+
 public abstract class HashingTest extends TestCase {
 
 	void testCorrectlySizedInts(HashCode value, HashSize size, int quantity) {
@@ -100,4 +112,66 @@ public abstract class HashingTest extends TestCase {
 		assertEquals(longValue, hasher.hash(obj).bigValue().longValue());
 		assertEquals(intValue, hasher.hash(obj).bigValue().intValue());
 	}
+
+	// writes the same randomly chosen value to both streams
+	void writeRandom(Random r, WriteStream s, WriteStream b) {
+		switch (r.nextInt(9)) {
+		case 0: { byte v = (byte) r.nextInt(); s.writeByte(v); b.writeByte(v); break; }
+		case 1: { boolean v = r.nextBoolean(); s.writeBoolean(v); b.writeBoolean(v); break; }
+		case 2: { short v = (short) r.nextInt(); s.writeShort(v); b.writeShort(v); break; }
+		case 3: { char v = (char) r.nextInt(); s.writeChar(v); b.writeChar(v); break; }
+		case 4: { int v = r.nextInt(); s.writeInt(v); b.writeInt(v); break; }
+		case 5: { long v = r.nextLong(); s.writeLong(v); b.writeLong(v); break; }
+		case 6: {
+			byte[] vs = new byte[r.nextInt(20)];
+			r.nextBytes(vs);
+			int off = vs.length == 0 ? 0 : r.nextInt(vs.length);
+			int len = r.nextInt(vs.length - off + 1);
+			s.writeBytes(vs, off, len);
+			b.writeBytes(vs, off, len);
+			break;
+		}
+		case 7: {
+			char[] vs = new char[r.nextInt(20)];
+			for (int k = 0; k < vs.length; k++) vs[k] = (char) r.nextInt();
+			int off = vs.length == 0 ? 0 : r.nextInt(vs.length);
+			int len = r.nextInt(vs.length - off + 1);
+			s.writeChars(vs, off, len);
+			b.writeChars(vs, off, len);
+			break;
+		}
+		case 8: {
+			String v = Long.toString(r.nextLong(), 36);
+			s.writeChars(v);
+			b.writeChars(v);
+			break;
+		}
+		}
+	}
+
+	// runs the indexed tasks on a pool of threads, returning their results in index order
+	<T> List<T> computeConcurrently(int threads, int tasks, IntFunction<? extends T> task) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Callable<T>> callables = new ArrayList<>();
+			for (int t = 0; t < tasks; t++) {
+				final int index = t;
+				callables.add(() -> task.apply(index));
+			}
+			List<T> results = new ArrayList<>();
+			for (Future<T> future : executor.invokeAll(callables)) results.add(future.get());
+			return results;
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	// runs the indexed tasks on a pool of threads, waiting for them all to complete
+	void runConcurrently(int threads, int tasks, IntConsumer task) throws Exception {
+		computeConcurrently(threads, tasks, t -> {
+			task.accept(t);
+			return null;
+		});
+	}
 }
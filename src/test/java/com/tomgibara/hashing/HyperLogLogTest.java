@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
+
+public class HyperLogLogTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+
+	public void testAccuracy() {
+		for (int precision : new int[] {4, 10, 14, 18}) {
+			HyperLogLog<Integer> hll = HyperLogLog.withPrecision(hasher, precision);
+			double error = hll.getStandardError();
+			int added = 0;
+			for (int target : new int[] {1, 10, 100, 1000, 10000, 100000, 1000000}) {
+				while (added < target) hll.add(added++);
+				double estimate = hll.getEstimatedCount();
+				double tolerance = hll.isSparse() ? 0.01 : 4 * error;
+				assertEquals("precision " + precision + " count " + target, target, estimate, target * tolerance + 1);
+			}
+			assertFalse(hll.isSparse());
+		}
+	}
+
+	public void testDuplicates() {
+		HyperLogLog<Integer> hll = HyperLogLog.withPrecision(hasher, 12);
+		for (int i = 0; i < 100; i++) assertTrue(hll.add(i));
+		for (int i = 0; i < 100; i++) assertFalse(hll.add(i));
+		assertEquals(100.0, hll.getEstimatedCount(), 0.5);
+	}
+
+	public void testSparseTransition() {
+		HyperLogLog<Integer> hll = HyperLogLog.withPrecision(hasher, 14);
+		assertTrue(hll.isSparse());
+		int i = 0;
+		while (hll.isSparse()) hll.add(i++);
+		// the sparse table holds an eighth as many entries as there are registers, less a quarter
+		assertEquals(1537, i);
+		assertEquals(i, hll.getEstimatedCount(), i * 4 * hll.getStandardError());
+		// small precisions start with registers
+		assertFalse(HyperLogLog.withPrecision(hasher, 6).isSparse());
+	}
+
+	public void testMerge() {
+		int[][] sizes = { {100, 200}, {100, 50000}, {50000, 100}, {50000, 60000} };
+		for (int[] size : sizes) {
+			HyperLogLog<Integer> a = HyperLogLog.withPrecision(hasher, 14);
+			HyperLogLog<Integer> b = HyperLogLog.withPrecision(hasher, 14);
+			HyperLogLog<Integer> union = HyperLogLog.withPrecision(hasher, 14);
+			// the ranges overlap by half of the smaller
+			int offset = Math.min(size[0], size[1]) / 2;
+			for (int i = 0; i < size[0]; i++) {
+				a.add(i);
+				union.add(i);
+			}
+			for (int i = offset; i < offset + size[1]; i++) {
+				b.add(i);
+				union.add(i);
+			}
+			a.mergeWith(b);
+			assertEquals(union.isSparse(), a.isSparse());
+			assertEquals(union.getEstimatedCount(), a.getEstimatedCount(), 1e-9);
+		}
+		try {
+			HyperLogLog.withPrecision(hasher, 14).mergeWith(HyperLogLog.withPrecision(hasher, 12));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testSerialization() {
+		for (int count : new int[] {0, 100, 1000, 100000}) {
+			HyperLogLog<Integer> hll = HyperLogLog.withPrecision(hasher, 14);
+			for (int i = 0; i < count; i++) hll.add(i);
+			StreamBytes bytes = Streams.bytes();
+			hll.writeTo(bytes.writeStream());
+			if (count == 100000) {
+				// registers are packed at 6 bits each
+				assertEquals(2 + (1 << 14) * 6 / 8, bytes.length());
+			} else {
+				// delta encoded entries need no more than 4 bytes each
+				assertTrue(bytes.length() <= 6 + 4 * count);
+				assertTrue(bytes.length() < (1 << 14) * 6 / 8);
+			}
+			HyperLogLog<Integer> read = HyperLogLog.readFrom(hasher, bytes.readStream());
+			assertEquals(hll.isSparse(), read.isSparse());
+			assertEquals(hll.getEstimatedCount(), read.getEstimatedCount(), 1e-9);
+		}
+	}
+
+	public void testConcurrentUpdates() throws Exception {
+		HyperLogLog<Integer> hll = HyperLogLog.withPrecision(hasher, 14);
+		HyperLogLog<Integer> sequential = HyperLogLog.withPrecision(hasher, 14);
+		for (int i = 0; i < 200000; i++) sequential.add(i);
+		HyperLogLog<Integer> other = HyperLogLog.withPrecision(hasher, 14);
+		for (int i = 100000; i < 200000; i++) other.add(i);
+		runConcurrently(4, 4, offset -> {
+			// crosses the sparse threshold concurrently
+			for (int i = offset; i < 100000; i += 4) hll.add(i);
+			hll.mergeWith(other);
+		});
+		assertEquals(sequential.getEstimatedCount(), hll.getEstimatedCount(), 1e-9);
+	}
+
+	public void testHasherSize() {
+		try {
+			HyperLogLog.withPrecision(Hashing.murmur3Int().hasher((Integer i, WriteStream s) -> s.writeInt(i)), 14);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			HyperLogLog.withPrecision(hasher, 19);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.tomgibara.streams.WriteStream;
+
+public class MaglevTableTest extends HashingTest {
+
+	private static final Hasher<String> hasher = Hashing.xxHash64().hasher((String s, WriteStream w) -> w.writeChars(s));
+	private static final HashSize size = HashSize.fromInt(65537);
+
+	private static List<String> backends(int count) {
+		List<String> backends = new ArrayList<>();
+		for (int i = 0; i < count; i++) backends.add("backend-" + i);
+		return backends;
+	}
+
+	// the backend assigned to each entry of the table
+	private static String[] entries(MaglevTable<String> table) {
+		int m = table.getSize().asInt();
+		String[] entries = new String[m];
+		for (int e = 0; e < m; e++) {
+			// the smallest 32 bit hash that reduces to the entry
+			long keyHash = (((long) e << 32) + m - 1) / m;
+			entries[e] = table.select(keyHash);
+		}
+		return entries;
+	}
+
+	public void testBalance() {
+		for (int n : new int[] {1, 7, 100, 1000}) {
+			MaglevTable<String> table = MaglevTable.withBackends(hasher, backends(n), size);
+			int[] counts = new int[n];
+			for (int e = 0; e < size.asInt(); e++) {
+				counts[table.lookup((((long) e << 32) + size.asInt() - 1) / size.asInt())]++;
+			}
+			// each backend claims one entry per turn
+			Arrays.sort(counts);
+			assertTrue(counts[n - 1] - counts[0] <= 1);
+		}
+	}
+
+	public void testDisruption() {
+		List<String> backends = backends(100);
+		MaglevTable<String> table = MaglevTable.withBackends(hasher, backends, size);
+		String[] before = entries(table);
+		List<String> fewer = new ArrayList<>(backends);
+		String removed = fewer.remove(42);
+		String[] after = entries(table.rebuild(fewer));
+		int disrupted = 0;
+		for (int e = 0; e < before.length; e++) {
+			if (before[e].equals(removed)) {
+				assertFalse(after[e].equals(removed));
+			} else if (!before[e].equals(after[e])) {
+				disrupted++;
+			}
+		}
+		// a small fraction of the entries of other backends change
+		assertTrue(disrupted < before.length / 50);
+		// rebuilding is equivalent to building afresh
+		assertTrue(Arrays.equals(after, entries(MaglevTable.withBackends(hasher, fewer, size))));
+	}
+
+	public void testLookup() {
+		MaglevTable<String> table = MaglevTable.withBackends(hasher, backends(10), size);
+		for (long i = 0; i < 1000; i++) {
+			long keyHash = i * 0x9e3779b97f4a7c15L;
+			assertEquals(table.getBackends().get(table.lookup(keyHash)), table.select(keyHash));
+		}
+	}
+
+	public void testInvalid() {
+		try {
+			MaglevTable.withBackends(hasher, backends(10), HashSize.fromInt(65536));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			MaglevTable.withBackends(hasher, Arrays.asList("a", "b", "a"), size);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			MaglevTable.withBackends(hasher, backends(14), HashSize.fromInt(13));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import com.tomgibara.streams.WriteStream;
+
+public class MappedWindowsTest extends HashingTest {
+
+	private Path file;
+	private byte[] bytes;
+
+	@Override
+	protected void setUp() throws IOException {
+		bytes = new byte[100000];
+		new Random(0L).nextBytes(bytes);
+		file = Files.createTempFile("hashing", ".bin");
+		Files.write(file, bytes);
+	}
+
+	@Override
+	protected void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	private static Hash[] hashes() {
+		return new Hash[] {
+				Hashing.murmur3Int(),
+				Hashing.SHA_256().asHash(),
+				Hashing.xxh3Long128(),
+				Hashing.xxHash64(),
+				Hashing.murmur3Long128(),
+				Hashing.sipHash13(1L, 2L),
+		};
+	}
+
+	public void testHashFile() throws IOException {
+		for (Hash hash : hashes()) {
+			WriteStream stream = hash.newStream();
+			stream.writeBytes(bytes);
+			assertEquals(hash.toString(), hash.hash(stream), hash.hashFile(file));
+		}
+	}
+
+	public void testWriteChannelRange() throws IOException {
+		Random r = new Random(1L);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (Hash hash : hashes()) {
+				for (int i = 0; i < 20; i++) {
+					int position = r.nextInt(bytes.length);
+					int size = r.nextInt(bytes.length - position + 1);
+					WriteStream expected = hash.newStream();
+					expected.writeBytes(bytes, position, size);
+					WriteStream stream = hash.newStream();
+					// small windows exercise the boundaries between mappings
+					MappedWindows.write(hash, stream, channel, position, size, 1 + r.nextInt(4096));
+					assertEquals(hash.toString(), hash.bigHashValue(expected), hash.bigHashValue(stream));
+					assertEquals(0L, channel.position());
+				}
+			}
+		}
+	}
+
+	public void testHashChannel() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (Hash hash : hashes()) {
+				WriteStream expected = hash.newStream();
+				expected.writeBytes(bytes, 5000, 50000);
+				assertEquals(hash.toString(), hash.hash(expected), hash.hashChannel(channel, 5000L, 50000L));
+				assertEquals(0L, channel.position());
+			}
+		}
+	}
+
+	public void testInvalidRange() throws IOException {
+		Hash hash = Hashing.murmur3Int();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			try {
+				hash.writeChannel(hash.newStream(), channel, 1L, bytes.length);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+	}
+
+	public void testUnmap() throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// the buffer cannot be accessed after this without crashing the VM
+			assertTrue(MappedWindows.unmap(channel.map(FileChannel.MapMode.READ_ONLY, 0L, bytes.length)));
+		}
+		// a heap buffer has nothing to release
+		assertFalse(MappedWindows.unmap(ByteBuffer.allocate(10)));
+	}
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.tomgibara.hashing.MinHash.Signature;
+
+public class MinHashIndexTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.murmur3Int().hasher((i, s) -> s.writeInt(i));
+
+	public void testParameters() {
+		MinHashIndex<String> index = MinHashIndex.withThreshold(128, 0.5);
+		assertTrue(index.getBands() * index.getRows() <= 128);
+		assertEquals(0.5, index.getThreshold(), 0.1);
+		assertTrue(index.getCandidateProbability(0.8) > 0.99);
+		assertTrue(index.getCandidateProbability(0.2) < 0.05);
+
+		MinHashIndex<String> strict = MinHashIndex.withThreshold(128, 0.9);
+		assertTrue(strict.getRows() > index.getRows());
+		assertEquals(0.9, strict.getThreshold(), 0.1);
+	}
+
+	public void testCandidatePairs() {
+		Random r = new Random(0L);
+		MinHash<Integer> minHash = MinHash.withSize(hasher, 128);
+		MinHashIndex<Integer> index = MinHashIndex.withThreshold(128, 0.7);
+		// 100 random documents, and near duplicates of the first 20
+		List<Set<Integer>> documents = new ArrayList<>();
+		for (int d = 0; d < 100; d++) {
+			Set<Integer> document = new HashSet<>();
+			while (document.size() < 200) document.add(r.nextInt(1000000));
+			documents.add(document);
+		}
+		for (int d = 0; d < 20; d++) {
+			Set<Integer> copy = new HashSet<>(documents.get(d));
+			// replace 10 of 200 shingles for a similarity of ~0.9
+			int removed = 0;
+			for (Integer shingle : new ArrayList<>(copy)) {
+				if (removed++ == 10) break;
+				copy.remove(shingle);
+			}
+			while (copy.size() < 200) copy.add(r.nextInt(1000000));
+			documents.add(copy);
+		}
+		for (int d = 0; d < documents.size(); d++) index.add(d, minHash.signature(documents.get(d)));
+		assertEquals(120, index.size());
+
+		Set<Long> pairs = new HashSet<>();
+		index.forEachCandidatePair((a, b) -> {
+			long pair = (long) Math.min(a, b) << 32 | Math.max(a, b);
+			// each pair is reported once
+			assertTrue(pairs.add(pair));
+		});
+		for (int d = 0; d < 20; d++) {
+			assertTrue("missing pair " + d, pairs.contains((long) d << 32 | (d + 100)));
+		}
+		// unrelated documents are very unlikely to be candidates
+		assertTrue(pairs.size() < 25);
+
+		Signature query = minHash.signature(documents.get(3));
+		Set<Integer> candidates = index.getCandidates(query);
+		assertTrue(candidates.contains(3));
+		assertTrue(candidates.contains(103));
+
+		assertTrue(index.remove(103));
+		assertFalse(index.remove(103));
+		assertFalse(index.getCandidates(query).contains(103));
+		assertEquals(119, index.size());
+	}
+
+	public void testSignatureSize() {
+		MinHashIndex<String> index = MinHashIndex.withBands(20, 5);
+		try {
+			index.add("a", MinHash.withSize(hasher, 64).signature(new HashSet<>()));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.tomgibara.hashing.MinHash.Signature;
+
+public class MinHashTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.murmur3Int().hasher((i, s) -> s.writeInt(i));
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> list = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) list.add(i);
+		return list;
+	}
+
+	public void testSimilarity() {
+		MinHash<Integer> minHash = MinHash.withSize(hasher, 256);
+		Signature a = minHash.signature(range(0, 1000));
+		assertEquals(1.0, a.estimateSimilarity(minHash.signature(range(0, 1000))));
+		// similarities of 1/3, 0.6, 0 and 9/11
+		assertEquals(1.0 / 3.0, a.estimateSimilarity(minHash.signature(range(500, 1500))), 0.1);
+		assertEquals(0.6, a.estimateSimilarity(minHash.signature(range(0, 600))), 0.1);
+		assertEquals(0.0, a.estimateSimilarity(minHash.signature(range(1000, 2000))), 0.05);
+		assertEquals(9.0 / 11.0, a.estimateSimilarity(minHash.signature(range(100, 1100))), 0.1);
+	}
+
+	public void testSparseSets() {
+		// most bins are empty and must be densified
+		MinHash<Integer> minHash = MinHash.withSize(hasher, 256);
+		Signature a = minHash.signature(range(0, 10));
+		assertEquals(1.0, a.estimateSimilarity(minHash.signature(range(0, 10))));
+		assertEquals(1.0 / 3.0, a.estimateSimilarity(minHash.signature(range(5, 15))), 0.2);
+		assertEquals(0.0, a.estimateSimilarity(minHash.signature(range(10, 20))), 0.1);
+		Signature empty = minHash.signature(Collections.emptyList());
+		assertEquals(empty, minHash.signature(Collections.emptyList()));
+	}
+
+	public void testOrderAndDuplicates() {
+		MinHash<Integer> minHash = MinHash.withSize(hasher, 64);
+		List<Integer> values = range(0, 100);
+		Signature signature = minHash.signature(values);
+		Collections.reverse(values);
+		values.addAll(range(0, 50));
+		assertEquals(signature, minHash.signature(values));
+		// builders can be reused
+		MinHash<Integer>.Builder builder = minHash.newBuilder();
+		builder.addAll(range(200, 300)).clear();
+		for (int i = 0; i < 100; i++) builder.add(i);
+		assertEquals(signature, builder.build());
+	}
+
+	public void testCompression() {
+		MinHash<Integer> minHash = MinHash.withSize(hasher, 1024);
+		Signature a = minHash.signature(range(0, 1000));
+		Signature b = minHash.signature(range(500, 1500));
+		for (int bits : new int[] {16, 8, 4, 2, 1}) {
+			Signature ca = a.compress(bits);
+			Signature cb = b.compress(bits);
+			assertEquals(bits, ca.getBits());
+			assertEquals(1024, ca.getSize());
+			for (int i = 0; i < 1024; i++) assertEquals(a.getValue(i) & ((1 << bits) - 1), ca.getValue(i));
+			assertEquals("bits " + bits, 1.0 / 3.0, ca.estimateSimilarity(cb), 0.1);
+			assertEquals(ca, ca.compress(bits));
+		}
+		try {
+			a.compress(3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			a.compress(8).estimateSimilarity(b);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.tomgibara.streams.WriteStream;
+
+public class MinimalPerfectHashTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+
+	private static void assertPerfect(MinimalPerfectHash<Integer> mph, int from, int to) {
+		assertEquals(to - from, mph.getCount());
+		BitSet indices = new BitSet(to - from);
+		for (int i = from; i < to; i++) {
+			long index = mph.indexOf(i);
+			assertTrue(index >= 0 && index < to - from);
+			assertFalse(indices.get((int) index));
+			indices.set((int) index);
+		}
+	}
+
+	public void testPerfect() {
+		for (int count : new int[] {1, 2, 10, 1000, 1000000}) {
+			MinimalPerfectHash<Integer> mph = MinimalPerfectHash.withKeys(hasher, IntStream.range(0, count).boxed());
+			assertPerfect(mph, 0, count);
+			// non-members receive an index in range or -1
+			for (int i = count; i < count + 1000; i++) {
+				long index = mph.indexOf(i);
+				assertTrue(index >= -1 && index < count);
+			}
+			if (count == 1000000) assertTrue(mph.getBitsPerKey() < 3.5);
+		}
+	}
+
+	public void testGamma() {
+		MinimalPerfectHash<Integer> tight = MinimalPerfectHash.withKeys(hasher, IntStream.range(0, 100000).boxed().parallel());
+		MinimalPerfectHash<Integer> loose = MinimalPerfectHash.withKeys(hasher, IntStream.range(0, 100000).boxed(), 3.0);
+		assertPerfect(loose, 0, 100000);
+		assertTrue(loose.getLevelCount() < tight.getLevelCount());
+		assertTrue(loose.getBitsPerKey() > tight.getBitsPerKey());
+		try {
+			MinimalPerfectHash.withKeys(hasher, Stream.of(1), 0.5);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testDuplicates() {
+		MinimalPerfectHash<Integer> mph = MinimalPerfectHash.withKeys(hasher, IntStream.range(0, 30000).map(i -> i % 10000).boxed());
+		assertPerfect(mph, 0, 10000);
+		MinimalPerfectHash<Integer> empty = MinimalPerfectHash.withKeys(hasher, Collections.<Integer>emptyList());
+		assertEquals(0, empty.getCount());
+		assertEquals(-1, empty.indexOf(1));
+	}
+
+	public void testSerialization() throws IOException {
+		MinimalPerfectHash<Integer> mph = MinimalPerfectHash.withKeys(hasher, IntStream.range(0, 50000).boxed());
+		ByteBuffer buffer = mph.asBuffer();
+
+		// reconstituted from a heap buffer with an offset
+		ByteBuffer copy = ByteBuffer.allocate(buffer.remaining() + 3);
+		copy.position(3);
+		copy.put(buffer.duplicate());
+		copy.position(3);
+		MinimalPerfectHash<Integer> heap = MinimalPerfectHash.fromBuffer(hasher, copy);
+		assertEquals(mph.getCount(), heap.getCount());
+
+		// reconstituted from a mapped file
+		Path path = Files.createTempFile("perfect-hash", ".bin");
+		try {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			MinimalPerfectHash<Integer> mapped = MinimalPerfectHash.mapFile(hasher, path);
+			assertEquals(mph.getLevelCount(), mapped.getLevelCount());
+			for (int i = 0; i < 60000; i++) {
+				assertEquals(mph.indexOf(i), heap.indexOf(i));
+				assertEquals(mph.indexOf(i), mapped.indexOf(i));
+			}
+		} finally {
+			Files.delete(path);
+		}
+
+		try {
+			MinimalPerfectHash.fromBuffer(hasher, ByteBuffer.allocate(100));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testHasherSize() {
+		try {
+			MinimalPerfectHash.withKeys(Hashing.murmur3Int().hasher((Integer i, WriteStream s) -> s.writeInt(i)), Stream.of(1));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
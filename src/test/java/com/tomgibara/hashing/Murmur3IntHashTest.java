@@ -19,6 +19,9 @@ package com.tomgibara.hashing;
 import java.util.Random;
 
 import com.google.common.hash.HashFunction;
+import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
 
 public class Murmur3IntHashTest extends HashingTest {
 
@@ -77,4 +80,23 @@ public class Murmur3IntHashTest extends HashingTest {
 			testConsistent(hasher, i);
 		}
 	}
+
+	public void testMultiByteWritesMatchBytes() {
+		Random r = new Random(0L);
+		Hash hash = Hashing.murmur3Int(r.nextInt());
+		for (int i = 0; i < 10000; i++) {
+			WriteStream s = hash.newStream();
+			StreamBytes bytes = Streams.bytes();
+			WriteStream b = bytes.writeStream();
+			int ops = r.nextInt(12);
+			for (int j = 0; j < ops; j++) {
+				writeRandom(r, s, b);
+			}
+			WriteStream t = hash.newStream();
+			for (byte v : bytes.bytes()) {
+				t.writeByte(v);
+			}
+			assertEquals(hash.intHashValue(t), hash.intHashValue(s));
+		}
+	}
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Random;
+
+import com.google.common.hash.HashFunction;
+import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
+
+public class Murmur3Long128HashTest extends HashingTest {
+
+	public void testMatchesGuava() {
+		Random r = new Random(0L);
+		for (int seed : new int[] {0, 1, 0x7fffffff}) {
+			Hasher<byte[]> hasher = Hashing.murmur3Long128(seed).hasher((bs, s) -> s.writeBytes(bs));
+			HashFunction hash = com.google.common.hash.Hashing.murmur3_128(seed);
+			for (int i = 0; i < 10000; i++) {
+				byte[] bytes = new byte[r.nextInt(100)];
+				r.nextBytes(bytes);
+				com.google.common.hash.HashCode code = hash.hashBytes(bytes);
+				assertEquals(code.asLong(), hasher.longHashValue(bytes));
+				assertEquals(code.asInt(), hasher.intHashValue(bytes));
+				// guava reports the bytes of each half little-endian
+				byte[] expected = code.asBytes();
+				byte[] actual = hasher.bytesHashValue(bytes);
+				for (int j = 0; j < 16; j++) {
+					assertEquals(expected[j], actual[15 - j]);
+				}
+			}
+		}
+	}
+
+	public void testLongHalves() {
+		Hasher<String> hasher = Hashing.murmur3Long128().hasher((s, out) -> out.writeChars(s));
+		HashCode code = hasher.hash("halves");
+		long lo = code.longValue();
+		long hi = code.longValue();
+		assertEquals(lo, hasher.longHashValue("halves"));
+		assertEquals(hasher.bigHashValue("halves"), code.bigValue());
+		assertEquals(lo, code.bigValue().longValue());
+		assertEquals(hi, code.bigValue().shiftRight(64).longValue());
+		assertEquals(lo, code.longValue());
+	}
+
+	public void testCorrectlySized() {
+		Hasher<Integer> hasher = Hashing.murmur3Long128().hasher((i, s) -> s.writeInt(i));
+		HashSize size = hasher.getSize();
+		assertEquals(128, size.getBits());
+		for (int i = 0; i < 1000; i++) {
+			testCorrectlySizedBigs(hasher.hash(i), size, 1);
+			testCorrectlySizedBytes(hasher.hash(i), size, 1);
+		}
+	}
+
+	public void testDistribution() {
+		Hasher<Integer> hasher = Hashing.murmur3Long128().hasher((i, s) -> s.writeInt(i));
+		int[] ints = new int[10000];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = hasher.intHashValue(i);
+		}
+		testDistribution(ints);
+	}
+
+	public void testConsistency() {
+		Hasher<Integer> hasher = Hashing.murmur3Long128().hasher((i, s) -> s.writeInt(i));
+		for (int i = 0; i < 1000; i++) {
+			testConsistent(hasher, i);
+		}
+	}
+
+	public void testMultiByteWritesMatchBytes() {
+		Random r = new Random(0L);
+		Hash hash = Hashing.murmur3Long128(r.nextInt());
+		for (int i = 0; i < 10000; i++) {
+			WriteStream s = hash.newStream();
+			StreamBytes bytes = Streams.bytes();
+			WriteStream b = bytes.writeStream();
+			int ops = r.nextInt(12);
+			for (int j = 0; j < ops; j++) {
+				writeRandom(r, s, b);
+			}
+			WriteStream t = hash.newStream();
+			for (byte v : bytes.bytes()) {
+				t.writeByte(v);
+			}
+			assertEquals(hash.bigHashValue(t), hash.bigHashValue(s));
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tomgibara.streams.WriteStream;
+
+public class RendezvousHashTest extends HashingTest {
+
+	private static final Hasher<Integer> keyHasher = Hashing.xxHash64().hasher((Integer i, WriteStream s) -> s.writeInt(i));
+	private static final Hasher<String> nodeHasher = Hashing.xxHash64().hasher((String n, WriteStream s) -> s.writeChars(n));
+
+	private static List<String> nodes(int count) {
+		List<String> nodes = new ArrayList<>();
+		for (int i = 0; i < count; i++) nodes.add("node-" + i);
+		return nodes;
+	}
+
+	private static Map<String, Integer> counts(RendezvousHash<Integer, String> hash, int keys) {
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < keys; i++) counts.merge(hash.select(i), 1, Integer::sum);
+		return counts;
+	}
+
+	public void testUniform() {
+		int keys = 100000;
+		RendezvousHash<Integer, String> hash = RendezvousHash.withNodes(keyHasher, nodeHasher, nodes(10));
+		Map<String, Integer> counts = counts(hash, keys);
+		assertEquals(10, counts.size());
+		for (int count : counts.values()) assertEquals(keys / 10.0, count, keys * 0.01);
+	}
+
+	public void testWeighted() {
+		int keys = 100000;
+		Map<String, Double> weights = new LinkedHashMap<>();
+		for (int i = 0; i < 4; i++) weights.put("node-" + i, i + 1.0);
+		RendezvousHash<Integer, String> hash = RendezvousHash.withWeightedNodes(keyHasher, nodeHasher, weights);
+		Map<String, Integer> counts = counts(hash, keys);
+		for (int i = 0; i < 4; i++) assertEquals(keys * (i + 1) / 10.0, counts.get("node-" + i), keys * 0.01);
+		assertEquals(weights, hash.getWeights());
+		try {
+			hash.withNode("node-4", 0.0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testMembershipChanges() {
+		Map<String, Double> weights = new LinkedHashMap<>();
+		for (int i = 0; i < 20; i++) weights.put("node-" + i, 1.0 + i % 3);
+		RendezvousHash<Integer, String> hash = RendezvousHash.withWeightedNodes(keyHasher, nodeHasher, weights);
+		RendezvousHash<Integer, String> removed = hash.withoutNode("node-7");
+		RendezvousHash<Integer, String> added = hash.withNode("node-20", 2.0);
+		assertSame(hash, hash.withoutNode("absent"));
+		for (int i = 0; i < 10000; i++) {
+			String node = hash.select(i);
+			// only keys of the removed node move, and only to the added node
+			if (!node.equals("node-7")) assertEquals(node, removed.select(i));
+			String now = added.select(i);
+			if (!now.equals(node)) assertEquals("node-20", now);
+		}
+	}
+
+	public void testMultipleSelection() {
+		Map<String, Double> weights = new HashMap<>();
+		weights.put("a", 1.0);
+		weights.put("b", 2.0);
+		weights.put("c", 0.5);
+		weights.put("d", 3.0);
+		weights.put("e", 1.0);
+		RendezvousHash<Integer, String> hash = RendezvousHash.withWeightedNodes(keyHasher, nodeHasher, weights);
+		for (int i = 0; i < 1000; i++) {
+			List<String> all = hash.select(i, 5);
+			assertEquals(5, new HashSet<>(all).size());
+			assertEquals(hash.select(i), all.get(0));
+			for (int count = 0; count < 5; count++) assertEquals(all.subList(0, count), hash.select(i, count));
+			// the second choice is the first once the first is removed
+			assertEquals(all.get(1), hash.withoutNode(all.get(0)).select(i));
+		}
+		try {
+			hash.select(0, 6);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		// equal weights other than one select as unit weights do
+		Map<String, Double> halves = new HashMap<>();
+		Map<String, Double> units = new HashMap<>();
+		for (int i = 0; i < 100; i++) {
+			halves.put("node-" + i, 0.5);
+			units.put("node-" + i, 1.0);
+		}
+		RendezvousHash<Integer, String> half = RendezvousHash.withWeightedNodes(keyHasher, nodeHasher, halves);
+		RendezvousHash<Integer, String> unit = RendezvousHash.withWeightedNodes(keyHasher, nodeHasher, units);
+		for (int i = 0; i < 10000; i++) {
+			List<String> selected = half.select(i, 3);
+			assertEquals(half.select(i), selected.get(0));
+			assertEquals(unit.select(i, 3), selected);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.List;
+import java.util.Random;
+
+import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
+
+public class ResetStreamTest extends HashingTest {
+
+	private static Hash[] hashes() {
+		return new Hash[] {
+				Hashing.murmur3Int(),
+				Hashing.murmur3Long128(7),
+				Hashing.xxHash64(),
+				Hashing.xxh3Long(),
+				Hashing.xxh3Long128(3L),
+				Hashing.sipHash24(1L, 2L),
+				Hashing.MD5().asHash(),
+				Hashing.murmur3Int().seeded(5L),
+				Hashing.MD5().asHash().seeded(5L),
+				Hashing.prng(HashSize.LONG_SIZE),
+		};
+	}
+
+	public void testResetStreamMatchesNewStream() {
+		Random r = new Random(0L);
+		for (Hash hash : hashes()) {
+			WriteStream stream = hash.newStream();
+			for (int i = 0; i < 200; i++) {
+				// leave a partially written stream with its hash taken
+				int ops = r.nextInt(40);
+				for (int j = 0; j < ops; j++) writeRandom(r, stream, Streams.bytes().writeStream());
+				hash.bigHashValue(stream);
+				stream = hash.resetStream(stream);
+
+				WriteStream fresh = hash.newStream();
+				ops = r.nextInt(40);
+				for (int j = 0; j < ops; j++) writeRandom(r, stream, fresh);
+				assertEquals(hash.toString(), hash.bigHashValue(fresh), hash.bigHashValue(stream));
+				stream = hash.resetStream(stream);
+			}
+		}
+	}
+
+	public void testHashCodesDetached() {
+		for (Hash hash : hashes()) {
+			Hasher<Integer> hasher = hash.hasher((i, s) -> s.writeInt(i));
+			HashCode first = hasher.hash(1);
+			long expected = hasher.hash(1).longValue();
+			hasher.hash(2);
+			assertEquals(hash.toString(), expected, first.longValue());
+		}
+	}
+
+	public void testConcurrentHashers() throws Exception {
+		for (Hash hash : hashes()) {
+			Hasher<Integer> hasher = hash.hasher((i, s) -> s.writeInt(i));
+			long[] expected = new long[1000];
+			for (int i = 0; i < expected.length; i++) {
+				expected[i] = hash.hasher((Integer v, WriteStream s) -> s.writeInt(v)).longHashValue(i);
+			}
+			List<Integer> mismatches = computeConcurrently(8, 16, t -> {
+				int count = 0;
+				for (int n = 0; n < 10; n++) {
+					for (int i = 0; i < expected.length; i++) {
+						if (hasher.longHashValue(i) != expected[i]) count++;
+					}
+				}
+				return count;
+			});
+			for (Integer count : mismatches) assertEquals(hash.toString(), 0, count.intValue());
+		}
+	}
+
+}
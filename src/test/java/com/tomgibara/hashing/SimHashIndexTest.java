@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+public class SimHashIndexTest extends HashingTest {
+
+	// the matches found by a linear scan
+	private static long[] scan(long[] fingerprints, long query, int distance) {
+		return LongStream.of(fingerprints).filter(f -> SimHash.distance(f, query) <= distance).distinct().sorted().toArray();
+	}
+
+	private static long flip(Random r, long fingerprint, int bits) {
+		for (int i = 0; i < bits; i++) fingerprint ^= 1L << r.nextInt(64);
+		return fingerprint;
+	}
+
+	public void testSearch() {
+		Random r = new Random(0L);
+		for (int maxDistance = 0; maxDistance <= 3; maxDistance++) {
+			long[] fingerprints = new long[10000];
+			for (int i = 0; i < fingerprints.length; i++) {
+				// clusters of near duplicates
+				fingerprints[i] = i % 4 == 0 ? r.nextLong() : flip(r, fingerprints[i - 1], 1 + r.nextInt(3));
+			}
+			SimHashIndex index = SimHashIndex.withDistance(maxDistance, fingerprints);
+			assertEquals(maxDistance, index.getMaxDistance());
+			for (int i = 0; i < 200; i++) {
+				long query = flip(r, fingerprints[r.nextInt(fingerprints.length)], r.nextInt(5));
+				for (int d = 0; d <= maxDistance; d++) {
+					assertTrue(Arrays.equals(scan(fingerprints, query, d), index.search(query, d)));
+				}
+			}
+		}
+	}
+
+	public void testBlocks() {
+		long[] fingerprints = new Random(0L).longs(1 << 20).toArray();
+		SimHashIndex index = SimHashIndex.withDistance(3, fingerprints);
+		// five blocks give prefixes of at least 25 bits, enough for 2^20 fingerprints
+		assertEquals(5, index.getBlockCount());
+		assertEquals(10, index.getTableCount());
+		assertEquals(1 << 20, index.size());
+		assertEquals(4, SimHashIndex.withDistance(3, new long[10]).getBlockCount());
+	}
+
+	public void testDuplicates() {
+		SimHashIndex index = SimHashIndex.withDistance(2, LongStream.of(1L, 3L, 3L, 1L, 7L));
+		assertEquals(3, index.size());
+		assertTrue(index.contains(3L));
+		assertFalse(index.contains(5L));
+		assertTrue(Arrays.equals(new long[] {1L, 3L, 7L}, index.search(5L)));
+		assertTrue(Arrays.equals(new long[] {1L, 7L}, index.search(5L, 1)));
+		assertEquals(0, SimHashIndex.withDistance(3, new long[0]).search(0L).length);
+		try {
+			index.search(5L, 3);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.tomgibara.streams.WriteStream;
+
+public class SimHashTest extends HashingTest {
+
+	private static final SimHash<Integer> simHash = SimHash.withHasher(Hashing.xxHash64().hasher((i, s) -> s.writeInt(i)));
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> list = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) list.add(i);
+		return list;
+	}
+
+	public void testSimilarity() {
+		long a = simHash.fingerprint(range(0, 1000));
+		assertEquals(a, simHash.fingerprint(range(0, 1000)));
+		// near duplicates differ in few bits, unrelated sets in about half
+		assertTrue(SimHash.distance(a, simHash.fingerprint(range(5, 1005))) <= 8);
+		int unrelated = SimHash.distance(a, simHash.fingerprint(range(1000, 2000)));
+		assertTrue(unrelated > 16 && unrelated < 48);
+	}
+
+	public void testWeights() {
+		Map<Integer, Double> weights = new HashMap<>();
+		for (int i = 0; i < 100; i++) weights.put(i, 1.0);
+		long uniform = simHash.fingerprint(weights);
+		assertEquals(simHash.fingerprint(range(0, 100)), uniform);
+		// a single dominant feature determines the fingerprint
+		weights.put(7, 1000.0);
+		long dominated = simHash.fingerprint(weights);
+		assertEquals(simHash.fingerprint(range(7, 8)), dominated);
+		SimHash<Integer>.Builder builder = simHash.newBuilder();
+		for (Map.Entry<Integer, Double> entry : weights.entrySet()) builder.add(entry.getKey(), entry.getValue());
+		assertEquals(dominated, builder.build());
+		assertEquals(0L, builder.clear().build());
+		try {
+			builder.add(1, Double.NaN);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testHasherSize() {
+		try {
+			SimHash.withHasher(Hashing.murmur3Int().hasher((Integer i, WriteStream s) -> s.writeInt(i)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Random;
+
+import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
+
+public class SipHashTest extends HashingTest {
+
+	// the key and messages used by the reference implementation's test vectors
+	private static final long k0 = 0x0706050403020100L;
+	private static final long k1 = 0x0f0e0d0c0b0a0908L;
+
+	private static final int[] lengths = { 0, 1, 7, 8, 9, 15, 16, 63 };
+
+	private static final long[] sip24 = {
+			0x726FDB47DD0E0E31L,
+			0x74F839C593DC67FDL,
+			0xAB0200F58B01D137L,
+			0x93F5F5799A932462L,
+			0x9E0082DF0BA9E4B0L,
+			0xA129CA6149BE45E5L,
+			0x3F2ACC7F57C29BDBL,
+			0x958A324CEB064572L,
+	};
+
+	private static final long[] sip13 = {
+			0xABAC0158050FC4DCL,
+			0xC9F49BF37D57CA93L,
+			0xD3927D989BB11140L,
+			0x369095118D299A8EL,
+			0x25A48EB36C063DE4L,
+			0xD320D86D2A519956L,
+			0xCC4FDD1A7D908B66L,
+			0x9D199062B7BBB3A8L,
+	};
+
+	private static byte[] message(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) bytes[i] = (byte) i;
+		return bytes;
+	}
+
+	public void testReferenceVectors() {
+		testReferenceVectors(Hashing.sipHash24(k0, k1), sip24);
+		testReferenceVectors(Hashing.sipHash13(k0, k1), sip13);
+	}
+
+	private void testReferenceVectors(Hash hash, long[] expected) {
+		for (int i = 0; i < lengths.length; i++) {
+			int length = lengths[i];
+			byte[] bytes = message(length);
+			{
+				WriteStream s = hash.newStream();
+				s.writeBytes(bytes);
+				assertEquals(hash + " length " + length, expected[i], hash.longHashValue(s));
+			}
+			{
+				WriteStream s = hash.newStream();
+				for (byte b : bytes) s.writeByte(b);
+				assertEquals(hash + " length " + length, expected[i], hash.longHashValue(s));
+			}
+		}
+	}
+
+	public void testByteKey() {
+		byte[] key = message(16);
+		assertEquals(Hashing.sipHash24(k0, k1), Hashing.sipHash24(key));
+		assertEquals(Hashing.sipHash13(k0, k1), Hashing.sipHash13(key));
+		try {
+			Hashing.sipHash24(new byte[15]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testKeyed() {
+		Hasher<Integer> hasher = Hashing.sipHash24(k0, k1).hasher((i, s) -> s.writeInt(i));
+		Hasher<Integer> other = Hashing.sipHash24(k0, k1 + 1).hasher((i, s) -> s.writeInt(i));
+		int same = 0;
+		for (int i = 0; i < 1000; i++) {
+			if (hasher.longHashValue(i) == other.longHashValue(i)) same++;
+		}
+		assertEquals(0, same);
+	}
+
+	public void testCorrectlySized() {
+		Hasher<Integer> hasher = Hashing.sipHash24(k0, k1).hasher((i, s) -> s.writeInt(i));
+		HashSize size = hasher.getSize();
+		for (int i = 0; i < 1000; i++) {
+			testCorrectlySizedInts(hasher.hash(i), size, 1);
+			testCorrectlySizedLongs(hasher.hash(i), size, 1);
+			testCorrectlySizedBigs(hasher.hash(i), size, 1);
+			testCorrectlySizedBytes(hasher.hash(i), size, 1);
+		}
+	}
+
+	public void testDistribution() {
+		Hasher<Integer> hasher = Hashing.sipHash13(k0, k1).hasher((i, s) -> s.writeInt(i));
+		int[] ints = new int[10000];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = hasher.intHashValue(i);
+		}
+		testDistribution(ints);
+	}
+
+	public void testConsistency() {
+		Hasher<Integer> hasher = Hashing.sipHash24(k0, k1).hasher((i, s) -> s.writeInt(i));
+		for (int i = 0; i < 1000; i++) {
+			testConsistent(hasher, i);
+		}
+	}
+
+	public void testMultiByteWritesMatchBytes() {
+		Random r = new Random(0L);
+		Hash hash = Hashing.sipHash24(r.nextLong(), r.nextLong());
+		for (int i = 0; i < 10000; i++) {
+			WriteStream s = hash.newStream();
+			StreamBytes bytes = Streams.bytes();
+			WriteStream b = bytes.writeStream();
+			int ops = r.nextInt(12);
+			for (int j = 0; j < ops; j++) {
+				writeRandom(r, s, b);
+			}
+			WriteStream t = hash.newStream();
+			for (byte v : bytes.bytes()) {
+				t.writeByte(v);
+			}
+			assertEquals(hash.longHashValue(t), hash.longHashValue(s));
+		}
+	}
+
+	public void testSeeded() {
+		Hash[] hashes = {
+				Hashing.murmur3Int(),
+				Hashing.murmur3Long128(),
+				Hashing.xxHash64(),
+				Hashing.xxh3Long(),
+				Hashing.xxh3Long128(),
+				Hashing.sipHash13(k0, k1),
+		};
+		for (Hash hash : hashes) {
+			Hash seeded = hash.seeded(0L);
+			// seeds are applied natively
+			assertEquals(hash.getClass(), seeded.getClass());
+			assertEquals(seeded, hash.seeded(0L));
+			assertFalse(seeded.equals(hash.seeded(1L)));
+			Hash prefixed = new SeededHash(hash, 0L);
+			for (int i = 0; i < 100; i++) {
+				long unseededValue = hash.hasher((Integer v, WriteStream s) -> s.writeInt(v)).longHashValue(i);
+				long seededValue = seeded.hasher((Integer v, WriteStream s) -> s.writeInt(v)).longHashValue(i);
+				long prefixedValue = prefixed.hasher((Integer v, WriteStream s) -> s.writeInt(v)).longHashValue(i);
+				assertFalse(hash.toString(), unseededValue == seededValue);
+				assertFalse(hash.toString(), prefixedValue == seededValue);
+			}
+		}
+		// hashes that cannot be seeded natively fall back to prefixing
+		Hash secret = Hashing.xxh3Long(new byte[Xxh3Hash.SECRET_SIZE_MIN]);
+		assertTrue(secret.seeded(1L) instanceof SeededHash);
+	}
+
+}
@@ -65,4 +65,40 @@ public class SizedTest extends HashingTest {
 		Assert.assertArrayEquals(expected, actual);
 	}
 
+	public void testJumpSized() {
+		Hasher<Integer> hasher = Hashing.xxHash64().hasher((x, s) -> s.writeInt(x));
+		int keys = 100000;
+		Hasher<Integer> h10 = hasher.jumpSized(10);
+		Hasher<Integer> h11 = hasher.jumpSized(11);
+		assertEquals(HashSize.fromInt(10), h10.getSize());
+		int[] counts = new int[10];
+		int moved = 0;
+		for (int i = 0; i < keys; i++) {
+			int b10 = h10.intHashValue(i);
+			int b11 = h11.intHashValue(i);
+			assertEquals(b10, h10.longHashValue(i));
+			assertEquals(b10, h10.hash(i).intValue());
+			assertEquals(BigInteger.valueOf(b10), h10.hash(i).bigValue());
+			Assert.assertArrayEquals(new byte[] {(byte) b10}, h10.hash(i).bytesValue());
+			counts[b10]++;
+			// keys only move to the new bucket
+			if (b10 != b11) {
+				assertEquals(10, b11);
+				moved++;
+			}
+		}
+		assertEquals(keys / 11.0, moved, keys * 0.01);
+		for (int count : counts) assertEquals(keys / 10.0, count, keys * 0.01);
+		assertEquals(0, hasher.jumpSized(1).intHashValue(7));
+		assertEquals(hasher.jumpSized(10), h10);
+		assertFalse(h10.equals(hasher.sized(HashSize.fromInt(10))));
+		assertFalse(hasher.sized(HashSize.fromInt(10)).equals(h10));
+		try {
+			hasher.jumpSized(0);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TreeHashTest extends HashingTest {
+
+	private static byte[] data(int length) {
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++) bytes[i] = (byte) (i % 251);
+		return bytes;
+	}
+
+	// a direct sequential statement of the RFC 6962 tree hash
+	private static byte[] reference(MessageDigest digest, byte[] bytes, int leafSize) {
+		int count = (bytes.length + leafSize - 1) / leafSize;
+		byte[][] leaves = new byte[count][];
+		for (int i = 0; i < count; i++) {
+			leaves[i] = Arrays.copyOfRange(bytes, i * leafSize, Math.min((i + 1) * leafSize, bytes.length));
+		}
+		return combine(digest, leaves, 0, count);
+	}
+
+	private static byte[] combine(MessageDigest digest, byte[][] leaves, int from, int to) {
+		if (to == from) return digest.digest();
+		if (to - from == 1) {
+			digest.update((byte) 0);
+			return digest.digest(leaves[from]);
+		}
+		int k = 1;
+		while (k * 2 < to - from) k *= 2;
+		byte[] left = combine(digest, leaves, from, from + k);
+		byte[] right = combine(digest, leaves, from + k, to);
+		digest.update((byte) 1);
+		digest.update(left);
+		return digest.digest(right);
+	}
+
+	public void testKnownRoot() {
+		// computed independently from the RFC 6962 definition
+		BigInteger expected = new BigInteger("97936bb0af1ebe1f8bdf0438946f7b3feb5acba0db69b044bcb91234952a75b2", 16);
+		MerkleTree tree = Hashing.SHA_256().asTreeHash(64).hash(data(1000));
+		assertEquals(16, tree.getLeafCount());
+		assertEquals(expected, tree.getRoot().bigValue());
+	}
+
+	public void testMatchesReference() throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		Random r = new Random(0L);
+		for (int i = 0; i < 200; i++) {
+			int leafSize = 1 + r.nextInt(100);
+			byte[] bytes = new byte[r.nextInt(5000)];
+			r.nextBytes(bytes);
+			MerkleTree tree = Hashing.SHA_256().asTreeHash(leafSize).hash(bytes);
+			assertEquals(new BigInteger(1, reference(digest, bytes, leafSize)), tree.getRoot().bigValue());
+			assertEquals(bytes.length, tree.getLength());
+			assertTrue(tree.verifyRoot(tree.getRoot()));
+		}
+	}
+
+	public void testEmpty() throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		MerkleTree tree = Hashing.SHA_256().asTreeHash(16).hash(new byte[0]);
+		assertEquals(0, tree.getLeafCount());
+		assertEquals(new BigInteger(1, digest.digest()), tree.getRoot().bigValue());
+		assertTrue(tree.verifyRoot(tree.getRoot()));
+	}
+
+	public void testBufferUnchanged() {
+		byte[] bytes = data(1000);
+		TreeHash treeHash = Hashing.SHA_1().asTreeHash(100, new ForkJoinPool(3));
+		ByteBuffer direct = ByteBuffer.allocateDirect(1200);
+		direct.position(100);
+		direct.put(bytes);
+		direct.limit(1100).position(100);
+		MerkleTree tree = treeHash.hash(direct);
+		assertEquals(100, direct.position());
+		assertEquals(1100, direct.limit());
+		assertEquals(treeHash.hash(bytes), tree);
+	}
+
+	public void testFile() throws IOException {
+		byte[] bytes = data(100000);
+		Path file = Files.createTempFile("tree", ".bin");
+		try {
+			Files.write(file, bytes);
+			TreeHash treeHash = Hashing.SHA_256().asTreeHash(4096);
+			assertEquals(treeHash.hash(bytes), treeHash.hashFile(file));
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				MerkleTree tree = treeHash.hash(channel, 5000, 50000);
+				assertEquals(treeHash.hash(Arrays.copyOfRange(bytes, 5000, 55000)), tree);
+				assertEquals(0L, channel.position());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	public void testVerify() {
+		byte[] bytes = data(1000);
+		MerkleTree tree = Hashing.SHA_256().asTreeHash(64).hash(bytes);
+		// whole leaves
+		assertTrue(tree.verify(0, ByteBuffer.wrap(bytes, 0, 64)));
+		assertTrue(tree.verify(3, ByteBuffer.wrap(bytes, 192, 128)));
+		// final partial leaf
+		assertTrue(tree.verify(15, ByteBuffer.wrap(bytes, 960, 40)));
+		assertTrue(tree.verify(14, ByteBuffer.wrap(bytes, 896, 104)));
+		// misaligned or overlong
+		assertFalse(tree.verify(3, ByteBuffer.wrap(bytes, 192, 100)));
+		assertFalse(tree.verify(15, ByteBuffer.wrap(bytes, 900, 100)));
+		// tampered
+		byte[] copy = bytes.clone();
+		copy[200]++;
+		assertFalse(tree.verify(3, ByteBuffer.wrap(copy, 192, 64)));
+		// leaves are independent
+		assertTrue(tree.verify(4, ByteBuffer.wrap(copy, 256, 64)));
+		MessageDigest digest = sha256();
+		digest.update((byte) 0);
+		digest.update(bytes, 64, 64);
+		assertEquals(new BigInteger(1, digest.digest()), tree.getLeaf(1).bigValue());
+	}
+
+	public void testFromLeaves() {
+		byte[] bytes = data(1000);
+		TreeHash treeHash = Hashing.SHA_256().asTreeHash(64);
+		MerkleTree tree = treeHash.hash(bytes);
+		HashCode root = tree.getRoot();
+		List<HashCode> leaves = new ArrayList<>();
+		for (int i = 0; i < tree.getLeafCount(); i++) leaves.add(tree.getLeaf(i));
+		MerkleTree rebuilt = treeHash.fromLeaves(bytes.length, leaves);
+		assertEquals(tree, rebuilt);
+		assertTrue(rebuilt.verifyRoot(root));
+		assertTrue(rebuilt.verify(3, ByteBuffer.wrap(bytes, 192, 128)));
+		// tampered leaves do not produce the trusted root
+		Collections.swap(leaves, 2, 3);
+		MerkleTree tampered = treeHash.fromLeaves(bytes.length, leaves);
+		assertFalse(tampered.verifyRoot(root));
+		assertFalse(tampered.verify(2, ByteBuffer.wrap(bytes, 128, 64)));
+		// empty input
+		assertTrue(treeHash.fromLeaves(0L, Collections.emptyList()).verifyRoot(treeHash.hash(new byte[0]).getRoot()));
+		// the leaf count must match the length
+		try {
+			treeHash.fromLeaves(bytes.length + 64, leaves);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		// leaves must be of the right size
+		try {
+			treeHash.fromLeaves(64, Collections.singletonList(HashCode.fromLong(0L)));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testFailedLeaf() throws IOException {
+		// the last leaf is marked with a byte that never otherwise occurs, and fails to digest
+		byte[] bytes = data(16 * 1000);
+		bytes[15 * 1000] = -1;
+		AtomicInteger active = new AtomicInteger();
+		// set once the hash has failed, so that leaves which outlive it don't touch an unmapped window
+		AtomicBoolean abandoned = new AtomicBoolean();
+		HashDigest digests = () -> new MessageDigest("SLOW") {
+			private final MessageDigest digest = sha256();
+			@Override protected int engineGetDigestLength() { return digest.getDigestLength(); }
+			@Override protected void engineUpdate(byte input) { digest.update(input); }
+			@Override protected void engineUpdate(byte[] input, int offset, int len) { digest.update(input, offset, len); }
+			@Override protected byte[] engineDigest() { return digest.digest(); }
+			@Override protected void engineReset() { digest.reset(); }
+			@Override protected void engineUpdate(ByteBuffer input) {
+				active.incrementAndGet();
+				try {
+					if (abandoned.get()) return;
+					if (input.get(input.position()) == -1) throw new IllegalStateException("failed leaf");
+					Thread.sleep(20);
+					if (!abandoned.get()) digest.update(input);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				} finally {
+					active.decrementAndGet();
+				}
+			}
+		};
+		TreeHash treeHash = digests.asTreeHash(1000, new ForkJoinPool(4));
+		Path file = Files.createTempFile("tree", ".bin");
+		try {
+			Files.write(file, bytes);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				treeHash.hash(channel, 0L, bytes.length);
+				fail();
+			} catch (IllegalStateException e) {
+				// no leaf may still be reading the window once it has been unmapped
+				int stillActive = active.get();
+				abandoned.set(true);
+				assertEquals(0, stillActive);
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
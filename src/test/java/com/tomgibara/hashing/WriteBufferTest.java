@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import com.tomgibara.streams.WriteStream;
+
+public class WriteBufferTest extends HashingTest {
+
+	private static Hash[] hashes() {
+		return new Hash[] {
+				Hashing.murmur3Int(),
+				Hashing.murmur3Int(17),
+				Hashing.SHA_1().asHash(),
+				Hashing.xxHash64(),
+				Hashing.murmur3Int().seeded(3L),
+				Hashing.murmur3Long128(),
+				Hashing.xxh3Long(),
+				Hashing.xxh3Long128(),
+				Hashing.sipHash24(1L, 2L),
+		};
+	}
+
+	public void testBuffersMatchBytes() {
+		Random r = new Random(0L);
+		for (Hash hash : hashes()) {
+			for (int i = 0; i < 500; i++) {
+				// longer inputs exercise buffering by XXH3
+				byte[] bytes = new byte[r.nextInt(i % 5 == 0 ? 2000 : 100)];
+				r.nextBytes(bytes);
+				int position = bytes.length == 0 ? 0 : r.nextInt(bytes.length);
+				int limit = position + r.nextInt(bytes.length - position + 1);
+				// a prefix exercises unaligned block boundaries
+				byte prefix = (byte) r.nextInt();
+				boolean prefixed = r.nextBoolean();
+
+				WriteStream expected = hash.newStream();
+				if (prefixed) expected.writeByte(prefix);
+				expected.writeBytes(bytes, position, limit - position);
+				BigInteger value = hash.bigHashValue(expected);
+
+				ByteBuffer heap = ByteBuffer.wrap(bytes);
+				ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+				direct.put(bytes).clear();
+				for (ByteBuffer buffer : new ByteBuffer[] { heap, direct }) {
+					for (ByteOrder order : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+						buffer.order(order);
+						buffer.limit(limit).position(position);
+						WriteStream stream = hash.newStream();
+						if (prefixed) stream.writeByte(prefix);
+						hash.writeBuffer(stream, buffer);
+						assertEquals(hash.toString(), value, hash.bigHashValue(stream));
+						// the buffer is unchanged
+						assertEquals(position, buffer.position());
+						assertEquals(limit, buffer.limit());
+						buffer.clear();
+					}
+				}
+			}
+		}
+	}
+
+	public void testSlicedBuffer() {
+		byte[] bytes = new byte[64];
+		new Random(1L).nextBytes(bytes);
+		ByteBuffer slice = ByteBuffer.wrap(bytes, 8, 40).slice();
+		for (Hash hash : hashes()) {
+			WriteStream expected = hash.newStream();
+			expected.writeBytes(bytes, 8, 40);
+			WriteStream stream = hash.newStream();
+			hash.writeBuffer(stream, slice);
+			assertEquals(hash.longHashValue(expected), hash.longHashValue(stream));
+		}
+	}
+
+	public void testInvalidRange() {
+		ByteBuffer buffer = ByteBuffer.allocate(10);
+		for (Hash hash : hashes()) {
+			WriteStream stream = hash.newStream();
+			try {
+				hash.writeBuffer(stream, buffer, 4, 2);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+			try {
+				buffer.limit(5);
+				hash.writeBuffer(stream, buffer, 0, 6);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			} finally {
+				buffer.clear();
+			}
+		}
+	}
+
+}
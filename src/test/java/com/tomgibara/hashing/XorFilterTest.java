@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import com.tomgibara.streams.WriteStream;
+
+public class XorFilterTest extends HashingTest {
+
+	private static final Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+
+	private static List<Integer> range(int from, int to) {
+		List<Integer> list = new ArrayList<>(to - from);
+		for (int i = from; i < to; i++) list.add(i);
+		return list;
+	}
+
+	public void testNoFalseNegatives() {
+		for (int bits : new int[] {8, 16}) {
+			for (int size : new int[] {0, 1, 2, 3, 10, 100, 1000, 100000}) {
+				List<Integer> values = range(0, size);
+				check(XorFilter.xor(hasher, values, bits), size);
+				check(XorFilter.binaryFuse(hasher, values, bits), size);
+			}
+		}
+	}
+
+	private void check(XorFilter<Integer> filter, int size) {
+		assertEquals(size, filter.getCount());
+		for (int i = 0; i < size; i++) assertTrue(filter + " " + i, filter.mightContain(i));
+	}
+
+	public void testFalsePositiveRate() {
+		List<Integer> values = range(0, 100000);
+		int trials = 2000000;
+		for (int bits : new int[] {8, 16}) {
+			for (boolean fuse : new boolean[] {false, true}) {
+				XorFilter<Integer> filter = fuse ? XorFilter.binaryFuse(hasher, values, bits) : XorFilter.xor(hasher, values, bits);
+				assertEquals(fuse, filter.isBinaryFuse());
+				int positives = 0;
+				for (int i = 100000; i < 100000 + trials; i++) {
+					if (filter.mightContain(i)) positives++;
+				}
+				double expected = trials * filter.getFalsePositiveRate();
+				assertTrue(filter + " positives " + positives, Math.abs(positives - expected) < 5 * Math.sqrt(expected) + 1);
+			}
+		}
+	}
+
+	public void testBitsPerValue() {
+		List<Integer> values = range(0, 100000);
+		// classic xor filters use ~1.23 slots per value
+		assertEquals(1.23 * 8, XorFilter.xor(hasher, values, 8).getBitsPerValue(), 0.1);
+		// binary fuse filters use fewer
+		double fuse = XorFilter.binaryFuse(hasher, values, 16).getBitsPerValue() / 16;
+		assertTrue("slots per value " + fuse, fuse < 1.2);
+		// ~1.44 * log2(1/fpp) for a Bloom filter
+		assertTrue(fuse * 16 < 1.44 * 16);
+	}
+
+	public void testDuplicates() {
+		List<Integer> values = range(0, 1000);
+		values.addAll(range(500, 1500));
+		Collections.shuffle(values);
+		XorFilter<Integer> filter = XorFilter.binaryFuse(hasher, values, 8);
+		assertEquals(1500, filter.getCount());
+		for (int i = 0; i < 1500; i++) assertTrue(filter.mightContain(i));
+	}
+
+	public void testShards() {
+		// large enough to be split into two shards built in parallel
+		int size = 1500000;
+		XorFilter<Integer> filter = XorFilter.binaryFuse(hasher, IntStream.range(0, size).boxed().parallel(), 8);
+		assertEquals(size, filter.getCount());
+		for (int i = 0; i < size; i++) assertTrue(filter.mightContain(i));
+		int positives = 0;
+		for (int i = size; i < 2 * size; i++) if (filter.mightContain(i)) positives++;
+		assertEquals(size / 256.0, positives, 5 * Math.sqrt(size / 256.0));
+	}
+
+	public void testSerialization() throws IOException {
+		List<Integer> values = range(0, 10000);
+		XorFilter<Integer> filter = XorFilter.binaryFuse(hasher, values, 16);
+		ByteBuffer buffer = filter.asBuffer();
+
+		// reconstituted from a heap buffer with an offset
+		ByteBuffer copy = ByteBuffer.allocate(buffer.remaining() + 3);
+		copy.position(3);
+		copy.put(buffer.duplicate());
+		copy.position(3);
+		XorFilter<Integer> heap = XorFilter.fromBuffer(hasher, copy);
+		assertEquals(3, copy.position());
+		assertEquals(filter.getCount(), heap.getCount());
+
+		// reconstituted from a mapped file
+		Path path = Files.createTempFile("xor-filter", ".bin");
+		try {
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+				while (buffer.hasRemaining()) channel.write(buffer);
+			}
+			XorFilter<Integer> mapped = XorFilter.mapFile(hasher, path);
+			assertTrue(mapped.isBinaryFuse());
+			assertEquals(16, mapped.getFingerprintBits());
+			for (int i = 0; i < 20000; i++) {
+				assertEquals(filter.mightContain(i), heap.mightContain(i));
+				assertEquals(filter.mightContain(i), mapped.mightContain(i));
+			}
+		} finally {
+			Files.delete(path);
+		}
+
+		try {
+			XorFilter.fromBuffer(hasher, ByteBuffer.allocate(100));
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		ByteBuffer truncated = filter.asBuffer();
+		truncated.limit(truncated.limit() - 1);
+		try {
+			XorFilter.fromBuffer(hasher, truncated);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testHasherSize() {
+		try {
+			XorFilter.binaryFuse(Hashing.murmur3Int().hasher((Integer i, WriteStream s) -> s.writeInt(i)), range(0, 10), 8);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			XorFilter.binaryFuse(hasher, range(0, 10), 12);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Random;
+
+import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
+
+public class XxHash64HashTest extends HashingTest {
+
+	// the buffer used by the reference sanity checks
+	static byte[] sanityBuffer(int length) {
+		byte[] buffer = new byte[length];
+		long gen = 2654435761L;
+		for (int i = 0; i < length; i++) {
+			buffer[i] = (byte) (gen >>> 56);
+			gen *= 0x9E3779B185EBCA8DL;
+		}
+		return buffer;
+	}
+
+	private static final int[] lengths = { 0, 1, 4, 14, 31, 32, 63, 222, 2367 };
+
+	private static final long[] unseeded = {
+			0xEF46DB3751D8E999L,
+			0xE934A84ADB052768L,
+			0x9136A0DCA57457EEL,
+			0x8282DCC4994E35C8L,
+			0x299B39A290E6D783L,
+			0x18B216492BB44B70L,
+			0xA9EFBE0FA0F3F4E7L,
+			0xB641AE8CB691C174L,
+			0xA82418DDEC0EA581L,
+	};
+
+	private static final long[] seeded = {
+			0xAC75FDA2929B17EFL,
+			0x5014607643A9B4C3L,
+			0xCAAB286BD8E9FDB5L,
+			0xC3BD6BF63DEB6DF0L,
+			0xDA673D5FEB5C1D79L,
+			0xB3F33BDF93ADE409L,
+			0x6C911FADB05B6FC2L,
+			0x20CB8AB7AE10C14AL,
+			0xA36A93C18052673AL,
+	};
+
+	public void testReferenceVectors() {
+		byte[] buffer = sanityBuffer(lengths[lengths.length - 1]);
+		Hash hash = Hashing.xxHash64();
+		Hash seededHash = Hashing.xxHash64(2654435761L);
+		for (int i = 0; i < lengths.length; i++) {
+			int length = lengths[i];
+			{
+				WriteStream s = hash.newStream();
+				s.writeBytes(buffer, 0, length);
+				assertEquals("length " + length, unseeded[i], hash.longHashValue(s));
+			}
+			{
+				WriteStream s = seededHash.newStream();
+				s.writeBytes(buffer, 0, length);
+				assertEquals("length " + length, seeded[i], seededHash.longHashValue(s));
+			}
+			{
+				WriteStream s = hash.newStream();
+				for (int j = 0; j < length; j++) s.writeByte(buffer[j]);
+				assertEquals("length " + length, unseeded[i], hash.longHashValue(s));
+			}
+		}
+	}
+
+	public void testCorrectlySized() {
+		Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+		HashSize size = hasher.getSize();
+		for (int i = 0; i < 1000; i++) {
+			testCorrectlySizedInts(hasher.hash(i), size, 1);
+			testCorrectlySizedLongs(hasher.hash(i), size, 1);
+			testCorrectlySizedBigs(hasher.hash(i), size, 1);
+			testCorrectlySizedBytes(hasher.hash(i), size, 1);
+		}
+	}
+
+	public void testDistribution() {
+		Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+		int[] ints = new int[10000];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = hasher.intHashValue(i);
+		}
+		testDistribution(ints);
+	}
+
+	public void testConsistency() {
+		Hasher<Integer> hasher = Hashing.xxHash64().hasher((i, s) -> s.writeInt(i));
+		for (int i = 0; i < 1000; i++) {
+			testConsistent(hasher, i);
+		}
+	}
+
+	public void testMultiByteWritesMatchBytes() {
+		Random r = new Random(0L);
+		Hash hash = Hashing.xxHash64(r.nextLong());
+		for (int i = 0; i < 10000; i++) {
+			WriteStream s = hash.newStream();
+			StreamBytes bytes = Streams.bytes();
+			WriteStream b = bytes.writeStream();
+			int ops = r.nextInt(12);
+			for (int j = 0; j < ops; j++) {
+				writeRandom(r, s, b);
+			}
+			WriteStream t = hash.newStream();
+			for (byte v : bytes.bytes()) {
+				t.writeByte(v);
+			}
+			assertEquals(hash.longHashValue(t), hash.longHashValue(s));
+		}
+	}
+
+}
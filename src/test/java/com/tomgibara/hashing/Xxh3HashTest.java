@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.hashing;
+
+import java.util.Random;
+
+import com.tomgibara.streams.StreamBytes;
+import com.tomgibara.streams.Streams;
+import com.tomgibara.streams.WriteStream;
+
+public class Xxh3HashTest extends HashingTest {
+
+	// one length for each boundary of the short, mid-size and long paths
+	private static final int[] lengths = { 0, 1, 3, 4, 8, 9, 16, 17, 128, 129, 240, 241, 1024, 1025, 2367 };
+
+	private static final long[] unseeded = {
+			0x2D06800538D394C2L,
+			0xC44BDFF4074EECDBL,
+			0x54247382A8D6B94DL,
+			0xE5DC74BC51848A51L,
+			0x24CCC9ACAA9F65E4L,
+			0x14D5001C15DD3F2BL,
+			0x981B17D36C7498C9L,
+			0x796F5ACD3A60F862L,
+			0xFCFF24126754D861L,
+			0x98F1B0A679A2CA29L,
+			0x81C3C2B67F568CCFL,
+			0xC5A639ECD2030E5EL,
+			0xDD85C9B5C1109C5CL,
+			0xD870C0FA13211C6AL,
+			0xCB37AEB9E5D361EDL,
+	};
+
+	private static final long[] seeded = {
+			0xF702CA3814DE2125L,
+			0xB53D5557E7F76F8DL,
+			0xF173D14DAD53A5DCL,
+			0x6977C7C3AD9421B9L,
+			0x360073B0548DBD24L,
+			0xCE394E48812AA7E3L,
+			0xB40F1F6CDB1569CCL,
+			0xAF8CB0BC2C230DAFL,
+			0xA3CA60447DE981D1L,
+			0xC861FFC49C2BF14FL,
+			0x507820EA74B895B0L,
+			0x5927E3637BAC8149L,
+			0xB8B95C07CD4A75FAL,
+			0x2F15255340AE4F6CL,
+			0x6F5360AE69C2F406L,
+	};
+
+	// low then high
+	private static final long[][] wide = {
+			{ 0x6001C324468D497FL, 0x99AA06D3014798D8L },
+			{ 0xC44BDFF4074EECDBL, 0xA6CD5E9392000F6AL },
+			{ 0x54247382A8D6B94DL, 0x20EFC49FF02422EAL },
+			{ 0x2E7D8D6876A39FE9L, 0x970D585AC632BF8EL },
+			{ 0x64C69CAB4BB21DC5L, 0x47A7F080D82BB456L },
+			{ 0xED7CCBC501EB7501L, 0x564EF6078950D457L },
+			{ 0x562980258A998629L, 0xC68C368ECF8A9C05L },
+			{ 0xABBC12D11973D7DBL, 0x955FA78643ED3669L },
+			{ 0xEBB15E34A7FB5AB1L, 0x39992220E045260AL },
+			{ 0x86C9E3BC8F0A3B5CL, 0x03815FC91F1B30B6L },
+			{ 0x5C9AAE94C8EBE5A0L, 0xAA4202DAA2769DC8L },
+			{ 0xC5A639ECD2030E5EL, 0x99A80ECF0ECFC647L },
+			{ 0xDD85C9B5C1109C5CL, 0x0D30D24071C64C57L },
+			{ 0xD870C0FA13211C6AL, 0xFD3EE4FE7F2954C6L },
+			{ 0xCB37AEB9E5D361EDL, 0xE89C0F6FF369B427L },
+	};
+
+	public void testReferenceVectors() {
+		byte[] buffer = XxHash64HashTest.sanityBuffer(lengths[lengths.length - 1]);
+		Hash hash = Hashing.xxh3Long();
+		Hash seededHash = Hashing.xxh3Long(2654435761L);
+		Hash wideHash = Hashing.xxh3Long128();
+		for (int i = 0; i < lengths.length; i++) {
+			int length = lengths[i];
+			{
+				WriteStream s = hash.newStream();
+				s.writeBytes(buffer, 0, length);
+				assertEquals("length " + length, unseeded[i], hash.longHashValue(s));
+			}
+			{
+				WriteStream s = seededHash.newStream();
+				s.writeBytes(buffer, 0, length);
+				assertEquals("length " + length, seeded[i], seededHash.longHashValue(s));
+			}
+			{
+				WriteStream s = wideHash.newStream();
+				s.writeBytes(buffer, 0, length);
+				HashCode code = wideHash.hash(s);
+				assertEquals("length " + length, wide[i][0], code.longValue());
+				assertEquals("length " + length, wide[i][1], code.longValue());
+			}
+			{
+				WriteStream s = hash.newStream();
+				for (int j = 0; j < length; j++) s.writeByte(buffer[j]);
+				assertEquals("length " + length, unseeded[i], hash.longHashValue(s));
+			}
+		}
+	}
+
+	public void testSecret() {
+		byte[] secret = XxHash64HashTest.sanityBuffer(Xxh3Hash.SECRET_SIZE_MIN);
+		assertEquals(Hashing.xxh3Long(secret), Hashing.xxh3Long(secret.clone()));
+		assertFalse(Hashing.xxh3Long(secret).equals(Hashing.xxh3Long()));
+		Hasher<Integer> hasher = Hashing.xxh3Long(secret).hasher((i, s) -> s.writeInt(i));
+		assertFalse(hasher.longHashValue(1) == Hashing.xxh3Long().hasher((Integer i, WriteStream s) -> s.writeInt(i)).longHashValue(1));
+		try {
+			Hashing.xxh3Long(new byte[Xxh3Hash.SECRET_SIZE_MIN - 1]);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	public void testCorrectlySized() {
+		for (Hash hash : new Hash[] { Hashing.xxh3Long(), Hashing.xxh3Long128() }) {
+			Hasher<Integer> hasher = hash.hasher((i, s) -> s.writeInt(i));
+			HashSize size = hasher.getSize();
+			for (int i = 0; i < 1000; i++) {
+				testCorrectlySizedBigs(hasher.hash(i), size, 1);
+				testCorrectlySizedBytes(hasher.hash(i), size, 1);
+			}
+		}
+	}
+
+	public void testDistribution() {
+		Hasher<Integer> hasher = Hashing.xxh3Long().hasher((i, s) -> s.writeInt(i));
+		int[] ints = new int[10000];
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = hasher.intHashValue(i);
+		}
+		testDistribution(ints);
+	}
+
+	public void testConsistency() {
+		for (Hash hash : new Hash[] { Hashing.xxh3Long(), Hashing.xxh3Long128() }) {
+			Hasher<Integer> hasher = hash.hasher((i, s) -> s.writeInt(i));
+			for (int i = 0; i < 1000; i++) {
+				testConsistent(hasher, i);
+			}
+		}
+	}
+
+	public void testMultiByteWritesMatchBytes() {
+		Random r = new Random(0L);
+		Hash hash = Hashing.xxh3Long128(r.nextLong());
+		for (int i = 0; i < 2000; i++) {
+			WriteStream s = hash.newStream();
+			StreamBytes bytes = Streams.bytes();
+			WriteStream b = bytes.writeStream();
+			// enough operations to exceed the internal buffer
+			int ops = r.nextInt(100);
+			for (int j = 0; j < ops; j++) {
+				writeRandom(r, s, b);
+			}
+			WriteStream t = hash.newStream();
+			for (byte v : bytes.bytes()) {
+				t.writeByte(v);
+			}
+			assertEquals(hash.bigHashValue(t), hash.bigHashValue(s));
+		}
+	}
+
+}